@@ -0,0 +1,74 @@
+package io.allure.platform.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.allure.platform.config.DataSourceConfig;
+import io.allure.platform.repo.RunRepository;
+import io.allure.platform.repo.SchemaMigrator;
+import io.allure.platform.repo.SqlDialect;
+import io.allure.platform.repo.WriteQueue;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * A {@link RunRepository} on a fresh SQLite file, or on an empty PostgreSQL database,
+ * wired the way the application wires it (writer connection, read pool, write queue,
+ * migrations) but without a Spring context.
+ */
+final class BenchDatabase implements AutoCloseable {
+
+    final SqlDialect dialect;
+    final JdbcTemplate jdbc;
+    final JdbcTemplate read;
+    final WriteQueue writes;
+    final SchemaMigrator migrator;
+    final RunRepository repo;
+
+    private final Path dir;
+    private final DataSource writer;
+    private final DataSource reader;
+
+    BenchDatabase() throws IOException {
+        this(Files.createTempDirectory("allure-bench-db"));
+    }
+
+    private BenchDatabase(Path dir) throws IOException {
+        this("jdbc:sqlite:" + dir.resolve("allure.db"), "", "", dir);
+    }
+
+    BenchDatabase(String url, String username, String password) throws IOException {
+        this(url, username, password, null);
+    }
+
+    private BenchDatabase(String url, String username, String password, Path dir) throws IOException {
+        this.dir = dir;
+        DataSourceConfig config = new DataSourceConfig(url, username, password,
+                Duration.ofSeconds(5), DataSize.ofMegabytes(256));
+        dialect = config.sqlDialect();
+        writer = config.dataSource();
+        reader = config.readDataSource(4, 8);
+
+        jdbc = config.jdbcTemplate(writer);
+        read = config.readJdbcTemplate(reader);
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(writer);
+        writes = new WriteQueue(txManager, 64, 1024);
+        migrator = new SchemaMigrator(jdbc, new TransactionTemplate(txManager), dialect);
+        repo = new RunRepository(jdbc, read, writes, dialect, migrator);
+    }
+
+    @Override
+    public void close() throws Exception {
+        writes.shutdown();
+        ((HikariDataSource) reader).close();
+        ((HikariDataSource) writer).close();
+        if (dir != null) FileSystemUtils.deleteRecursively(dir);
+    }
+}
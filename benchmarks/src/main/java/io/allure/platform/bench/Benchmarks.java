@@ -0,0 +1,34 @@
+package io.allure.platform.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code benchmarks.jar}. Takes the usual JMH options, but writes results
+ * as JSON to {@code jmh-result.json} unless {@code -rf}/{@code -rff} say otherwise, so
+ * every run leaves a file that can be compared with the previous build's.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() { }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldList()) {
+            new Runner(cmd).list();
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue()) options.result("jmh-result.json");
+        new Runner(options.build()).run();
+    }
+}
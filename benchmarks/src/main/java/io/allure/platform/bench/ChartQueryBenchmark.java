@@ -0,0 +1,111 @@
+package io.allure.platform.bench;
+
+import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.TestResult;
+import io.allure.platform.repo.RunQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dashboard's chart and run-list queries against a database holding {@code runs}
+ * runs of one app, spread over ten releases and a year of execution dates. Queries
+ * bypass the response cache, so these are the cost of a cache miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChartQueryBenchmark {
+
+    private static final String APP = "bench-app";
+    private static final String RELEASE = "1.0";
+    private static final int RELEASES = 10;
+    private static final LocalDate FROM = LocalDate.of(2024, 1, 1);
+    private static final LocalDate TO = FROM.plusDays(364);
+
+    @Param({"1000", "10000", "100000"})
+    public int runs;
+
+    private BenchDatabase db;
+    private RunQuery firstPage;
+    private RunQuery filteredPage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = new BenchDatabase();
+        List<TestResult> corpus = ResultsCorpus.tests(200);
+
+        // saved from several threads, so the write queue batches them like concurrent uploads
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> saves = new ArrayList<>(runs);
+            for (int i = 0; i < runs; i++) {
+                int run = i;
+                // 100..200 tests, so pass rates differ between runs
+                List<TestResult> tests = corpus.subList(run % 100, corpus.size());
+                RunMeta meta = RunRepositoryBenchmark.meta("run-" + run, APP, "1." + run % RELEASES,
+                        FROM.plusDays(run % 365), tests);
+                saves.add(pool.submit(() -> db.repo.save(meta)));
+            }
+            for (Future<?> save : saves) save.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        firstPage = new RunQuery(APP, RELEASE, null, null, null, null, null, null, RunQuery.DEFAULT_LIMIT);
+        filteredPage = new RunQuery(APP, RELEASE, FROM.plusDays(90), FROM.plusDays(180), 80.0, null,
+                List.of("runId", "timestamp", "passed", "failed", "total"), null, RunQuery.DEFAULT_LIMIT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> appOverview() {
+        return db.repo.appOverview(APP, FROM, TO);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> releaseTrend() {
+        return db.repo.releaseTrend(APP, RELEASE, FROM, TO);
+    }
+
+    @Benchmark
+    public Map<String, List<Map<String, Object>>> bugSummary() {
+        return db.repo.bugSummary(APP, RELEASE);
+    }
+
+    @Benchmark
+    public RunQuery.Page runsFirstPage() {
+        return db.repo.findRuns(firstPage);
+    }
+
+    @Benchmark
+    public RunQuery.Page runsFiltered() {
+        return db.repo.findRuns(filteredPage);
+    }
+}
@@ -0,0 +1,312 @@
+package io.allure.platform.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.allure.platform.model.PurgeJob;
+import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.TestResult;
+import io.allure.platform.model.UploadJob;
+import io.allure.platform.repo.ClusterRepository;
+import io.allure.platform.repo.PurgeJobRepository;
+import io.allure.platform.repo.RunAttachment;
+import io.allure.platform.repo.RunQuery;
+import io.allure.platform.repo.UploadJobRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Runs the schema migrations and the repositories' SQL on a fresh SQLite file and on an
+ * embedded PostgreSQL server, then compares the two. Every check must give the same
+ * answer on both databases, and the cluster checks (heartbeats, locks, job claims) must
+ * also give the expected one. Needs no database of its own:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar io.allure.platform.bench.DialectCheck
+ * </pre>
+ *
+ * Exits with status 1 when a check fails.
+ */
+public final class DialectCheck {
+
+    private static final String APP = "check-app";
+    private static final String RELEASE = "1.0";
+    private static final int RUNS = 30;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private final Map<String, JsonNode> observed = new LinkedHashMap<>();
+    private final List<String> failures = new ArrayList<>();
+    private final String dialect;
+
+    private DialectCheck(String dialect) {
+        this.dialect = dialect;
+    }
+
+    public static void main(String[] args) throws Exception {
+        DialectCheck sqlite = new DialectCheck("sqlite");
+        try (BenchDatabase db = new BenchDatabase()) {
+            sqlite.run(db);
+        }
+        DialectCheck postgres = new DialectCheck("postgres");
+        try (EmbeddedPostgres pg = EmbeddedPostgres.builder().start();
+             BenchDatabase db = new BenchDatabase(pg.getJdbcUrl("postgres", "postgres"), "postgres", "")) {
+            postgres.run(db);
+        }
+
+        List<String> failures = new ArrayList<>(sqlite.failures);
+        failures.addAll(postgres.failures);
+        for (Map.Entry<String, JsonNode> e : sqlite.observed.entrySet()) {
+            JsonNode other = postgres.observed.get(e.getKey());
+            if (e.getValue().equals(other)) {
+                System.out.println("ok    " + e.getKey());
+            } else {
+                System.out.println("FAIL  " + e.getKey());
+                failures.add(e.getKey() + ": sqlite " + e.getValue() + ", postgres " + other);
+            }
+        }
+        failures.forEach(f -> System.out.println("FAIL  " + f));
+        System.out.println(failures.isEmpty() ? "All checks passed" : failures.size() + " check(s) failed");
+        if (!failures.isEmpty()) System.exit(1);
+    }
+
+    private void run(BenchDatabase db) {
+        expect("schema version", db.jdbc.queryForObject("SELECT MAX(version) FROM schema_version", Integer.class), 15);
+        runs(db);
+        blobs(db);
+        cluster(db);
+        uploadJobs(db);
+        purgeJobs(db);
+    }
+
+    // ---------------- runs and charts ----------------
+
+    private void runs(BenchDatabase db) {
+        for (int i = 0; i < RUNS; i++) {
+            // tests fail on different runs, so flakiness, streaks and pass rates vary
+            List<TestResult> tests = ResultsCorpus.tests(50);
+            for (int t = 0; t < tests.size(); t++) {
+                if ((t + i) % (t % 5 + 2) == 0) tests.get(t).setStatus("failed");
+            }
+            RunMeta meta = RunRepositoryBenchmark.meta("run-" + i, APP, RELEASE, FIRST_DAY.plusDays(i), tests);
+            Map<String, Long> timings = new LinkedHashMap<>();
+            timings.put("unzip", 10L + i);
+            timings.put("generate", 100L + 7L * (i % 9));
+            db.repo.save(meta, tests, timings);
+        }
+
+        LocalDate lastDay = FIRST_DAY.plusDays(RUNS);
+        observe("runs, first page", db.repo.findRuns(
+                new RunQuery(APP, RELEASE, null, null, null, null, null, null, 10)));
+        observe("runs, filtered page", db.repo.findRuns(new RunQuery(APP, RELEASE, FIRST_DAY.plusDays(5), FIRST_DAY.plusDays(20),
+                50.0, null, List.of("runId", "timestamp", "passed", "total"), null, 5)));
+        observe("app overview", db.repo.appOverview(APP, FIRST_DAY, lastDay));
+        observe("release trend", db.repo.releaseTrend(APP, RELEASE, FIRST_DAY, lastDay));
+        observe("bug summary", db.repo.bugSummary(APP, RELEASE));
+        observe("flaky tests", db.repo.flakyTests(APP, RELEASE, 10));
+        observe("failure streaks", db.repo.failureStreaks(APP, RELEASE, 10));
+        observe("slowest tests", db.repo.slowestTests(APP, RELEASE, 5, 5));
+        observe("stage timings", db.repo.findStageTimings("run-3"));
+        observe("slowest runs", db.repo.slowestRuns(APP, RELEASE, "generate", 5));
+
+        db.repo.deleteByRunId("run-" + (RUNS - 1), orphaned -> { });
+        db.repo.deleteByRunId("run-10", orphaned -> { });
+        observe("flaky tests after deletes", db.repo.flakyTests(APP, RELEASE, 10));
+        observe("release trend after deletes", db.repo.releaseTrend(APP, RELEASE, FIRST_DAY, lastDay));
+
+        expect("history versions", List.of(
+                db.repo.nextHistoryVersion("store-a", 0),
+                db.repo.nextHistoryVersion("store-a", 0),
+                db.repo.nextHistoryVersion("store-a", 10),
+                db.repo.nextHistoryVersion("store-b", 5)), List.of(1L, 2L, 11L, 6L));
+    }
+
+    // ---------------- attachment blobs ----------------
+
+    private void blobs(BenchDatabase db) {
+        RunAttachment png = new RunAttachment("a-attachment.png", "aa", 10);
+        RunAttachment txt = new RunAttachment("b-attachment.txt", "bb", 20);
+
+        Set<String> first = saveWith(db, "blob-run-1", png, txt);
+        Set<String> second = saveWith(db, "blob-run-2", png);
+        expect("blobs to write", List.of(sorted(first), sorted(second)), List.of(List.of("aa", "bb"), List.of("aa")));
+        db.repo.markBlobsStored(first, 0);
+        expect("blobs to write once stored", sorted(saveWith(db, "blob-run-3", png)), List.of());
+
+        List<List<String>> removed = new ArrayList<>();
+        db.repo.deleteByRunId("blob-run-1", removed::add);
+        db.repo.deleteByRunId("blob-run-3", removed::add);
+        expect("blobs removed", removed, List.of(List.of("bb")));
+
+        // an upload referencing a blob while its content is being removed
+        List<Object> during = new ArrayList<>();
+        db.repo.deleteByRunId("blob-run-2", orphaned -> {
+            during.add(sorted(db.repo.deletingBlobs(List.of("aa", "bb"), 0)));
+            during.add(sorted(saveWith(db, "blob-run-4", png)));
+        });
+        expect("blob referenced while deleted", during, List.of(List.of("aa"), List.of("aa")));
+        expect("blob after the delete", List.of(sorted(db.repo.deletingBlobs(List.of("aa"), 0)), sorted(saveWith(db, "blob-run-5", png))),
+                List.of(List.of(), List.of("aa")));
+        observe("blob stats", db.repo.blobStats());
+    }
+
+    private static Set<String> saveWith(BenchDatabase db, String runId, RunAttachment... attachments) {
+        RunMeta meta = RunRepositoryBenchmark.meta(runId, APP, "blobs", FIRST_DAY, List.of());
+        return db.repo.save(meta, List.of(), Map.of(), List.of(attachments));
+    }
+
+    private static List<String> sorted(Set<String> hashes) {
+        return hashes.stream().sorted().toList();
+    }
+
+    // ---------------- cluster ----------------
+
+    private void cluster(BenchDatabase db) {
+        ClusterRepository cluster = new ClusterRepository(db.jdbc, db.read, db.writes, db.migrator);
+        long now = System.currentTimeMillis();
+        long aliveSince = now - 60_000;
+        cluster.heartbeat("node-a", "http://a:8080", now);
+        cluster.heartbeat("node-b", "http://b:8080", now - 600_000);
+
+        expect("live node urls", Arrays.asList(cluster.liveUrl("node-a", aliveSince), cluster.liveUrl("node-b", aliveSince)),
+                Arrays.asList("http://a:8080", null));
+        expect("locks", List.of(
+                cluster.tryLock("lock-1", "node-a", now, aliveSince),   // free
+                cluster.tryLock("lock-1", "node-c", now, aliveSince),   // held by a live node
+                cluster.tryLock("lock-2", "node-b", now, aliveSince),   // free
+                cluster.tryLock("lock-2", "node-a", now, aliveSince)),  // taken over from a stopped node
+                List.of(true, false, true, true));
+        cluster.unlock("lock-1", "node-a");
+        expect("lock after unlock", cluster.tryLock("lock-1", "node-c", now, aliveSince), true);
+        expect("locks released", cluster.releaseLocks("node-c"), 1);
+    }
+
+    // runs after cluster(), whose heartbeats mark node-a live and node-b stopped
+    private void uploadJobs(BenchDatabase db) {
+        UploadJobRepository jobs = new UploadJobRepository(db.jdbc, db.read, db.writes, db.migrator);
+        long aliveSince = System.currentTimeMillis() - 60_000;
+        jobs.save(job(1, "QUEUED", null, null));        // staged in S3
+        jobs.save(job(2, "QUEUED", null, "node-a"));    // on node-a's disk
+        jobs.save(job(3, "RUNNING", "node-b", null));   // running on stopped node-b
+        jobs.save(job(4, "RUNNING", "node-a", null));   // running on node-a
+        jobs.save(job(5, "QUEUED", null, "node-b"));    // on stopped node-b's disk
+
+        expect("job claims", List.of(jobs.claim("job-1", "node-a"), jobs.claim("job-1", "node-c")), List.of(true, false));
+        expect("orphans re-queued", jobs.requeueOrphans(aliveSince), 1);
+        expect("stranded jobs failed", jobs.failStranded(aliveSince), 1);
+        expect("queued for node-a", ids(jobs.findQueued("node-a")), List.of("job-2", "job-3"));
+        expect("queued for node-c", ids(jobs.findQueued("node-c")), List.of("job-3"));
+        expect("job states", List.of(1, 2, 3, 4, 5).stream()
+                .map(i -> jobs.findById("job-" + i))
+                .map(j -> j.getStatus() + "/" + j.getOwner())
+                .toList(), List.of("RUNNING/node-a", "QUEUED/null", "QUEUED/null", "RUNNING/node-a", "FAILED/null"));
+        expect("own jobs re-queued", jobs.requeueOwned("node-a"), 2);
+    }
+
+    // runs after cluster() too
+    private void purgeJobs(BenchDatabase db) {
+        PurgeJobRepository jobs = new PurgeJobRepository(db.jdbc, db.read, db.writes, db.migrator);
+        long aliveSince = System.currentTimeMillis() - 60_000;
+        expect("purge job saves", List.of(
+                jobs.save(purge(1, null)),          // the whole app
+                jobs.save(purge(2, RELEASE)),       // one release
+                jobs.save(purge(3, RELEASE)),       // the same release again
+                jobs.save(purge(4, null))),         // the whole app again
+                List.of(true, true, false, false));
+        expect("active purge jobs", Arrays.asList(jobs.findActive(APP, null).getJobId(), jobs.findActive(APP, RELEASE).getJobId(),
+                jobs.findActive(APP, "other")), Arrays.asList("purge-1", "purge-2", null));
+        expect("purge run count", List.of(db.repo.countRuns(APP, null), db.repo.countRuns(APP, "blobs")),
+                List.of(db.repo.findAllByApp(APP).size(), db.repo.findAllByAppAndRelease(APP, "blobs").size()));
+
+        expect("purge job claims", List.of(jobs.claim("purge-1", "node-a"), jobs.claim("purge-1", "node-c"),
+                jobs.claim("purge-2", "node-b")), List.of(true, false, true));
+        jobs.addObjectsDeleted("purge-1", 1000);
+        jobs.addObjectsDeleted("purge-1", 24);
+        expect("purge orphans re-queued", jobs.requeueOrphans(aliveSince), 1);
+        expect("queued purge jobs", jobs.findQueued().stream().map(PurgeJob::getJobId).toList(), List.of("purge-2"));
+        jobs.updateStatus("purge-1", "COMPLETED", null);
+        expect("purge job after the target is done", jobs.save(purge(5, null)), true);
+        PurgeJob done = jobs.findById("purge-1");
+        expect("finished purge job", List.of(done.getStatus(), done.getObjectsDeleted()), List.of("COMPLETED", 1024L));
+        expect("finished purge jobs dropped", jobs.deleteFinished(LocalDateTime.now().plusMinutes(1)), 1);
+        expect("own purge jobs re-queued", jobs.requeueOwned("node-a"), 0);
+    }
+
+    private static PurgeJob purge(int n, String release) {
+        PurgeJob j = new PurgeJob();
+        j.setJobId("purge-" + n);
+        j.setAppId(APP);
+        j.setRelease(release);
+        j.setStatus("QUEUED");
+        j.setCreatedAt(CREATED.plusMinutes(n));
+        j.setUpdatedAt(j.getCreatedAt());
+        return j;
+    }
+
+    private static UploadJob job(int n, String status, String owner, String stagedOn) {
+        UploadJob j = new UploadJob();
+        j.setJobId("job-" + n);
+        j.setRunId("job-run-" + n);
+        j.setAppId(APP);
+        j.setRelease(RELEASE);
+        j.setExecutionDate(FIRST_DAY.toString());
+        j.setStatus(status);
+        j.setZipPath(stagedOn == null ? "s3://bucket/upload-jobs/job-" + n + ".zip" : "data/upload-jobs/job-" + n + ".zip");
+        j.setCreatedAt(CREATED.plusMinutes(n));
+        j.setUpdatedAt(j.getCreatedAt());
+        j.setOwner(owner);
+        j.setStagedOn(stagedOn);
+        return j;
+    }
+
+    private static List<String> ids(List<UploadJob> jobs) {
+        return jobs.stream().map(UploadJob::getJobId).toList();
+    }
+
+    // ---------------- results ----------------
+
+    // compared across the two databases afterwards
+    private void observe(String check, Object value) {
+        observed.put(check, normalize(mapper.valueToTree(value)));
+    }
+
+    // compared across the two databases, and with the expected value now
+    private void expect(String check, Object value, Object expected) {
+        observe(check, value);
+        if (!Objects.equals(value, expected)) {
+            failures.add(check + " on " + dialect + ": expected " + expected + ", got " + value);
+        }
+    }
+
+    // the drivers return different numeric types (Integer, Long, BigDecimal, Double) for the same value
+    private static JsonNode normalize(JsonNode node) {
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        if (node.isNumber()) {
+            return f.textNode(node.decimalValue().setScale(6, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString());
+        }
+        if (node.isArray()) {
+            ArrayNode out = f.arrayNode();
+            node.forEach(n -> out.add(normalize(n)));
+            return out;
+        }
+        if (node.isObject()) {
+            ObjectNode out = f.objectNode();
+            node.fields().forEachRemaining(e -> out.set(e.getKey(), normalize(e.getValue())));
+            return out;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,110 @@
+package io.allure.platform.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.allure.platform.model.TestResult;
+import io.allure.platform.service.HistoryBuilder;
+import io.allure.platform.service.ResultParser;
+import io.allure.platform.service.ResultsExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU/disk stages of an upload, in pipeline order: extracting the results ZIP,
+ * parsing the result files, building the run's history delta and merging it onto a
+ * release's history (what {@code mergeHistory} did before history became deltas).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class IngestBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tests;
+
+    private final ResultsExtractor extractor = new ResultsExtractor(Integer.MAX_VALUE, DataSize.ofTerabytes(1));
+    private final ResultParser parser = new ResultParser(0);
+    private final HistoryBuilder history = new HistoryBuilder();
+
+    private Path zip;
+    private Path work;
+    private Path results;
+    private int extractions;
+    private List<TestResult> parsed;
+    private Map<String, JsonNode> delta;
+    private Map<String, JsonNode> releaseHistory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        zip = ResultsCorpus.zip(tests);
+        work = Files.createTempDirectory("allure-bench-ingest");
+        results = work.resolve("allure-results");
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(zip))) {
+            extractor.extract(in, results);
+        }
+        parsed = parser.parse(results);
+        delta = history.delta(parsed);
+
+        // a release that already has a full history window behind it
+        releaseHistory = delta;
+        for (int run = 1; run < 20; run++) releaseHistory = history.merge(releaseHistory, delta);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeExtracted() throws IOException {
+        for (int i = 0; i < extractions; i++) FileSystemUtils.deleteRecursively(work.resolve("unzip-" + i));
+        extractions = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        parser.shutdown();
+        FileSystemUtils.deleteRecursively(work);
+    }
+
+    @Benchmark
+    public int unzip() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(zip))) {
+            return extractor.extract(in, work.resolve("unzip-" + extractions++));
+        }
+    }
+
+    @Benchmark
+    public List<TestResult> parseResults() throws IOException {
+        return parser.parse(results);
+    }
+
+    @Benchmark
+    public Map<String, JsonNode> historyDelta() {
+        return history.delta(parsed);
+    }
+
+    @Benchmark
+    public Map<String, JsonNode> mergeHistory() {
+        return history.merge(releaseHistory, delta);
+    }
+}
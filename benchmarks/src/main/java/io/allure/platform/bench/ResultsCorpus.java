@@ -0,0 +1,237 @@
+package io.allure.platform.bench;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import io.allure.platform.model.TestResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic allure-results, shaped like what the Allure Java adapters write: one
+ * {@code -result.json} per test with labels, steps and status details, a text log
+ * attached to every test, a screenshot to every 20th, plus containers and
+ * environment/categories files. The same seed always gives the same corpus.
+ *
+ * <p>Generated ZIPs are kept under {@code bench.corpus.dir} (default
+ * {@code target/corpus}) and reused by later runs.
+ */
+public final class ResultsCorpus {
+
+    private static final long SEED = 42;
+    private static final int SCREENSHOT_EVERY = 20;
+    private static final int TESTS_PER_CONTAINER = 50;
+    private static final int LOG_LINES = 40;
+    private static final int SCREENSHOT_BYTES = 8 * 1024;
+
+    private static final String[] FEATURES = {"Login", "Checkout", "Search", "Profile", "Payments",
+            "Orders", "Notifications", "Settings"};
+    private static final String[] SEVERITIES = {"blocker", "critical", "normal", "minor", "trivial"};
+
+    // generators must leave the ZIP open for its next entry
+    private static final JsonFactory JSON = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private ResultsCorpus() { }
+
+    /** The tests of a corpus, as {@link io.allure.platform.service.ResultParser} reads them back. */
+    public static List<TestResult> tests(int count) {
+        Random random = new Random(SEED);
+        long start = 1_700_000_000_000L;
+        List<TestResult> tests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String feature = FEATURES[i % FEATURES.length];
+            TestResult t = new TestResult();
+            t.setUuid(new UUID(SEED, i).toString());
+            t.setHistoryId(Integer.toHexString(("com.example." + feature + "Test.test" + i).hashCode()));
+            t.setName("test" + i);
+            t.setFullName("com.example." + feature + "Test.test" + i);
+
+            int roll = random.nextInt(100);
+            t.setStatus(roll < 80 ? "passed" : roll < 90 ? "failed" : roll < 95 ? "broken" : "skipped");
+            if (!"passed".equals(t.getStatus())) {
+                t.setStatusMessage("expected <200> but was <" + (400 + random.nextInt(104)) + ">");
+            }
+            t.setStart(start);
+            start += 50 + random.nextInt(5000);
+            t.setStop(start);
+
+            Map<String, String> labels = t.getLabels();
+            labels.put("suite", feature + "Test");
+            labels.put("feature", feature);
+            labels.put("severity", SEVERITIES[random.nextInt(SEVERITIES.length)]);
+            labels.put("thread", "worker-" + random.nextInt(8));
+            labels.put("tag", "regression, " + feature.toLowerCase());
+            tests.add(t);
+        }
+        return tests;
+    }
+
+    /** A results ZIP with {@code count} tests, generated on first use. */
+    public static Path zip(int count) throws IOException {
+        Path dir = Paths.get(System.getProperty("bench.corpus.dir", "target/corpus"));
+        Path zip = dir.resolve("allure-results-" + count + ".zip");
+        if (Files.exists(zip)) return zip;
+
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "allure-results-", ".tmp");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(tmp))) {
+            write(tests(count), out);
+        }
+        return Files.move(tmp, zip, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void write(List<TestResult> tests, ZipOutputStream zip) throws IOException {
+        Random random = new Random(SEED);
+        byte[] screenshot = new byte[SCREENSHOT_BYTES];
+
+        entry(zip, "allure-results/environment.properties",
+                "os=linux\njava=17\nbrowser=chrome\n".getBytes(StandardCharsets.UTF_8));
+        entry(zip, "allure-results/categories.json",
+                "[{\"name\":\"Assertion errors\",\"matchedStatuses\":[\"failed\"]}]".getBytes(StandardCharsets.UTF_8));
+
+        for (int i = 0; i < tests.size(); i++) {
+            TestResult t = tests.get(i);
+            String log = t.getUuid() + "-attachment.txt";
+            String png = i % SCREENSHOT_EVERY == 0 ? t.getUuid() + "-attachment.png" : null;
+
+            zip.putNextEntry(new ZipEntry("allure-results/" + t.getUuid() + "-result.json"));
+            writeResult(t, log, png, zip);
+            zip.closeEntry();
+
+            entry(zip, "allure-results/" + log, log(t, random));
+            if (png != null) {
+                random.nextBytes(screenshot);
+                entry(zip, "allure-results/" + png, screenshot);
+            }
+            if (i % TESTS_PER_CONTAINER == 0) {
+                zip.putNextEntry(new ZipEntry("allure-results/" + new UUID(SEED + 1, i) + "-container.json"));
+                writeContainer(tests.subList(i, Math.min(i + TESTS_PER_CONTAINER, tests.size())), zip);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static void writeResult(TestResult t, String log, String png, OutputStream out) throws IOException {
+        try (JsonGenerator g = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            g.writeStartObject();
+            g.writeStringField("uuid", t.getUuid());
+            g.writeStringField("historyId", t.getHistoryId());
+            g.writeStringField("testCaseId", t.getHistoryId());
+            g.writeStringField("fullName", t.getFullName());
+            g.writeStringField("name", t.getName());
+            g.writeStringField("status", t.getStatus());
+            g.writeObjectFieldStart("statusDetails");
+            g.writeBooleanField("known", false);
+            g.writeBooleanField("flaky", false);
+            if (t.getStatusMessage() != null) {
+                g.writeStringField("message", t.getStatusMessage());
+                g.writeStringField("trace", "java.lang.AssertionError: " + t.getStatusMessage()
+                        + "\n\tat " + t.getFullName() + "(" + t.getLabels().get("suite") + ".java:42)");
+            }
+            g.writeEndObject();
+            g.writeStringField("stage", "finished");
+
+            g.writeArrayFieldStart("steps");
+            long stepStart = t.getStart();
+            for (String step : new String[]{"open page", "fill form", "submit", "verify response"}) {
+                g.writeStartObject();
+                g.writeStringField("name", step);
+                g.writeStringField("status", "passed");
+                g.writeNumberField("start", stepStart);
+                stepStart += (t.getStop() - t.getStart()) / 4;
+                g.writeNumberField("stop", stepStart);
+                g.writeArrayFieldStart("steps");
+                g.writeEndArray();
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+
+            g.writeArrayFieldStart("attachments");
+            attachment(g, "log", log, "text/plain");
+            if (png != null) attachment(g, "screenshot", png, "image/png");
+            g.writeEndArray();
+
+            g.writeArrayFieldStart("parameters");
+            g.writeStartObject();
+            g.writeStringField("name", "locale");
+            g.writeStringField("value", "en_US");
+            g.writeEndObject();
+            g.writeEndArray();
+
+            g.writeArrayFieldStart("labels");
+            for (Map.Entry<String, String> label : t.getLabels().entrySet()) {
+                // a joined tag value goes back out as one label per tag
+                for (String value : label.getValue().split(", ")) {
+                    g.writeStartObject();
+                    g.writeStringField("name", label.getKey());
+                    g.writeStringField("value", value);
+                    g.writeEndObject();
+                }
+            }
+            g.writeEndArray();
+
+            g.writeArrayFieldStart("links");
+            g.writeEndArray();
+            g.writeNumberField("start", t.getStart());
+            g.writeNumberField("stop", t.getStop());
+            g.writeEndObject();
+        }
+    }
+
+    private static void attachment(JsonGenerator g, String name, String source, String type) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("name", name);
+        g.writeStringField("source", source);
+        g.writeStringField("type", type);
+        g.writeEndObject();
+    }
+
+    private static void writeContainer(List<TestResult> children, OutputStream out) throws IOException {
+        try (JsonGenerator g = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            g.writeStartObject();
+            g.writeStringField("name", children.get(0).getLabels().get("suite"));
+            g.writeArrayFieldStart("children");
+            for (TestResult t : children) g.writeString(t.getUuid());
+            g.writeEndArray();
+            g.writeArrayFieldStart("befores");
+            g.writeEndArray();
+            g.writeArrayFieldStart("afters");
+            g.writeEndArray();
+            g.writeNumberField("start", children.get(0).getStart());
+            g.writeNumberField("stop", children.get(children.size() - 1).getStop());
+            g.writeEndObject();
+        }
+    }
+
+    private static byte[] log(TestResult t, Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int line = 0; line < LOG_LINES; line++) {
+            sb.append(t.getStart() + line).append(" INFO [").append(t.getLabels().get("thread")).append("] ")
+                    .append(t.getName()).append(": request ").append(random.nextInt(1_000_000))
+                    .append(" completed in ").append(random.nextInt(900)).append(" ms\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void entry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,89 @@
+package io.allure.platform.bench;
+
+import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.TestResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing one uploaded run: the run row, its daily rollup, one row per test and the
+ * stage timings, committed through the write queue as the upload pipeline does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RunRepositoryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tests;
+
+    private BenchDatabase db;
+    private List<TestResult> results;
+    private Map<String, Long> timings;
+    private int runs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = new BenchDatabase();
+        results = ResultsCorpus.tests(tests);
+        timings = new LinkedHashMap<>();
+        for (String stage : new String[]{"unzip", "history", "parse", "generate", "publish"}) timings.put(stage, 100L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Benchmark
+    public void save() {
+        RunMeta meta = meta("run-" + runs++, "bench-app", "1.0", LocalDate.of(2024, 1, 1).plusDays(runs % 365), results);
+        db.repo.save(meta, results, timings);
+    }
+
+    // the run row ReportService derives from parsed results
+    static RunMeta meta(String runId, String appId, String release, LocalDate day, List<TestResult> tests) {
+        RunMeta meta = new RunMeta();
+        meta.setRunId(runId);
+        meta.setAppId(appId);
+        meta.setRelease(release);
+        meta.setExecutionDate(day);
+        meta.setTimestamp(LocalDateTime.of(day, LocalTime.NOON));
+        for (TestResult t : tests) {
+            switch (t.getStatus()) {
+                case "passed" -> meta.setPassed(meta.getPassed() + 1);
+                case "failed" -> meta.setFailed(meta.getFailed() + 1);
+                case "broken" -> meta.setBroken(meta.getBroken() + 1);
+                case "skipped" -> meta.setSkipped(meta.getSkipped() + 1);
+                default -> { }
+            }
+            meta.setDurationMs(meta.getDurationMs() + t.getDurationMs());
+        }
+        meta.setTotal(tests.size());
+        meta.setHtmlPath("storage/" + appId + "/" + release + "/" + runId + "/index.html");
+        meta.setHistoryPath("storage/" + appId + "/" + release + "/" + runId + "/history");
+        return meta;
+    }
+}
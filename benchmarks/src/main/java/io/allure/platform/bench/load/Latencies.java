@@ -0,0 +1,57 @@
+package io.allure.platform.bench.load;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Response times of one kind of request, kept in full so percentiles are exact. */
+final class Latencies {
+
+    private long[] nanos = new long[1024];
+    private int count;
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    synchronized void record(long elapsedNanos) {
+        if (count == nanos.length) nanos = Arrays.copyOf(nanos, count * 2);
+        nanos[count++] = elapsedNanos;
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    void bytes(long n) {
+        bytes.addAndGet(n);
+    }
+
+    /** count, errors, throughput and p50/p99/max in milliseconds over {@code seconds} of load. */
+    synchronized Map<String, Object> summary(double seconds) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("count", count);
+        s.put("errors", errors.get());
+        s.put("perSecond", round(count / seconds));
+        s.put("p50Ms", millis(percentile(sorted, 0.50)));
+        s.put("p99Ms", millis(percentile(sorted, 0.99)));
+        s.put("maxMs", millis(count == 0 ? 0 : sorted[count - 1]));
+        s.put("mbPerSecond", round(bytes.get() / seconds / (1024 * 1024)));
+        return s;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1_000_000.0);
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+}
@@ -0,0 +1,406 @@
+package io.allure.platform.bench.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.allure.platform.bench.ResultsCorpus;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * End-to-end load test: boots the application jar against a scratch SQLite database
+ * and either local storage or an in-process {@link S3Stub}, with a stub {@code allure}
+ * on the PATH, then has {@code uploaders} CI-like clients post results ZIPs to
+ * {@code /api/upload} while {@code readers} browse {@code /api/charts/*} and
+ * {@code /api/view}. Reports p50/p99 latency and throughput per request kind, and
+ * the application's heap and temp-disk use, on the console and as JSON.
+ *
+ * <p>Options are {@code key=value} arguments, see {@link #DEFAULTS}. Runs offline.
+ */
+public final class LoadTest {
+
+    static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("app", "target/allure-platform-0.0.1-SNAPSHOT-exec.jar");
+        DEFAULTS.put("storage", "s3");          // s3 (stub) or local
+        DEFAULTS.put("uploaders", "24");
+        DEFAULTS.put("readers", "16");
+        DEFAULTS.put("duration", "60s");
+        DEFAULTS.put("tests", "200");           // tests per uploaded ZIP
+        DEFAULTS.put("apps", "4");
+        DEFAULTS.put("releases", "3");          // per app
+        DEFAULTS.put("heap", "1g");             // the application's -Xmx
+        DEFAULTS.put("java", "");               // JDK home the application runs on (default: this one)
+        DEFAULTS.put("virtual", "false");       // threads.virtual, needs java 21+
+        DEFAULTS.put("port", "18080");
+        DEFAULTS.put("generate-delay", "0.5");  // seconds the stub allure takes per report
+        DEFAULTS.put("out", "load-result.json");
+        DEFAULTS.put("keep", "false");          // keep the work folder (database, storage, app.log)
+    }
+
+    private static final List<String> READS = List.of("charts/app", "charts/release", "charts/bugs", "view");
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Map<String, String> options;
+    private final Path work;
+    private final String base;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final Map<String, Latencies> latencies = new LinkedHashMap<>();
+    private final List<String> reportKeys = new CopyOnWriteArrayList<>();
+    private final AtomicLong heapMax = new AtomicLong();
+    private final AtomicLong heapLast = new AtomicLong();
+    private final AtomicLong tempMax = new AtomicLong();
+    private final AtomicLong tempLast = new AtomicLong();
+
+    private byte[] zip;
+
+    private LoadTest(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.work = Files.createTempDirectory("allure-load");
+        this.base = "http://127.0.0.1:" + options.get("port");
+        latencies.put("upload", new Latencies());
+        for (String read : READS) latencies.put(read, new Latencies());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg : arg.substring(0, eq);
+            if (!DEFAULTS.containsKey(key)) {
+                System.err.println("Unknown option " + key + "; options and defaults: " + DEFAULTS);
+                System.exit(2);
+            }
+            options.put(key, eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        boolean s3 = "s3".equalsIgnoreCase(options.get("storage"));
+        Process app = null;
+        try (S3Stub stub = s3 ? new S3Stub() : null) {
+            zip = Files.readAllBytes(ResultsCorpus.zip(intOption("tests")));
+            app = start(stub);
+            Process running = app;
+            Runtime.getRuntime().addShutdownHook(new Thread(running::destroyForcibly));
+            awaitHealthy(app);
+
+            // every app/release gets a run up front, so charts and views have something to read
+            int apps = intOption("apps"), releases = intOption("releases");
+            for (int a = 0; a < apps; a++) {
+                for (int r = 0; r < releases; r++) upload(a, r, null);
+            }
+
+            Map<String, Object> result = load();
+            if (stub != null) result.put("s3", stub.stats());
+            print(result);
+            MAPPER.writeValue(Paths.get(options.get("out")).toFile(), result);
+            System.out.println("Results written to " + options.get("out"));
+        } finally {
+            if (app != null) stop(app);
+            if (Boolean.parseBoolean(options.get("keep"))) System.out.println("Work folder kept at " + work);
+            else FileSystemUtils.deleteRecursively(work);
+        }
+    }
+
+    // ---------------- application ----------------
+
+    private Process start(S3Stub stub) throws IOException {
+        Path bin = Files.createDirectories(work.resolve("bin"));
+        Path allure = bin.resolve("allure");
+        try (InputStream in = LoadTest.class.getResourceAsStream("/load/allure")) {
+            Files.copy(in, allure);
+        }
+        Files.setPosixFilePermissions(allure, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.createDirectories(work.resolve("tmp"));
+
+        String home = options.get("java").isBlank() ? System.getProperty("java.home") : options.get("java");
+        String java = Paths.get(home, "bin", "java").toString();
+        List<String> cmd = new ArrayList<>(List.of(java,
+                "-Xmx" + options.get("heap"),
+                "-Djava.io.tmpdir=" + work.resolve("tmp"),
+                "-jar", Paths.get(options.get("app")).toAbsolutePath().toString(),
+                "--server.port=" + options.get("port"),
+                "--storage.mode=" + (stub != null ? "s3" : "local"),
+                "--spring.datasource.url=jdbc:sqlite:" + work.resolve("data/allure.db"),
+                "--app.storage.root=" + work.resolve("storage"),
+                "--upload.async.staging-dir=" + work.resolve("data/upload-jobs"),
+                "--report.generator.mode=cli",
+                "--threads.virtual=" + Boolean.parseBoolean(options.get("virtual"))));
+        if (stub != null) {
+            cmd.add("--aws.s3.endpoint=" + stub.endpoint());
+            cmd.add("--aws.s3.bucket=allure-load");
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(cmd)
+                .redirectErrorStream(true)
+                .redirectOutput(work.resolve("app.log").toFile());
+        Map<String, String> env = pb.environment();
+        env.put("PATH", bin + ":" + env.getOrDefault("PATH", ""));
+        env.put("ALLURE_STUB_DELAY", options.get("generate-delay"));
+        env.remove("ALLURE_HOME");
+        env.put("AWS_ACCESS_KEY_ID", "load-test");
+        env.put("AWS_SECRET_ACCESS_KEY", "load-test");
+        env.put("AWS_REGION", "us-east-1");
+        System.out.println("Starting " + String.join(" ", cmd));
+        return pb.start();
+    }
+
+    private void awaitHealthy(Process app) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) throw new IllegalStateException("Application exited, see " + work.resolve("app.log")
+                    + ":\n" + tail(work.resolve("app.log")));
+            try {
+                if (get("/actuator/health").statusCode() == 200) return;
+            } catch (IOException notYet) {
+                // still starting
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Application not healthy after 120s:\n" + tail(work.resolve("app.log")));
+    }
+
+    private static void stop(Process app) throws InterruptedException {
+        app.destroy();
+        if (!app.waitFor(30, TimeUnit.SECONDS)) app.destroyForcibly().waitFor();
+    }
+
+    // ---------------- load ----------------
+
+    private Map<String, Object> load() throws Exception {
+        int uploaders = intOption("uploaders"), readers = intOption("readers");
+        long deadline = System.nanoTime() + DurationStyle.detectAndParse(options.get("duration")).toNanos();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService clients = Executors.newFixedThreadPool(uploaders + readers);
+        ExecutorService sampler = Executors.newSingleThreadExecutor();
+        sampler.submit(() -> sample(deadline));
+
+        System.out.printf("Running %d uploaders and %d readers for %s%n", uploaders, readers, options.get("duration"));
+        long started = System.nanoTime();
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < uploaders; i++) {
+            running.add(clients.submit(() -> loop(deadline, failure, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                upload(random.nextInt(intOption("apps")), random.nextInt(intOption("releases")), latencies.get("upload"));
+            })));
+        }
+        for (int i = 0; i < readers; i++) {
+            int first = i;
+            running.add(clients.submit(() -> {
+                AtomicLong n = new AtomicLong(first);
+                loop(deadline, failure, () -> read(READS.get((int) (n.getAndIncrement() % READS.size()))));
+            }));
+        }
+        for (Future<?> f : running) f.get();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        clients.shutdown();
+        sampler.shutdownNow();
+        if (failure.get() != null) System.err.println("First client error: " + failure.get());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("options", options);
+        result.put("seconds", Math.round(seconds * 10) / 10.0);
+        Map<String, Object> requests = new LinkedHashMap<>();
+        latencies.forEach((kind, l) -> requests.put(kind, l.summary(seconds)));
+        result.put("requests", requests);
+        result.put("heapMb", maxAndEnd(heapMax, heapLast));
+        result.put("tempDiskMb", maxAndEnd(tempMax, tempLast));
+        return result;
+    }
+
+    private interface Request {
+        void send() throws Exception;
+    }
+
+    private static void loop(long deadline, AtomicReference<Throwable> failure, Request request) {
+        while (System.nanoTime() < deadline) {
+            try {
+                request.send();
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    private void upload(int app, int release, Latencies latency) throws Exception {
+        String boundary = UUID.randomUUID().toString();
+        String date = LocalDate.now().minusDays(ThreadLocalRandom.current().nextInt(30)).toString();
+        String head = field(boundary, "appId", "load-app-" + app)
+                + field(boundary, "release", "r" + release)
+                + field(boundary, "executionDate", date)
+                + "--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"allure-results.zip\"\r\n"
+                + "Content-Type: application/zip\r\n\r\n";
+        String tail = "\r\n--" + boundary + "--\r\n";
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/api/upload"))
+                .timeout(Duration.ofMinutes(10))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(
+                        head.getBytes(StandardCharsets.UTF_8), zip, tail.getBytes(StandardCharsets.UTF_8))))
+                .build();
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        long elapsed = System.nanoTime() - start;
+
+        if (response.statusCode() != 200) {
+            if (latency != null) latency.error();
+            else throw new IllegalStateException("Seed upload failed: " + response.statusCode() + " "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+            return;
+        }
+        JsonNode html = MAPPER.readTree(response.body()).get("htmlPath");
+        if (html != null && !html.isNull()) reportKeys.add(html.asText());
+        if (latency != null) {
+            latency.record(elapsed);
+            latency.bytes(zip.length);
+        }
+    }
+
+    private void read(String kind) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String appId = "load-app-" + random.nextInt(intOption("apps"));
+        String release = "r" + random.nextInt(intOption("releases"));
+        String from = LocalDate.now().minusDays(30).toString(), to = LocalDate.now().toString();
+        String path = switch (kind) {
+            case "charts/app" -> "/api/charts/app?appId=" + appId + "&from=" + from + "&to=" + to;
+            case "charts/release" -> "/api/charts/release?appId=" + appId + "&release=" + release + "&from=" + from + "&to=" + to;
+            case "charts/bugs" -> "/api/charts/bugs?appId=" + appId + "&release=" + release;
+            default -> "/api/view?key=" + URLEncoder.encode(reportKeys.get(random.nextInt(reportKeys.size())), StandardCharsets.UTF_8);
+        };
+
+        Latencies latency = latencies.get(kind);
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = get(path);
+        long elapsed = System.nanoTime() - start;
+        if (response.statusCode() != 200) {
+            latency.error();
+            return;
+        }
+        latency.record(elapsed);
+        latency.bytes(response.body().length);
+    }
+
+    private HttpResponse<byte[]> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofMinutes(1)).build();
+        return http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String field(String boundary, String name, String value) {
+        return "--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n";
+    }
+
+    // ---------------- resources ----------------
+
+    // heap from the application's own metrics, temp disk from its tmpdir and upload staging folder
+    private void sample(long deadline) {
+        while (System.nanoTime() < deadline + TimeUnit.SECONDS.toNanos(60) && !Thread.currentThread().isInterrupted()) {
+            try {
+                HttpResponse<byte[]> response = get("/actuator/metrics/jvm.memory.used?tag=area:heap");
+                if (response.statusCode() == 200) {
+                    long heap = MAPPER.readTree(response.body()).at("/measurements/0/value").asLong();
+                    heapLast.set(heap);
+                    heapMax.accumulateAndGet(heap, Math::max);
+                }
+                long temp = sizeOf(work.resolve("tmp")) + sizeOf(work.resolve("data/upload-jobs"));
+                tempLast.set(temp);
+                tempMax.accumulateAndGet(temp, Math::max);
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                // skip this sample
+            }
+        }
+    }
+
+    // files come and go while the pipeline runs; whatever vanishes mid-walk is skipped
+    private static long sizeOf(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        AtomicLong size = new AtomicLong();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                size.addAndGet(attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size.get();
+    }
+
+    // ---------------- output ----------------
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> result) {
+        System.out.printf("%n%-16s %8s %7s %9s %9s %9s %9s %8s%n",
+                "request", "count", "errors", "per sec", "p50 ms", "p99 ms", "max ms", "MB/s");
+        ((Map<String, Map<String, Object>>) result.get("requests")).forEach((kind, s) ->
+                System.out.printf("%-16s %8s %7s %9s %9s %9s %9s %8s%n", kind, s.get("count"), s.get("errors"),
+                        s.get("perSecond"), s.get("p50Ms"), s.get("p99Ms"), s.get("maxMs"), s.get("mbPerSecond")));
+        System.out.printf("%nheap MB      %s%ntemp disk MB %s%n", result.get("heapMb"), result.get("tempDiskMb"));
+        if (result.containsKey("s3")) System.out.printf("s3 stub      %s%n", result.get("s3"));
+    }
+
+    private int intOption(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private static Map<String, Double> maxAndEnd(AtomicLong max, AtomicLong last) {
+        Map<String, Double> mb = new LinkedHashMap<>();
+        mb.put("max", mb(max.get()));
+        mb.put("end", mb(last.get()));
+        return mb;
+    }
+
+    private static double mb(long bytes) {
+        return Math.round(bytes / (1024.0 * 1024) * 10) / 10.0;
+    }
+
+    private static String tail(Path log) throws IOException {
+        if (!Files.exists(log)) return "";
+        List<String> lines = Files.readAllLines(log);
+        return String.join("\n", lines.subList(Math.max(0, lines.size() - 40), lines.size()));
+    }
+}
@@ -0,0 +1,282 @@
+package io.allure.platform.bench.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory, path-style S3 stand-in covering the calls the platform makes: object
+ * PUT/GET (with Range and If-None-Match)/HEAD/DELETE, multipart uploads,
+ * ListObjectsV2 and DeleteObjects. Signatures are not checked.
+ */
+final class S3Stub implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>");
+
+    // "bucket/key" -> content
+    private final NavigableMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, NavigableMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final HttpServer server;
+
+    S3Stub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "s3-stub");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("objects", objects.size());
+        stats.put("bytes", objects.values().stream().mapToLong(b -> b.length).sum());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        try (ex) {
+            String path = ex.getRequestURI().getRawPath().substring(1);
+            int slash = path.indexOf('/');
+            String bucket = slash < 0 ? path : path.substring(0, slash);
+            String key = slash < 0 ? "" : decode(path.substring(slash + 1));
+            Map<String, String> query = query(ex.getRequestURI().getRawQuery());
+
+            switch (ex.getRequestMethod()) {
+                case "PUT" -> put(ex, bucket, key, query);
+                case "POST" -> post(ex, bucket, key, query);
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) uploads.remove(query.get("uploadId"));
+                    else objects.remove(bucket + "/" + key);
+                    send(ex, 204, null, null);
+                }
+                case "GET", "HEAD" -> {
+                    if (key.isEmpty()) list(ex, bucket, query);
+                    else get(ex, bucket + "/" + key);
+                }
+                default -> send(ex, 405, null, null);
+            }
+        }
+    }
+
+    private void put(HttpExchange ex, String bucket, String key, Map<String, String> query) throws IOException {
+        byte[] data = body(ex);
+        if (query.containsKey("partNumber")) {
+            NavigableMap<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+            if (parts == null) {
+                send(ex, 404, xml("<Error><Code>NoSuchUpload</Code></Error>"), null);
+                return;
+            }
+            parts.put(Integer.parseInt(query.get("partNumber")), data);
+        } else if (!key.isEmpty()) {
+            objects.put(bucket + "/" + key, data);
+        }
+        send(ex, 200, null, Map.of("ETag", etag(data)));
+    }
+
+    private void post(HttpExchange ex, String bucket, String key, Map<String, String> query) throws IOException {
+        byte[] data = body(ex);
+        if (query.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            uploads.put(uploadId, new ConcurrentSkipListMap<>());
+            send(ex, 200, xml("<InitiateMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key)
+                    + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>"), null);
+        } else if (query.containsKey("uploadId")) {
+            NavigableMap<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+            if (parts == null) {
+                send(ex, 404, xml("<Error><Code>NoSuchUpload</Code></Error>"), null);
+                return;
+            }
+            ByteArrayOutputStream whole = new ByteArrayOutputStream();
+            for (byte[] part : parts.values()) whole.write(part);
+            objects.put(bucket + "/" + key, whole.toByteArray());
+            send(ex, 200, xml("<CompleteMultipartUploadResult><Key>" + escape(key) + "</Key><ETag>"
+                    + etag(whole.toByteArray()) + "</ETag></CompleteMultipartUploadResult>"), null);
+        } else if (query.containsKey("delete")) {
+            StringBuilder result = new StringBuilder("<DeleteResult>");
+            Matcher m = DELETE_KEY.matcher(new String(data, StandardCharsets.UTF_8));
+            while (m.find()) {
+                String deleted = unescape(m.group(1));
+                objects.remove(bucket + "/" + deleted);
+                result.append("<Deleted><Key>").append(escape(deleted)).append("</Key></Deleted>");
+            }
+            send(ex, 200, xml(result.append("</DeleteResult>").toString()), null);
+        } else {
+            send(ex, 400, null, null);
+        }
+    }
+
+    private void list(HttpExchange ex, String bucket, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String after = query.getOrDefault("continuation-token", query.getOrDefault("start-after", ""));
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+
+        StringBuilder contents = new StringBuilder();
+        String last = null;
+        boolean truncated = false;
+        int count = 0;
+        for (Map.Entry<String, byte[]> e : objects.tailMap(bucket + "/" + prefix, true).entrySet()) {
+            String key = e.getKey().substring(bucket.length() + 1);
+            if (!e.getKey().startsWith(bucket + "/") || !key.startsWith(prefix)) break;
+            if (key.compareTo(after) <= 0) continue;
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            contents.append("<Contents><Key>").append(escape(key)).append("</Key><Size>")
+                    .append(e.getValue().length).append("</Size></Contents>");
+            last = key;
+            count++;
+        }
+        send(ex, 200, xml("<ListBucketResult><Name>" + escape(bucket) + "</Name><Prefix>" + escape(prefix)
+                + "</Prefix><KeyCount>" + count + "</KeyCount><IsTruncated>" + truncated + "</IsTruncated>"
+                + (truncated ? "<NextContinuationToken>" + escape(last) + "</NextContinuationToken>" : "")
+                + contents + "</ListBucketResult>"), null);
+    }
+
+    private void get(HttpExchange ex, String id) throws IOException {
+        byte[] data = objects.get(id);
+        if (data == null) {
+            send(ex, 404, xml("<Error><Code>NoSuchKey</Code><Message>The specified key does not exist.</Message></Error>"), null);
+            return;
+        }
+        String etag = etag(data);
+        if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+            send(ex, 304, null, Map.of("ETag", etag));
+            return;
+        }
+
+        Map<String, String> headers = new HashMap<>(Map.of("ETag", etag, "Accept-Ranges", "bytes",
+                "Content-Type", "application/octet-stream"));
+        String range = ex.getRequestHeaders().getFirst("Range");
+        Matcher m = range == null ? null : RANGE.matcher(range);
+        if (m == null || !m.matches()) {
+            send(ex, 200, data, headers);
+            return;
+        }
+        int from, to;
+        if (m.group(1).isEmpty()) {
+            from = Math.max(0, data.length - Integer.parseInt(m.group(2)));
+            to = data.length - 1;
+        } else {
+            from = Integer.parseInt(m.group(1));
+            to = m.group(2).isEmpty() ? data.length - 1 : Math.min(Integer.parseInt(m.group(2)), data.length - 1);
+        }
+        headers.put("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+        byte[] slice = new byte[Math.max(0, to - from + 1)];
+        System.arraycopy(data, from, slice, 0, slice.length);
+        send(ex, 206, slice, headers);
+    }
+
+    // ---------------- http ----------------
+
+    private static byte[] body(HttpExchange ex) throws IOException {
+        byte[] data;
+        try (InputStream in = ex.getRequestBody()) {
+            data = in.readAllBytes();
+        }
+        String sha = ex.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String encoding = ex.getRequestHeaders().getFirst("Content-Encoding");
+        boolean awsChunked = sha != null && sha.startsWith("STREAMING")
+                || encoding != null && encoding.contains("aws-chunked");
+        return awsChunked ? decodeAwsChunked(data) : data;
+    }
+
+    // "<hex size>;chunk-signature=...\r\n<data>\r\n" ... "0;...\r\n"
+    private static byte[] decodeAwsChunked(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+        int i = 0;
+        while (i < body.length) {
+            int eol = i;
+            while (eol + 1 < body.length && !(body[eol] == '\r' && body[eol + 1] == '\n')) eol++;
+            String header = new String(body, i, eol - i, StandardCharsets.US_ASCII);
+            int semi = header.indexOf(';');
+            int size = Integer.parseInt(semi < 0 ? header.trim() : header.substring(0, semi), 16);
+            if (size == 0) break;
+            i = eol + 2;
+            out.write(body, i, size);
+            i += size + 2;
+        }
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange ex, int status, byte[] body, Map<String, String> headers) throws IOException {
+        if (headers != null) headers.forEach((k, v) -> ex.getResponseHeaders().set(k, v));
+        if (body != null && !ex.getResponseHeaders().containsKey("Content-Type")) {
+            ex.getResponseHeaders().set("Content-Type", "application/xml");
+        }
+        boolean head = "HEAD".equals(ex.getRequestMethod());
+        if (head || body == null || status == 204 || status == 304) {
+            if (head && body != null) ex.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            ex.sendResponseHeaders(status, -1);
+            return;
+        }
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> query = new HashMap<>();
+        if (raw == null) return query;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String s) {
+        return URLDecoder.decode(s.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static String etag(byte[] data) {
+        return "\"" + DigestUtils.md5DigestAsHex(data) + "\"";
+    }
+
+    private static byte[] xml(String body) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String unescape(String s) {
+        return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+    }
+}
@@ -3,16 +3,46 @@ package io.allure.platform.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.backoff.BackoffStrategy;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
+import java.net.URI;
+
 @Configuration
 public class AwsConfig {
 
+    // aws.s3.endpoint points both clients at an S3-compatible store such as MinIO
+    @Bean
+    public S3Client s3Client(@Value("${aws.region:ap-south-1}") String region,
+                             @Value("${aws.s3.endpoint:}") String endpoint) {
+        var builder = S3Client.builder()
+                .region(Region.of(region));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
+    }
+
     @Bean
-    public S3Client s3Client(@Value("${aws.region:ap-south-1}") String region) {
-        return S3Client.builder()
+    public S3AsyncClient s3AsyncClient(@Value("${aws.region:ap-south-1}") String region,
+                                       @Value("${aws.s3.endpoint:}") String endpoint,
+                                       @Value("${aws.s3.max-retries:5}") int maxRetries) {
+        var builder = S3AsyncClient.builder()
                 .region(Region.of(region))
-                .build();
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .retryPolicy(RetryPolicy.builder()
+                                .numRetries(maxRetries)
+                                .backoffStrategy(BackoffStrategy.defaultStrategy())
+                                .throttlingBackoffStrategy(BackoffStrategy.defaultThrottlingStrategy())
+                                .build())
+                        .build());
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
     }
 }
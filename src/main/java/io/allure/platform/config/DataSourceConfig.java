@@ -0,0 +1,151 @@
+package io.allure.platform.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.allure.platform.repo.SqlDialect;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Run database connections: one writer connection (the primary DataSource, used by the
+ * transaction manager and {@link io.allure.platform.repo.WriteQueue}) and a pool of
+ * read-only connections for queries. The backend follows {@code spring.datasource.url}:
+ * a {@code jdbc:sqlite:} file, or a shared {@code jdbc:postgresql:} database.
+ *
+ * <p>SQLite runs in WAL mode, so readers never block on the writer, and the busy timeout
+ * covers the short checkpoint windows where they would.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    private static final String SQLITE_PREFIX = "jdbc:sqlite:";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final SqlDialect dialect;
+    private final int busyTimeoutMs;
+    private final long mmapSize;
+
+    public DataSourceConfig(@Value("${spring.datasource.url}") String url,
+                            @Value("${spring.datasource.username:}") String username,
+                            @Value("${spring.datasource.password:}") String password,
+                            @Value("${sqlite.busy-timeout:5s}") Duration busyTimeout,
+                            @Value("${sqlite.mmap-size:256MB}") DataSize mmapSize) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.dialect = SqlDialect.forUrl(url);
+        this.busyTimeoutMs = (int) busyTimeout.toMillis();
+        this.mmapSize = mmapSize.toBytes();
+    }
+
+    @Bean
+    public SqlDialect sqlDialect() {
+        return dialect;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource() throws IOException {
+        HikariDataSource ds;
+        if (dialect == SqlDialect.POSTGRES) {
+            ds = postgres("db-writer", 1);
+        } else {
+            createParentDirectory();
+            SQLiteConfig config = sqliteConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            // take the write lock when the transaction starts rather than on its first write
+            config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+            ds = sqlite(config, "sqlite-writer", 1);
+        }
+        ds.setMinimumIdle(1);
+        return ds;
+    }
+
+    // lazily started, so the schema exists (created and migrated by the writer) before
+    // the first read-only connection opens it
+    @Bean
+    public DataSource readDataSource(@Value("${sqlite.read-pool-size:4}") int sqlitePoolSize,
+                                     @Value("${postgres.read-pool-size:8}") int postgresPoolSize) {
+        HikariDataSource ds;
+        if (dialect == SqlDialect.POSTGRES) {
+            ds = postgres("db-reader", postgresPoolSize);
+        } else {
+            SQLiteConfig config = sqliteConfig();
+            config.setReadOnly(true);
+            ds = sqlite(config, "sqlite-reader", sqlitePoolSize);
+        }
+        // Hikari re-applies the flag to every connection; sqlite only accepts the value it was opened with
+        ds.setReadOnly(true);
+        return ds;
+    }
+
+    @Bean
+    @Primary
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public JdbcTemplate readJdbcTemplate(@Qualifier("readDataSource") DataSource readDataSource) {
+        return new JdbcTemplate(readDataSource);
+    }
+
+    // ---------------- postgres ----------------
+
+    private HikariDataSource postgres(String name, int size) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setJdbcUrl(url);
+        if (!username.isBlank()) ds.setUsername(username);
+        if (!password.isBlank()) ds.setPassword(password);
+        ds.setPoolName(name);
+        ds.setMaximumPoolSize(size);
+        return ds;
+    }
+
+    // ---------------- sqlite ----------------
+
+    private SQLiteConfig sqliteConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(busyTimeoutMs);
+        config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString(mmapSize));
+        return config;
+    }
+
+    private HikariDataSource sqlite(SQLiteConfig config, String name, int size) {
+        SQLiteDataSource sqlite = new SQLiteDataSource(config);
+        sqlite.setUrl(url);
+
+        HikariDataSource ds = new HikariDataSource();
+        ds.setDataSource(sqlite);
+        ds.setPoolName(name);
+        ds.setMaximumPoolSize(size);
+        return ds;
+    }
+
+    // SQLite creates the file but not the folder it lives in
+    private void createParentDirectory() throws IOException {
+        String file = url.substring(SQLITE_PREFIX.length());
+        int query = file.indexOf('?');
+        if (query >= 0) file = file.substring(0, query);
+        if (file.isEmpty() || file.startsWith(":memory:") || file.startsWith("file:")) return;
+
+        Path parent = Paths.get(file).toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+    }
+}
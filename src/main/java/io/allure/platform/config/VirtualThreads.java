@@ -0,0 +1,171 @@
+package io.allure.platform.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in virtual-thread mode ({@code threads.virtual=true}, Java 21 or newer). Tomcat
+ * then handles every request on a virtual thread of its own instead of its 200-thread
+ * pool, the upload pipelines run on virtual threads and {@link #forEach} fans per-file
+ * work out to one virtual thread per file. With the pools gone, shared resources are
+ * bounded by the semaphores in front of them rather than by thread counts: the writer
+ * queue ({@code sqlite.write.max-pending}), the generator slots
+ * ({@code report.generator.max-concurrent}) and {@code threads.virtual.file-concurrency}
+ * for per-file work.
+ *
+ * <p>The build still targets Java 17, so the Java 21 API is looked up reflectively;
+ * turning the mode on under an older runtime fails at startup.
+ */
+@Configuration
+public class VirtualThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private final boolean enabled;
+    private final Semaphore fileSlots;
+    private final ExecutorService files;
+
+    public VirtualThreads(@Value("${threads.virtual:false}") boolean enabled,
+                          @Value("${threads.virtual.file-concurrency:64}") int fileConcurrency) {
+        this.enabled = enabled;
+        this.fileSlots = new Semaphore(Math.max(1, fileConcurrency));
+        if (enabled && Runtime.version().feature() < 21) {
+            throw new IllegalStateException("threads.virtual=true needs Java 21 or newer, running on " + Runtime.version());
+        }
+        this.files = enabled ? perTask("report-file-") : null;
+        if (enabled) log.info("Virtual threads enabled for request handling, upload pipelines and per-file work");
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // Tomcat hands every accepted request to this executor instead of its own worker pool
+    @Bean
+    @ConditionalOnProperty(name = "threads.virtual", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadRequests() {
+        return handler -> handler.setExecutor(perTask("http-"));
+    }
+
+    // ---------------- executors ----------------
+
+    /** Virtual threads named {@code prefix<n>}, or daemon platform threads when the mode is off. */
+    public ThreadFactory factory(String prefix) {
+        if (enabled) return virtualFactory(prefix);
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * A pool of {@code size} daemon threads, or one virtual thread per task when the mode is
+     * on. Callers that rely on the pool size to bound concurrency must bound it themselves.
+     */
+    public ExecutorService fixedPool(String prefix, int size) {
+        return enabled ? perTask(prefix) : Executors.newFixedThreadPool(size, factory(prefix));
+    }
+
+    /** A cached pool of daemon threads, or one virtual thread per task when the mode is on. */
+    public ExecutorService cachedPool(String prefix) {
+        return enabled ? perTask(prefix) : Executors.newCachedThreadPool(factory(prefix));
+    }
+
+    // ---------------- per-file work ----------------
+
+    /** One file's blocking work, e.g. a download or a hash. */
+    @FunctionalInterface
+    public interface FileTask<T> {
+        void run(T item) throws IOException;
+    }
+
+    /**
+     * Runs {@code task} for every item and waits for all of them. In virtual-thread mode each
+     * item gets a virtual thread of its own, at most {@code threads.virtual.file-concurrency}
+     * of them running across all callers; otherwise the items run one after the other on the
+     * calling thread, as before.
+     *
+     * @throws IOException the first failure; the remaining items still run to completion
+     */
+    public <T> void forEach(Collection<T> items, FileTask<T> task) throws IOException {
+        if (!enabled || items.size() < 2) {
+            for (T item : items) task.run(item);
+            return;
+        }
+
+        List<Future<?>> pending = new ArrayList<>(items.size());
+        for (T item : items) {
+            pending.add(files.submit(() -> {
+                fileSlots.acquireUninterruptibly();
+                try {
+                    task.run(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    fileSlots.release();
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pending.forEach(p -> p.cancel(true));
+                throw new IOException("Interrupted waiting for file tasks", e);
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause();
+            }
+        }
+        if (failure instanceof UncheckedIOException u) throw u.getCause();
+        if (failure instanceof RuntimeException re) throw re;
+        if (failure instanceof Error err) throw err;
+    }
+
+    // ---------------- Java 21 API ----------------
+
+    // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory())
+    private static ExecutorService perTask(String prefix) {
+        try {
+            Method newThreadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTask.invoke(null, virtualFactory(prefix));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available on Java " + Runtime.version(), e);
+        }
+    }
+
+    private static ThreadFactory virtualFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available on Java " + Runtime.version(), e);
+        }
+    }
+}
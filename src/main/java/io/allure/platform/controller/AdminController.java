@@ -1,9 +1,13 @@
 package io.allure.platform.controller;
 
+import io.allure.platform.model.PurgeJob;
+import io.allure.platform.service.PurgeJobService;
+import io.allure.platform.service.QueryCache;
 import io.allure.platform.service.ReportService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -11,9 +15,13 @@ import java.util.Map;
 public class AdminController {
 
     private final ReportService reportService;
+    private final PurgeJobService purgeJobService;
+    private final QueryCache queryCache;
 
-    public AdminController(ReportService reportService) {
+    public AdminController(ReportService reportService, PurgeJobService purgeJobService, QueryCache queryCache) {
         this.reportService = reportService;
+        this.purgeJobService = purgeJobService;
+        this.queryCache = queryCache;
     }
 
     // DELETE RUN
@@ -23,20 +31,62 @@ public class AdminController {
         return ResponseEntity.ok(Map.of("status", "deleted", "runId", runId));
     }
 
-    // DELETE RELEASE
+    // DELETE RELEASE (async=true runs it as a background purge job)
     @DeleteMapping("/release")
     public ResponseEntity<?> deleteRelease(
             @RequestParam String appId,
-            @RequestParam String release) throws Exception {
+            @RequestParam String release,
+            @RequestParam(defaultValue = "false") boolean async) throws Exception {
 
+        if (async) return accepted(purgeJobService.submit(appId, release));
         reportService.deleteRelease(appId, release);
         return ResponseEntity.ok(Map.of("status", "deleted", "appId", appId, "release", release));
     }
 
-    // DELETE APP
+    // DELETE APP (async=true runs it as a background purge job)
     @DeleteMapping("/app/{appId}")
-    public ResponseEntity<?> deleteApp(@PathVariable String appId) throws Exception {
+    public ResponseEntity<?> deleteApp(@PathVariable String appId,
+                                       @RequestParam(defaultValue = "false") boolean async) throws Exception {
+        if (async) return accepted(purgeJobService.submit(appId, null));
         reportService.deleteApp(appId);
         return ResponseEntity.ok(Map.of("status", "deleted", "appId", appId));
     }
+
+    // PURGE JOB PROGRESS
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> purgeStatus(@PathVariable String jobId) {
+        PurgeJob job = purgeJobService.find(jobId);
+        if (job == null) return ResponseEntity.notFound().build();
+
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("jobId", job.getJobId());
+        resp.put("appId", job.getAppId());
+        resp.put("release", job.getRelease());
+        resp.put("status", job.getStatus());
+        resp.put("runs", job.getRuns());
+        resp.put("objectsDeleted", job.getObjectsDeleted());
+        resp.put("error", job.getError());
+        resp.put("createdAt", job.getCreatedAt());
+        resp.put("updatedAt", job.getUpdatedAt());
+        return ResponseEntity.ok(resp);
+    }
+
+    // QUERY CACHE HIT/MISS COUNTERS
+    @GetMapping("/cache")
+    public ResponseEntity<?> cacheStats() {
+        return ResponseEntity.ok(queryCache.stats());
+    }
+
+    // ATTACHMENT BLOB STORE (stored vs referenced bytes shows what dedup saves)
+    @GetMapping("/blobs")
+    public ResponseEntity<?> blobStats() {
+        return ResponseEntity.ok(reportService.blobStats());
+    }
+
+    private ResponseEntity<?> accepted(PurgeJob job) {
+        return ResponseEntity.accepted().body(Map.of(
+                "jobId", job.getJobId(),
+                "status", job.getStatus(),
+                "statusUrl", "/api/admin/jobs/" + job.getJobId()));
+    }
 }
@@ -1,78 +1,136 @@
 package io.allure.platform.controller;
 
 
+import io.allure.platform.repo.RunQuery;
 import io.allure.platform.repo.RunRepository;
+import io.allure.platform.service.QueryCache;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/charts")
 public class ChartController {
 
     private final RunRepository repo;
+    private final QueryCache cache;
 
-    public ChartController(RunRepository repo) {
+    public ChartController(RunRepository repo, QueryCache cache) {
         this.repo = repo;
+        this.cache = cache;
     }
 
     // ================= APP LEVEL =================
     @GetMapping("/app")
-    public List<Map<String, Object>> appOverview(
+    public ResponseEntity<byte[]> appOverview(
             @RequestParam String appId,
             @RequestParam String from,
             @RequestParam String to) {
 
-        return repo.appOverview(
-                appId,
-                LocalDate.parse(from),
-                LocalDate.parse(to)
-        );
+        LocalDate fromDate = LocalDate.parse(from);
+        LocalDate toDate = LocalDate.parse(to);
+        return cache.respond(QueryCache.forApp("charts/app", appId, fromDate, toDate),
+                () -> repo.appOverview(appId, fromDate, toDate));
     }
+
+    // All three bug charts from one query
+    @GetMapping("/bugs")
+    public ResponseEntity<byte[]> bugSummary(
+            @RequestParam String appId,
+            @RequestParam String release) {
+
+        return cache.respond(QueryCache.forRelease("charts/bugs", appId, release),
+                () -> repo.bugSummary(appId, release));
+    }
+
     // Types of Bugs (Pie)
     @GetMapping("/bugs/type")
-    public List<Map<String, Object>> bugTypes(
+    public ResponseEntity<byte[]> bugTypes(
             @RequestParam String appId,
             @RequestParam String release) {
 
-        return repo.bugTypes(appId, release);
+        return cache.respond(QueryCache.forRelease("charts/bugs/type", appId, release),
+                () -> repo.bugTypes(appId, release));
     }
 
     // Status Defects (Doughnut)
     @GetMapping("/bugs/status")
-    public List<Map<String, Object>> bugStatus(
+    public ResponseEntity<byte[]> bugStatus(
             @RequestParam String appId,
             @RequestParam String release) {
 
-        return repo.bugStatus(appId, release);
+        return cache.respond(QueryCache.forRelease("charts/bugs/status", appId, release),
+                () -> repo.bugStatus(appId, release));
     }
 
     // Defects by Reporter (Horizontal Bar)
     @GetMapping("/bugs/reporter")
-    public List<Map<String, Object>> bugReporter(
+    public ResponseEntity<byte[]> bugReporter(
             @RequestParam String appId,
             @RequestParam String release) {
 
-        return repo.bugReporter(appId, release);
+        return cache.respond(QueryCache.forRelease("charts/bugs/reporter", appId, release),
+                () -> repo.bugReporter(appId, release));
     }
 
 
     // ================= RELEASE LEVEL =================
     @GetMapping("/release")
-    public List<Map<String, Object>> releaseTrend(
+    public ResponseEntity<byte[]> releaseTrend(
             @RequestParam String appId,
             @RequestParam String release,
             @RequestParam String from,
             @RequestParam String to) {
 
-        return repo.releaseTrend(
-                appId,
-                release,
-                LocalDate.parse(from),
-                LocalDate.parse(to)
-        );
+        LocalDate fromDate = LocalDate.parse(from);
+        LocalDate toDate = LocalDate.parse(to);
+        return cache.respond(QueryCache.forRelease("charts/release", appId, release, fromDate, toDate),
+                () -> repo.releaseTrend(appId, release, fromDate, toDate));
+    }
+
+
+    // ================= TEST LEVEL =================
+    // Flaky tests: share of outcome changes over the last executions
+    @GetMapping("/tests/flaky")
+    public ResponseEntity<byte[]> flakyTests(
+            @RequestParam String appId,
+            @RequestParam String release,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        int n = clamp(limit);
+        return cache.respond(QueryCache.forRelease("charts/tests/flaky", appId, release, n),
+                () -> repo.flakyTests(appId, release, n));
+    }
+
+    // Tests failing in a row, longest streak first
+    @GetMapping("/tests/streaks")
+    public ResponseEntity<byte[]> failureStreaks(
+            @RequestParam String appId,
+            @RequestParam String release,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        int n = clamp(limit);
+        return cache.respond(QueryCache.forRelease("charts/tests/streaks", appId, release, n),
+                () -> repo.failureStreaks(appId, release, n));
+    }
+
+    // Slowest tests with their durations over their last executions (Line)
+    @GetMapping("/tests/slowest")
+    public ResponseEntity<byte[]> slowestTests(
+            @RequestParam String appId,
+            @RequestParam String release,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "30") int last) {
+
+        int n = clamp(limit);
+        int points = clamp(last);
+        return cache.respond(QueryCache.forRelease("charts/tests/slowest", appId, release, n, points),
+                () -> repo.slowestTests(appId, release, n, points));
+    }
+
+    private static int clamp(int limit) {
+        return Math.min(Math.max(limit, 1), RunQuery.MAX_LIMIT);
     }
 
 }
@@ -0,0 +1,279 @@
+package io.allure.platform.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams a stored report file to the client without holding it in memory: the S3
+ * response body is piped straight through, local files go out with
+ * {@link FileChannel#transferTo}. Handles a single-range {@code Range} header,
+ * {@code ETag}/{@code If-None-Match}, and serves a precompressed {@code .br}/{@code .gz}
+ * sibling when the client accepts that encoding. S3 keys found without a variant are
+ * remembered, so only their first request pays the failed GET.
+ */
+@Component
+public class ContentStreamer {
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String storageMode;
+    private final List<Encoding> encodings = new ArrayList<>();
+    // variant keys (key + suffix) that S3 did not have; stored files never change, so neither does a miss
+    private final Cache<String, Boolean> missingVariants;
+
+    private record Encoding(String name, String suffix) { }
+
+    public ContentStreamer(S3Client s3,
+                           @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
+                           @Value("${storage.mode:local}") String storageMode,
+                           @Value("${report.precompressed:gzip}") String precompressed,
+                           @Value("${report.precompressed.miss-cache-size:100000}") long missCacheSize) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.storageMode = storageMode;
+        this.missingVariants = Caffeine.newBuilder().maximumSize(missCacheSize).build();
+        // in order of preference; each one costs a lookup when the variant is missing
+        for (String e : precompressed.split(",")) {
+            switch (e.trim()) {
+                case "br" -> encodings.add(new Encoding("br", ".br"));
+                case "gzip" -> encodings.add(new Encoding("gzip", ".gz"));
+                default -> { }
+            }
+        }
+    }
+
+    /**
+     * Writes the file at {@code key} (an S3 key, or a filesystem path in local mode).
+     *
+     * @param filename when set, the file is sent as an attachment with this name
+     * @return false when the file does not exist and nothing was written
+     */
+    public boolean stream(String key, MediaType type, String filename,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        headers(type, filename, response);
+        return "s3".equalsIgnoreCase(storageMode)
+                ? streamS3(key, request, response)
+                : streamLocal(key, request, response);
+    }
+
+    /** Like {@link #stream}, for a file on local disk whatever the storage mode, e.g. a cached report. */
+    public boolean streamFile(Path file, MediaType type, String filename,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        headers(type, filename, response);
+        return streamLocal(file.toString(), request, response);
+    }
+
+    private static void headers(MediaType type, String filename, HttpServletResponse response) {
+        response.setContentType(type.toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (filename != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        }
+    }
+
+    // ---------------- s3 ----------------
+
+    private boolean streamS3(String key, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        List<String> missed = new ArrayList<>();
+        for (Encoding e : accepted(request)) {
+            String variant = key + e.suffix();
+            if (missingVariants.getIfPresent(variant) != null) continue;
+            if (streamS3Object(variant, e.name(), request, response)) return true;
+            missed.add(variant);
+        }
+        boolean found = streamS3Object(key, null, request, response);
+        // a miss counts once the file itself is there, not while a run may still be publishing
+        if (found) missed.forEach(v -> missingVariants.put(v, Boolean.TRUE));
+        return found;
+    }
+
+    // Range and If-None-Match go to S3 as they are, so a 206 or 304 costs no body transfer
+    private boolean streamS3Object(String key, String encoding, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        GetObjectRequest.Builder req = GetObjectRequest.builder().bucket(bucket).key(key);
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (range != null) req.range(range);
+        if (ifNoneMatch != null) req.ifNoneMatch(ifNoneMatch);
+
+        ResponseInputStream<GetObjectResponse> in;
+        try {
+            in = s3.getObject(req.build());
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) return false;
+            if (e.statusCode() == 304) {
+                if (encoding != null) response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                response.setHeader(HttpHeaders.ETAG, ifNoneMatch);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+            if (e.statusCode() == 416) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return true;
+            }
+            throw e;
+        }
+
+        try (in) {
+            GetObjectResponse meta = in.response();
+            if (encoding != null) response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            if (meta.eTag() != null) response.setHeader(HttpHeaders.ETAG, meta.eTag());
+            if (meta.lastModified() != null) response.setDateHeader(HttpHeaders.LAST_MODIFIED, meta.lastModified().toEpochMilli());
+            if (meta.contentRange() != null) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, meta.contentRange());
+            }
+            if (meta.contentLength() != null) response.setContentLengthLong(meta.contentLength());
+            in.transferTo(response.getOutputStream());
+        }
+        return true;
+    }
+
+    // ---------------- local ----------------
+
+    private boolean streamLocal(String key, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = Paths.get(key);
+        String encoding = null;
+        for (Encoding e : accepted(request)) {
+            Path variant = Paths.get(key + e.suffix());
+            if (Files.isRegularFile(variant)) {
+                file = variant;
+                encoding = e.name();
+                break;
+            }
+        }
+        if (!Files.isRegularFile(file)) return false;
+
+        // opened before anything is written: a file removed meanwhile (e.g. an evicted cached
+        // report) is reported as missing, and once open it can be sent whatever happens to it
+        FileChannel ch;
+        long size, modified;
+        try {
+            ch = FileChannel.open(file);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try (ch) {
+            try {
+                size = ch.size();
+                modified = Files.getLastModifiedTime(file).toMillis();
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            return streamChannel(ch, size, modified, encoding, request, response);
+        }
+    }
+
+    private static boolean streamChannel(FileChannel ch, long size, long modified, String encoding,
+                                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String etag = "\"" + Long.toHexString(modified) + "-" + Long.toHexString(size) + "\"";
+
+        if (encoding != null) response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, modified);
+        if (notModified(request, etag, modified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        long from = 0, length = size;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // several ranges at once are rare for reports; those requests get the whole file
+            if (ranges.size() == 1) {
+                HttpRange r = ranges.get(0);
+                from = r.getRangeStart(size);
+                long to = r.getRangeEnd(size);
+                if (from >= size || from > to) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return true;
+                }
+                length = to - from + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + from + "-" + to + "/" + size);
+            }
+        }
+
+        response.setContentLengthLong(length);
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        long pos = from, end = from + length;
+        while (pos < end) {
+            long n = ch.transferTo(pos, end - pos, target);
+            if (n <= 0) break;
+            pos += n;
+        }
+        out.flush();
+        return true;
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long modified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return ifNoneMatch.trim().equals("*") || Arrays.stream(ifNoneMatch.split(","))
+                    .map(t -> t.trim().replaceFirst("^W/", ""))
+                    .anyMatch(etag::equals);
+        }
+        long since;
+        try {
+            since = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have whole seconds
+        return since >= 0 && modified / 1000 <= since / 1000;
+    }
+
+    // precompressed variants the client accepts, in our order of preference
+    private List<Encoding> accepted(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (header == null) return List.of();
+        List<Encoding> result = new ArrayList<>();
+        for (Encoding e : encodings) {
+            for (String token : header.split(",")) {
+                String[] parts = token.trim().split(";");
+                boolean refused = parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?");
+                if (parts[0].trim().equalsIgnoreCase(e.name()) && !refused) {
+                    result.add(e);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
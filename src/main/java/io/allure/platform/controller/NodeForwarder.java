@@ -0,0 +1,91 @@
+package io.allure.platform.controller;
+
+import io.allure.platform.service.ClusterNode;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes a request on to another instance and relays its answer, for requests only
+ * the instance holding some local state can serve, such as the chunks of an upload
+ * staged on its disk. The body is streamed through, not buffered. A forwarded request
+ * carries {@value #HEADER}, so it is never passed on a second time.
+ */
+@Component
+public class NodeForwarder {
+
+    static final String HEADER = "X-Forwarded-By-Node";
+
+    private static final List<String> COPIED = List.of(HttpHeaders.CONTENT_TYPE, "X-Chunk-Sha256", "Idempotency-Key");
+
+    private final ClusterNode cluster;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    public NodeForwarder(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /** True when another instance sent this request here. */
+    public boolean isForwarded(HttpServletRequest request) {
+        return request.getHeader(HEADER) != null;
+    }
+
+    /** Sends {@code request} to the same path on the instance at {@code baseUrl}. */
+    public ResponseEntity<?> forward(HttpServletRequest request, String baseUrl) {
+        String query = request.getQueryString();
+        URI target = URI.create(baseUrl + request.getRequestURI() + (query != null ? "?" + query : ""));
+
+        HttpRequest.Builder req = HttpRequest.newBuilder(target).header(HEADER, cluster.id());
+        for (String name : COPIED) {
+            String value = request.getHeader(name);
+            if (value != null) req.header(name, value);
+        }
+        req.method(request.getMethod(), body(request));
+
+        try {
+            HttpResponse<byte[]> res = http.send(req.build(), HttpResponse.BodyHandlers.ofByteArray());
+            ResponseEntity.BodyBuilder out = ResponseEntity.status(res.statusCode());
+            res.headers().firstValue(HttpHeaders.CONTENT_TYPE).ifPresent(t -> out.contentType(MediaType.parseMediaType(t)));
+            res.headers().firstValue(HttpHeaders.LOCATION).ifPresent(l -> out.header(HttpHeaders.LOCATION, l));
+            res.headers().firstValue(HttpHeaders.RETRY_AFTER).ifPresent(r -> out.header(HttpHeaders.RETRY_AFTER, r));
+            return out.body(res.body());
+        } catch (IOException | UncheckedIOException e) {
+            return unreachable(target, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return unreachable(target, e);
+        }
+    }
+
+    private static HttpRequest.BodyPublisher body(HttpServletRequest request) {
+        long length = request.getContentLengthLong();
+        if (length == 0 || length < 0 && request.getHeader(HttpHeaders.TRANSFER_ENCODING) == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return request.getInputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return length > 0 ? HttpRequest.BodyPublishers.fromPublisher(stream, length) : stream;
+    }
+
+    private static ResponseEntity<?> unreachable(URI target, Exception e) {
+        return ResponseEntity.status(502)
+                .body(Map.of("error", "Could not reach " + target.getHost() + ":" + target.getPort() + ": " + e.getMessage()));
+    }
+}
@@ -1,42 +1,70 @@
 package io.allure.platform.controller;
 
+import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.UploadJob;
+import io.allure.platform.repo.RunQuery;
 import io.allure.platform.repo.RunRepository;
+import io.allure.platform.service.ChunkedUploadService;
+import io.allure.platform.service.QueryCache;
+import io.allure.platform.service.ReportCache;
 import io.allure.platform.service.ReportService;
-import org.springframework.beans.factory.annotation.Value;
+import io.allure.platform.service.StoredFile;
+import io.allure.platform.service.UploadJobService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api")
 public class UploadController {
 
+    private static final int MAX_IDEMPOTENCY_KEY = 255;
+
     private final ReportService reportService;
+    private final UploadJobService uploadJobService;
+    private final ChunkedUploadService chunkedUploads;
+    private final NodeForwarder forwarder;
     private final RunRepository runRepo;
-    private final S3Client s3;
-    private final String bucket;
-    private final String storageMode;
+    private final ContentStreamer streamer;
+    private final ReportCache reportCache;
+    private final QueryCache cache;
 
     public UploadController(ReportService reportService,
+                            UploadJobService uploadJobService,
+                            ChunkedUploadService chunkedUploads,
+                            NodeForwarder forwarder,
                             RunRepository runRepo,
-                            S3Client s3,
-                            @Value("${aws.s3.bucket}") String bucket,
-                            @Value("${storage.mode:local}") String storageMode) {
+                            ContentStreamer streamer,
+                            ReportCache reportCache,
+                            QueryCache cache) {
         this.reportService = reportService;
+        this.uploadJobService = uploadJobService;
+        this.chunkedUploads = chunkedUploads;
+        this.forwarder = forwarder;
         this.runRepo = runRepo;
-        this.s3 = s3;
-        this.bucket = bucket;
-        this.storageMode = storageMode;
+        this.streamer = streamer;
+        this.reportCache = reportCache;
+        this.cache = cache;
     }
 
     @PostMapping(value="/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -44,38 +72,317 @@ public class UploadController {
             @RequestParam String appId,
             @RequestParam String release,
             @RequestParam String executionDate,
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+
+        try (InputStream in = file.getInputStream()) {
+            return accept(appId, release, executionDate, async, idempotencyKey, in);
+        } catch (IOException e) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Same as the multipart upload, but the ZIP is the raw request body
+     * (Content-Type: application/zip). Nothing is buffered before extraction starts.
+     */
+    @PostMapping(value="/upload", consumes = {"application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> uploadStream(
+            @RequestParam String appId,
+            @RequestParam String release,
+            @RequestParam String executionDate,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest request) {
+
+        try (InputStream in = request.getInputStream()) {
+            return accept(appId, release, executionDate, async, idempotencyKey, in);
+        } catch (IOException e) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
 
+    // A repeated Idempotency-Key, or an archive already stored for the app, release and
+    // date, is answered with the earlier run (200) instead of being processed again.
+    private ResponseEntity<?> accept(String appId, String release, String executionDate, boolean async,
+                                     String idempotencyKey, InputStream zip) {
         if (executionDate == null || executionDate.isBlank()) {
             return ResponseEntity.badRequest()
                     .body(Map.of("error", "Execution date is required"));
         }
+        if (idempotencyKey != null && idempotencyKey.isBlank()) idempotencyKey = null;
+        if (idempotencyKey != null && idempotencyKey.length() > MAX_IDEMPOTENCY_KEY) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Idempotency-Key is longer than " + MAX_IDEMPOTENCY_KEY + " characters"));
+        }
+
+        if (idempotencyKey != null) {
+            try {
+                Map<String, Object> earlier = reportService.findUpload(appId, release, executionDate, idempotencyKey);
+                if (earlier != null) return ResponseEntity.ok(earlier);
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(409)
+                        .body(Map.of("error", e.getMessage()));
+            }
+        }
+
+        if (async) {
+            try {
+                UploadJob job = uploadJobService.submit(appId, release, executionDate, idempotencyKey, zip);
+                return ResponseEntity.status("COMPLETED".equals(job.getStatus()) ? 200 : 202).body(Map.of(
+                        "jobId", job.getJobId(),
+                        "runId", job.getRunId(),
+                        "status", job.getStatus(),
+                        "statusUrl", "/api/upload/" + job.getJobId()));
+            } catch (RejectedExecutionException e) {
+                return ResponseEntity.status(503)
+                        .header("Retry-After", "30")
+                        .body(Map.of("error", e.getMessage()));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(409)
+                        .body(Map.of("error", e.getMessage()));
+            } catch (Exception e) {
+                return ResponseEntity.status(500)
+                        .body(Map.of("error", e.getMessage()));
+            }
+        }
 
         try {
             Map<String, Object> resp =
-                    reportService.handleUpload(appId, release, executionDate, file);
+                    reportService.handleUpload(appId, release, executionDate, zip, idempotencyKey);
             return ResponseEntity.ok(resp);
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(409)
+                    .header("Retry-After", "30")
+                    .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(500)
                     .body(Map.of("error", e.getMessage()));
         }
     }
 
+    // ---------------- chunked uploads ----------------
+    // POST /upload/sessions, then PUT /upload/sessions/{id}?offset=N per chunk, then POST .../complete.
+    // After a failed chunk, GET /upload/sessions/{id} tells the offset to resume from.
+    // Chunks, complete and cancel are served by the instance that opened the upload.
+
+    @PostMapping("/upload/sessions")
+    public ResponseEntity<?> openSession(
+            @RequestParam String appId,
+            @RequestParam String release,
+            @RequestParam String executionDate,
+            @RequestParam(required = false) Long size) {
+
+        if (executionDate.isBlank()) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Execution date is required"));
+        }
+        try {
+            UploadJob job = chunkedUploads.open(appId, release, executionDate, size);
+            String url = "/api/upload/sessions/" + job.getJobId();
+            Map<String, Object> resp = new LinkedHashMap<>();
+            resp.put("sessionId", job.getJobId());
+            resp.put("runId", job.getRunId());
+            resp.put("offset", 0);
+            resp.put("size", size);
+            resp.put("uploadUrl", url);
+            resp.put("statusUrl", "/api/upload/" + job.getJobId());
+            return ResponseEntity.status(201).header(HttpHeaders.LOCATION, url).body(resp);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503)
+                    .header("Retry-After", "30")
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /** One chunk as the raw request body; X-Chunk-Sha256 (hex) is checked when present. */
+    @PutMapping("/upload/sessions/{sessionId}")
+    public ResponseEntity<?> putChunk(
+            @PathVariable String sessionId,
+            @RequestParam long offset,
+            @RequestHeader(value = "X-Chunk-Sha256", required = false) String sha256,
+            HttpServletRequest request) {
+
+        String owner = ownerUrl(sessionId, request);
+        if (owner != null) return forwarder.forward(request, owner);
+        try (InputStream in = request.getInputStream()) {
+            long stored = chunkedUploads.write(sessionId, offset, in, sha256);
+            return ResponseEntity.ok(Map.of("sessionId", sessionId, "offset", stored));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return chunkError(400, sessionId, e);
+        } catch (IllegalStateException e) {
+            return chunkError(409, sessionId, e);
+        } catch (IOException e) {
+            return chunkError(500, sessionId, e);
+        }
+    }
+
+    @GetMapping("/upload/sessions/{sessionId}")
+    public ResponseEntity<?> sessionStatus(@PathVariable String sessionId) {
+        Map<String, Object> resp = chunkedUploads.describe(sessionId);
+        return resp == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(resp);
+    }
+
+    /** Ends the upload: waits for the pipeline like a plain upload, or returns 202 with async=true. */
+    @PostMapping("/upload/sessions/{sessionId}/complete")
+    public ResponseEntity<?> completeSession(@PathVariable String sessionId,
+                                             @RequestParam(defaultValue = "false") boolean async,
+                                             HttpServletRequest request) {
+        String owner = ownerUrl(sessionId, request);
+        if (owner != null) return forwarder.forward(request, owner);
+        CompletableFuture<Map<String, Object>> result;
+        try {
+            result = chunkedUploads.complete(sessionId);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return chunkError(409, sessionId, e);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503)
+                    .header("Retry-After", "30")
+                    .body(Map.of("error", e.getMessage()));
+        }
+
+        if (async) {
+            return ResponseEntity.accepted().body(Map.of(
+                    "jobId", sessionId,
+                    "status", "RUNNING",
+                    "statusUrl", "/api/upload/" + sessionId));
+        }
+        try {
+            return ResponseEntity.ok(result.join());
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException c ? c.getCause() : e.getCause();
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", String.valueOf(cause.getMessage())));
+        }
+    }
+
+    @DeleteMapping("/upload/sessions/{sessionId}")
+    public ResponseEntity<?> cancelSession(@PathVariable String sessionId, HttpServletRequest request) {
+        String owner = ownerUrl(sessionId, request);
+        if (owner != null) return forwarder.forward(request, owner);
+        try {
+            chunkedUploads.cancel(sessionId);
+            return ResponseEntity.ok(Map.of("sessionId", sessionId, "status", "FAILED"));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return chunkError(409, sessionId, e);
+        }
+    }
+
+    // the instance to pass a session request on to, or null to serve it here
+    private String ownerUrl(String sessionId, HttpServletRequest request) {
+        return forwarder.isForwarded(request) ? null : chunkedUploads.ownerUrl(sessionId);
+    }
+
+    // the error plus the stored offset, so the client knows where to resume
+    private ResponseEntity<?> chunkError(int status, String sessionId, Exception e) {
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("error", e.getMessage());
+        Map<String, Object> session = chunkedUploads.describe(sessionId);
+        if (session != null) {
+            resp.put("offset", session.get("offset"));
+            resp.put("status", session.get("status"));
+        }
+        return ResponseEntity.status(status).body(resp);
+    }
+
+    @GetMapping("/upload/{jobId}")
+    public ResponseEntity<?> uploadStatus(@PathVariable String jobId) {
+        UploadJob job = uploadJobService.find(jobId);
+        if (job == null) return ResponseEntity.notFound().build();
 
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("jobId", job.getJobId());
+        resp.put("runId", job.getRunId());
+        resp.put("appId", job.getAppId());
+        resp.put("release", job.getRelease());
+        resp.put("status", job.getStatus());
+        resp.put("stage", job.getStage());
+        resp.put("error", job.getError());
+        resp.put("createdAt", job.getCreatedAt());
+        resp.put("updatedAt", job.getUpdatedAt());
+        return ResponseEntity.ok(resp);
+    }
 
     @GetMapping("/apps")
-    public ResponseEntity<List<String>> apps() {
-        return ResponseEntity.ok(runRepo.findApps());
+    public ResponseEntity<byte[]> apps() {
+        return cache.respond(QueryCache.global("apps"), runRepo::findApps);
     }
 
     @GetMapping("/releases")
-    public ResponseEntity<List<String>> releases(@RequestParam String appId) {
-        return ResponseEntity.ok(runRepo.findReleases(appId));
+    public ResponseEntity<byte[]> releases(@RequestParam String appId) {
+        return cache.respond(QueryCache.forApp("releases", appId),
+                () -> runRepo.findReleases(appId));
     }
 
+    /**
+     * A release's runs, newest first, at most {@code limit} per call. When there are more,
+     * the X-Next-Cursor header holds the {@code cursor} for the next page.
+     *
+     * @param fields comma-separated run fields to return (default: all)
+     * @param from   execution dates from (inclusive, yyyy-MM-dd)
+     * @param to     execution dates to (inclusive, yyyy-MM-dd)
+     */
     @GetMapping("/runs")
-    public ResponseEntity<?> runs(@RequestParam String appId, @RequestParam String release) {
-        return ResponseEntity.ok(runRepo.findByAppAndRelease(appId, release));
+    public ResponseEntity<?> runs(@RequestParam String appId,
+                                  @RequestParam String release,
+                                  @RequestParam(required = false) String from,
+                                  @RequestParam(required = false) String to,
+                                  @RequestParam(required = false) Double minPassPercent,
+                                  @RequestParam(required = false) Double maxPassPercent,
+                                  @RequestParam(required = false) String fields,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(defaultValue = "" + RunQuery.DEFAULT_LIMIT) int limit) {
+        RunQuery query;
+        try {
+            query = new RunQuery(appId, release,
+                    from == null ? null : LocalDate.parse(from),
+                    to == null ? null : LocalDate.parse(to),
+                    minPassPercent, maxPassPercent,
+                    fields == null ? null : Arrays.stream(fields.split(",")).map(String::trim).filter(f -> !f.isEmpty()).toList(),
+                    cursor == null ? null : RunQuery.Cursor.decode(cursor),
+                    limit);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+
+        return cache.respond(QueryCache.forRelease("runs", appId, release, query),
+                () -> runRepo.findRuns(query),
+                RunQuery.Page::runs,
+                page -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    if (page.nextCursor() != null) headers.set("X-Next-Cursor", page.nextCursor());
+                    return headers;
+                });
+    }
+
+    // upload pipeline stage durations (ms) stored with the run
+    @GetMapping("/runs/{runId}/timings")
+    public ResponseEntity<?> runTimings(@PathVariable String runId) {
+        if (runRepo.findByRunId(runId) == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(runRepo.findStageTimings(runId));
+    }
+
+    // slowest uploads of a release, for one stage or the whole pipeline
+    @GetMapping("/runs/slowest")
+    public ResponseEntity<?> slowestRuns(@RequestParam String appId,
+                                         @RequestParam String release,
+                                         @RequestParam(required = false) String stage,
+                                         @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(runRepo.slowestRuns(appId, release, stage, Math.min(Math.max(limit, 1), RunQuery.MAX_LIMIT)));
     }
 
     /**
@@ -84,29 +391,10 @@ public class UploadController {
      * When storage.mode=s3, 'key' is an S3 key (prefix/.../index.html)
      */
     @GetMapping("/download")
-    public ResponseEntity<?> download(@RequestParam String key) {
-        try {
-            if ("s3".equalsIgnoreCase(storageMode)) {
-                GetObjectRequest req = GetObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(key)
-                        .build();
-                InputStream s3is = s3.getObject(req);
-                byte[] data = s3is.readAllBytes();
-                String filename = key.substring(key.lastIndexOf('/') + 1);
-                return ResponseEntity.ok()
-                        .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
-                        .body(data);
-            } else {
-                File f = new File(key);
-                if (!f.exists()) return ResponseEntity.notFound().build();
-                org.springframework.core.io.Resource res = new org.springframework.core.io.FileSystemResource(f);
-                return ResponseEntity.ok()
-                        .header("Content-Disposition", "attachment; filename=\"" + f.getName() + "\"")
-                        .body(res);
-            }
-        } catch (Exception e) {
-            return ResponseEntity.status(404).body("Not found: " + e.getMessage());
+    public void download(@RequestParam String key, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String filename = key.substring(Math.max(key.lastIndexOf('/'), key.lastIndexOf(File.separatorChar)) + 1);
+        if (!streamReport(key, MediaType.APPLICATION_OCTET_STREAM, filename, request, response)) {
+            response.sendError(404, "Not found: " + key);
         }
     }
 
@@ -115,24 +403,45 @@ public class UploadController {
      * key = S3 key in s3 mode or filesystem path in local mode
      */
     @GetMapping("/view")
-    public ResponseEntity<?> viewHtml(@RequestParam String key) {
+    public void viewHtml(@RequestParam String key, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!streamReport(key, MediaType.TEXT_HTML, null, request, response)) {
+            response.sendError(404, "HTML Not found: " + key);
+        }
+    }
+
+    // runs uploaded with report.render=lazy have no stored report: it comes from the report cache,
+    // rendered on first view, without looking in storage first
+    private boolean streamReport(String key, MediaType type, String filename,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        RunMeta run = reportCache.runOf(key);
+        if (run != null && run.isHtmlDeferred()) return streamCached(run, type, filename, request, response);
+        if (streamer.stream(key, type, filename, request, response)) return true;
+        // deferred runs stored before the flag existed
+        return run != null && streamCached(run, type, filename, request, response);
+    }
+
+    // the lease keeps the report from being evicted while it is sent
+    private boolean streamCached(RunMeta run, MediaType type, String filename,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (ReportCache.Lease report = reportCache.open(run)) {
+            return streamer.streamFile(report.path(), type, filename, request, response);
+        }
+    }
+
+    /**
+     * One file from a run's allure-results, e.g. a result JSON or an attachment:
+     * /api/runs/{runId}/results?name=<file name inside allure-results>
+     */
+    @GetMapping("/runs/{runId}/results")
+    public ResponseEntity<?> resultFile(@PathVariable String runId, @RequestParam String name) {
         try {
-            if ("s3".equalsIgnoreCase(storageMode)) {
-                GetObjectRequest req = GetObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(key)
-                        .build();
-                InputStream s3is = s3.getObject(req);
-                byte[] data = s3is.readAllBytes();
-                return ResponseEntity.ok().contentType(MediaType.TEXT_HTML).body(data);
-            } else {
-                File f = new File(key);
-                if (!f.exists()) return ResponseEntity.notFound().build();
-                byte[] data = Files.readAllBytes(f.toPath());
-                return ResponseEntity.ok().contentType(MediaType.TEXT_HTML).body(data);
-            }
+            // streamed through as it is read; the converter closes the stream once sent
+            StoredFile file = reportService.openResultFile(runId, name);
+            if (file == null) return ResponseEntity.notFound().build();
+            MediaType type = MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            return ResponseEntity.ok().contentType(type).contentLength(file.size()).body(new InputStreamResource(file.content()));
         } catch (IOException e) {
-            return ResponseEntity.status(404).body("HTML Not found: " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", e.getMessage()));
         }
     }
 }
@@ -0,0 +1,34 @@
+package io.allure.platform.model;
+
+import java.time.LocalDateTime;
+
+public class PurgeJob {
+    private String jobId;
+    private String appId;
+    private String release;
+    private String status;
+    private int runs;
+    private long objectsDeleted;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getAppId() { return appId; }
+    public void setAppId(String appId) { this.appId = appId; }
+    public String getRelease() { return release; }
+    public void setRelease(String release) { this.release = release; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public int getRuns() { return runs; }
+    public void setRuns(int runs) { this.runs = runs; }
+    public long getObjectsDeleted() { return objectsDeleted; }
+    public void setObjectsDeleted(long objectsDeleted) { this.objectsDeleted = objectsDeleted; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -17,6 +17,9 @@ public class RunMeta {
     private String htmlPath;
     private String historyPath;
     private LocalDate executionDate;
+    private String contentSha256;
+    private String idempotencyKey;
+    private boolean htmlDeferred;
 
     public String getRunId() { return runId; }
     public void setRunId(String runId) { this.runId = runId; }
@@ -44,5 +47,11 @@ public class RunMeta {
     public void setHistoryPath(String historyPath) { this.historyPath = historyPath; }
     public LocalDate getExecutionDate() {return executionDate;}
     public void setExecutionDate(LocalDate executionDate) {this.executionDate = executionDate;}
+    public String getContentSha256() { return contentSha256; }
+    public void setContentSha256(String contentSha256) { this.contentSha256 = contentSha256; }
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    public boolean isHtmlDeferred() { return htmlDeferred; }
+    public void setHtmlDeferred(boolean htmlDeferred) { this.htmlDeferred = htmlDeferred; }
 
 }
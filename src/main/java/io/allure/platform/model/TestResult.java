@@ -0,0 +1,39 @@
+package io.allure.platform.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TestResult {
+    private String uuid;
+    private String historyId;
+    private String name;
+    private String fullName;
+    private String status;
+    private String statusMessage;
+    private long start;
+    private long stop;
+    private Map<String, String> labels = new LinkedHashMap<>();
+
+    public String getUuid() { return uuid; }
+    public void setUuid(String uuid) { this.uuid = uuid; }
+    public String getHistoryId() { return historyId; }
+    public void setHistoryId(String historyId) { this.historyId = historyId; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getFullName() { return fullName; }
+    public void setFullName(String fullName) { this.fullName = fullName; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getStatusMessage() { return statusMessage; }
+    public void setStatusMessage(String statusMessage) { this.statusMessage = statusMessage; }
+    public long getStart() { return start; }
+    public void setStart(long start) { this.start = start; }
+    public long getStop() { return stop; }
+    public void setStop(long stop) { this.stop = stop; }
+    public Map<String, String> getLabels() { return labels; }
+    public void setLabels(Map<String, String> labels) { this.labels = labels; }
+
+    public long getDurationMs() {
+        return start > 0 && stop > start ? stop - start : 0;
+    }
+}
@@ -0,0 +1,53 @@
+package io.allure.platform.model;
+
+import java.time.LocalDateTime;
+
+public class UploadJob {
+    private String jobId;
+    private String runId;
+    private String appId;
+    private String release;
+    private String executionDate;
+    private String status;
+    private String stage;
+    private String zipPath;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private String idempotencyKey;
+    private String contentSha256;
+    // node running the job, and the node whose disk holds its ZIP (null when staged in S3)
+    private String owner;
+    private String stagedOn;
+
+    public String getJobId() { return jobId; }
+    public void setJobId(String jobId) { this.jobId = jobId; }
+    public String getRunId() { return runId; }
+    public void setRunId(String runId) { this.runId = runId; }
+    public String getAppId() { return appId; }
+    public void setAppId(String appId) { this.appId = appId; }
+    public String getRelease() { return release; }
+    public void setRelease(String release) { this.release = release; }
+    public String getExecutionDate() { return executionDate; }
+    public void setExecutionDate(String executionDate) { this.executionDate = executionDate; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public String getStage() { return stage; }
+    public void setStage(String stage) { this.stage = stage; }
+    public String getZipPath() { return zipPath; }
+    public void setZipPath(String zipPath) { this.zipPath = zipPath; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    public String getContentSha256() { return contentSha256; }
+    public void setContentSha256(String contentSha256) { this.contentSha256 = contentSha256; }
+    public String getOwner() { return owner; }
+    public void setOwner(String owner) { this.owner = owner; }
+    public String getStagedOn() { return stagedOn; }
+    public void setStagedOn(String stagedOn) { this.stagedOn = stagedOn; }
+}
@@ -0,0 +1,69 @@
+package io.allure.platform.repo;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * The instances sharing the database. Each one records a heartbeat in
+ * {@code cluster_nodes}; one whose last heartbeat is older than the node timeout counts
+ * as gone, and what it held may be taken over by the others. Named locks in
+ * {@code cluster_locks} are held by a node and freed when it releases them or is gone.
+ */
+@Repository
+public class ClusterRepository {
+
+    // node ids with a heartbeat at or after the bound parameter
+    static final String LIVE_NODES = "SELECT node_id FROM cluster_nodes WHERE heartbeat_at >= ?";
+
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate read;
+    private final WriteQueue writes;
+
+    public ClusterRepository(JdbcTemplate jdbc,
+                             @Qualifier("readJdbcTemplate") JdbcTemplate read,
+                             WriteQueue writes,
+                             SchemaMigrator migrator) {
+        this.jdbc = jdbc;
+        this.read = read;
+        this.writes = writes;
+        migrator.migrate();
+    }
+
+    public void heartbeat(String nodeId, String url, long now) {
+        writes.run(() -> jdbc.update("""
+    INSERT INTO cluster_nodes(node_id, url, heartbeat_at) VALUES (?, ?, ?)
+    ON CONFLICT(node_id) DO UPDATE SET url = excluded.url, heartbeat_at = excluded.heartbeat_at
+    """, nodeId, url, now));
+    }
+
+    // URL of the node if it sent a heartbeat at or after aliveSince, else null
+    public String liveUrl(String nodeId, long aliveSince) {
+        List<String> urls = read.queryForList(
+                "SELECT url FROM cluster_nodes WHERE node_id = ? AND heartbeat_at >= ?",
+                String.class, nodeId, aliveSince);
+        return urls.isEmpty() ? null : urls.get(0);
+    }
+
+    // ---------------- locks ----------------
+
+    // true when the node now holds the lock: it was free, or its holder is gone
+    public boolean tryLock(String name, String owner, long now, long aliveSince) {
+        return writes.call(() -> jdbc.update("""
+    INSERT INTO cluster_locks(name, owner, acquired_at) VALUES (?, ?, ?)
+    ON CONFLICT(name) DO UPDATE SET owner = excluded.owner, acquired_at = excluded.acquired_at
+    WHERE cluster_locks.owner NOT IN (%s)
+    """.formatted(LIVE_NODES), name, owner, now, aliveSince)) == 1;
+    }
+
+    public void unlock(String name, String owner) {
+        writes.run(() -> jdbc.update("DELETE FROM cluster_locks WHERE name = ? AND owner = ?", name, owner));
+    }
+
+    // Locks a node still held when it stopped
+    public int releaseLocks(String owner) {
+        return writes.call(() -> jdbc.update("DELETE FROM cluster_locks WHERE owner = ?", owner));
+    }
+}
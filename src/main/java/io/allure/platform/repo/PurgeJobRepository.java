@@ -0,0 +1,126 @@
+package io.allure.platform.repo;
+
+import io.allure.platform.model.PurgeJob;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class PurgeJobRepository {
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate read;
+    private final WriteQueue writes;
+
+    public PurgeJobRepository(JdbcTemplate jdbc,
+                              @Qualifier("readJdbcTemplate") JdbcTemplate read,
+                              WriteQueue writes,
+                              SchemaMigrator migrator) {
+        this.jdbc = jdbc;
+        this.read = read;
+        this.writes = writes;
+        migrator.migrate();
+    }
+
+    // False when a job for the same target is already queued or running, on any node
+    public boolean save(PurgeJob j) {
+        return writes.call(() -> jdbc.update("""
+    INSERT INTO purge_jobs(job_id, app_id, release, status, runs, objects_deleted, error, created_at, updated_at)
+    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+    ON CONFLICT DO NOTHING
+    """,
+                j.getJobId(),
+                j.getAppId(),
+                j.getRelease(),
+                j.getStatus(),
+                j.getRuns(),
+                j.getObjectsDeleted(),
+                j.getError(),
+                j.getCreatedAt().toString(),
+                j.getUpdatedAt().toString())) == 1;
+    }
+
+    public void updateStatus(String jobId, String status, String error) {
+        writes.run(() -> jdbc.update("UPDATE purge_jobs SET status = ?, error = ?, updated_at = ? WHERE job_id = ?",
+                status, error, LocalDateTime.now().toString(), jobId));
+    }
+
+    public void addObjectsDeleted(String jobId, long n) {
+        writes.run(() -> jdbc.update("UPDATE purge_jobs SET objects_deleted = objects_deleted + ?, updated_at = ? WHERE job_id = ?",
+                n, LocalDateTime.now().toString(), jobId));
+    }
+
+    // Finished jobs last updated before the cutoff are no longer reported
+    public int deleteFinished(LocalDateTime before) {
+        return writes.call(() -> jdbc.update(
+                "DELETE FROM purge_jobs WHERE status IN ('COMPLETED', 'FAILED') AND updated_at < ?",
+                before.toString()));
+    }
+
+    // ---------------- lookups ----------------
+
+    public PurgeJob findById(String jobId) {
+        List<PurgeJob> list = read.query("SELECT * FROM purge_jobs WHERE job_id = ?", (rs, i) -> map(rs), jobId);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // The queued or running job for an app, or one of its releases when release is not null
+    public PurgeJob findActive(String appId, String release) {
+        List<PurgeJob> list = read.query("""
+    SELECT * FROM purge_jobs
+    WHERE app_id = ? AND COALESCE(release, '') = ? AND status IN ('QUEUED', 'RUNNING')
+    """,
+                (rs, i) -> map(rs),
+                appId, release == null ? "" : release
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // oldest first, so purges run in the order they were asked for
+    public List<PurgeJob> findQueued() {
+        return read.query("SELECT * FROM purge_jobs WHERE status = 'QUEUED' ORDER BY created_at", (rs, i) -> map(rs));
+    }
+
+    // ---------------- ownership ----------------
+
+    // Takes a queued job for the node; false when another node took it first
+    public boolean claim(String jobId, String owner) {
+        return writes.call(() -> jdbc.update(
+                "UPDATE purge_jobs SET status = 'RUNNING', owner = ?, updated_at = ? WHERE job_id = ? AND status = 'QUEUED'",
+                owner, LocalDateTime.now().toString(), jobId)) == 1;
+    }
+
+    // Jobs the node was running when it stopped go back to the queue; deleting again is harmless
+    public int requeueOwned(String owner) {
+        return writes.call(() -> jdbc.update(
+                "UPDATE purge_jobs SET status = 'QUEUED', owner = NULL, updated_at = ? WHERE status = 'RUNNING' AND owner = ?",
+                LocalDateTime.now().toString(), owner));
+    }
+
+    // Running jobs of nodes without a heartbeat since aliveSince go back to the queue
+    public int requeueOrphans(long aliveSince) {
+        return writes.call(() -> jdbc.update("""
+    UPDATE purge_jobs SET status = 'QUEUED', owner = NULL, updated_at = ?
+    WHERE status = 'RUNNING' AND (owner IS NULL OR owner NOT IN (%s))
+    """.formatted(ClusterRepository.LIVE_NODES),
+                LocalDateTime.now().toString(), aliveSince));
+    }
+
+    private PurgeJob map(ResultSet rs) throws SQLException {
+        PurgeJob j = new PurgeJob();
+        j.setJobId(rs.getString("job_id"));
+        j.setAppId(rs.getString("app_id"));
+        j.setRelease(rs.getString("release"));
+        j.setStatus(rs.getString("status"));
+        j.setRuns(rs.getInt("runs"));
+        j.setObjectsDeleted(rs.getLong("objects_deleted"));
+        j.setError(rs.getString("error"));
+        j.setCreatedAt(LocalDateTime.parse(rs.getString("created_at")));
+        j.setUpdatedAt(LocalDateTime.parse(rs.getString("updated_at")));
+        return j;
+    }
+}
@@ -0,0 +1,7 @@
+package io.allure.platform.repo;
+
+/**
+ * One attachment in a run's manifest: its file name in the run's allure-results and
+ * the content-addressed blob holding its bytes.
+ */
+public record RunAttachment(String name, String sha256, long size) { }
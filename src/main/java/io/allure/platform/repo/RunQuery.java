@@ -0,0 +1,81 @@
+package io.allure.platform.repo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a release's runs, newest first. Pages are keyed on
+ * (timestamp, run_id): the cursor is the last row of the previous page, so each page
+ * is an index range scan no matter how deep into the release it is.
+ *
+ * @param fields JSON field names to return, or null for whole runs
+ * @param after  cursor from the previous page, or null for the first page
+ */
+public record RunQuery(String appId,
+                       String release,
+                       LocalDate from,
+                       LocalDate to,
+                       Double minPassPercent,
+                       Double maxPassPercent,
+                       List<String> fields,
+                       Cursor after,
+                       int limit) {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    /** JSON field name to column, in {@link io.allure.platform.model.RunMeta} order. */
+    static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+    static {
+        COLUMNS.put("runId", "run_id");
+        COLUMNS.put("appId", "app_id");
+        COLUMNS.put("release", "release");
+        COLUMNS.put("timestamp", "timestamp");
+        COLUMNS.put("passed", "passed");
+        COLUMNS.put("failed", "failed");
+        COLUMNS.put("broken", "broken");
+        COLUMNS.put("skipped", "skipped");
+        COLUMNS.put("total", "total");
+        COLUMNS.put("durationMs", "duration_ms");
+        COLUMNS.put("htmlPath", "html_path");
+        COLUMNS.put("historyPath", "history_path");
+        COLUMNS.put("executionDate", "execution_date");
+    }
+
+    public RunQuery {
+        if (fields != null) {
+            for (String f : fields) {
+                if (!COLUMNS.containsKey(f)) throw new IllegalArgumentException("Unknown field: " + f);
+            }
+            fields = List.copyOf(fields);
+        }
+        if (limit < 1) throw new IllegalArgumentException("limit must be positive");
+        limit = Math.min(limit, MAX_LIMIT);
+    }
+
+    /** Position after the last run of a page. */
+    public record Cursor(long timestamp, String runId) {
+
+        public String encode() {
+            String raw = timestamp + ":" + runId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int sep = raw.indexOf(':');
+                return new Cursor(Long.parseLong(raw.substring(0, sep)), raw.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    /** @param nextCursor null on the last page */
+    public record Page(List<?> runs, String nextCursor) { }
+}
@@ -1,59 +1,263 @@
 package io.allure.platform.repo;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.TestResult;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Repository
 public class RunRepository {
+    // writer connection; only used on the write queue's thread (and for migrations)
     private final JdbcTemplate jdbc;
+    // pool of read-only connections for everything else
+    private final JdbcTemplate read;
 
-    public RunRepository(JdbcTemplate jdbc) {
+    private static final int BATCH_SIZE = 1000;
+    // bound parameters per IN (...) list
+    private static final int IN_CHUNK = 500;
+
+    private final WriteQueue writes;
+    private final SqlDialect dialect;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public RunRepository(JdbcTemplate jdbc,
+                         @Qualifier("readJdbcTemplate") JdbcTemplate read,
+                         WriteQueue writes,
+                         SqlDialect dialect,
+                         SchemaMigrator migrator) {
         this.jdbc = jdbc;
-        init();
-    }
-
-    private void init() {
-        jdbc.execute("""
-    CREATE TABLE IF NOT EXISTS runs (
-        run_id TEXT PRIMARY KEY,
-        app_id TEXT,
-        release TEXT,
-        execution_date TEXT NOT NULL,
-        timestamp TEXT,
-        passed INTEGER,
-        failed INTEGER,
-        broken INTEGER,
-        skipped INTEGER,
-        total INTEGER,
-        duration_ms INTEGER,
-        html_path TEXT,
-        history_path TEXT
+        this.read = read;
+        this.writes = writes;
+        this.dialect = dialect;
+        migrator.migrate();
+    }
+
+    // Run row, its per-test rows, its test history and its stage timings commit together
+    public void save(RunMeta r, List<TestResult> tests, Map<String, Long> stageTimings) {
+        save(r, tests, stageTimings, List.of());
+    }
+
+    /**
+     * Saves a run together with its attachment manifest, taking a reference on every
+     * blob the manifest names.
+     *
+     * @return hashes of blobs whose content is not known to be stored: new ones, ones another
+     *         upload is still writing, and ones being deleted. The caller writes their content
+     *         and then marks them with {@link #markBlobsStored}.
+     */
+    public Set<String> save(RunMeta r, List<TestResult> tests, Map<String, Long> stageTimings,
+                            List<RunAttachment> attachments) {
+        return writes.call(() -> {
+            insertRun(r);
+            insertTestResults(r.getRunId(), tests);
+            TestHistory.append(jdbc, r.getAppId(), r.getRelease(),
+                    r.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli(), tests);
+            insertStageTimings(r.getRunId(), stageTimings);
+            return insertAttachments(r.getRunId(), attachments);
+        });
+    }
+
+    private void insertStageTimings(String runId, Map<String, Long> stageTimings) {
+        List<Map.Entry<String, Long>> stages = List.copyOf(stageTimings.entrySet());
+        jdbc.batchUpdate("INSERT INTO run_stage_timings(run_id, seq, stage, duration_ms) VALUES (?, ?, ?, ?)",
+                stages, BATCH_SIZE, (ps, e) -> {
+                    ps.setString(1, runId);
+                    ps.setInt(2, stages.indexOf(e));
+                    ps.setString(3, e.getKey());
+                    ps.setLong(4, e.getValue());
+                });
+    }
+
+    private Set<String> insertAttachments(String runId, List<RunAttachment> attachments) {
+        if (attachments.isEmpty()) return Set.of();
+        jdbc.batchUpdate("INSERT INTO run_attachments(run_id, name, sha256) VALUES (?, ?, ?)",
+                attachments, BATCH_SIZE, (ps, a) -> {
+                    ps.setString(1, runId);
+                    ps.setString(2, a.name());
+                    ps.setString(3, a.sha256());
+                });
+
+        // one reference per manifest row, so the same content under two names counts twice
+        Map<String, RunAttachment> blobs = new LinkedHashMap<>();
+        Map<String, Integer> refs = new LinkedHashMap<>();
+        for (RunAttachment a : attachments) {
+            blobs.putIfAbsent(a.sha256(), a);
+            refs.merge(a.sha256(), 1, Integer::sum);
+        }
+
+        jdbc.batchUpdate("""
+    INSERT INTO blobs(sha256, size, refs, state) VALUES (?, ?, ?, 'pending')
+    ON CONFLICT(sha256) DO UPDATE SET refs = blobs.refs + excluded.refs
+    """, List.copyOf(refs.entrySet()), BATCH_SIZE, (ps, e) -> {
+            ps.setString(1, e.getKey());
+            ps.setLong(2, blobs.get(e.getKey()).size());
+            ps.setInt(3, e.getValue());
+        });
+        // a pending blob's writer may still fail, so it is written again rather than relied on
+        return new LinkedHashSet<>(selectIn("SELECT sha256 FROM blobs WHERE state <> 'stored' AND sha256 IN ", refs.keySet()));
+    }
+
+    /**
+     * Of {@code sha256s}, the blobs whose content a delete claimed at or after
+     * {@code claimedSince} is still removing. Content written before that delete
+     * finishes could be removed with it; older claims are taken as abandoned.
+     */
+    public Set<String> deletingBlobs(Collection<String> sha256s, long claimedSince) {
+        return new LinkedHashSet<>(selectIn(read,
+                "SELECT sha256 FROM blobs WHERE state = 'deleting' AND state_at >= " + claimedSince + " AND sha256 IN ",
+                sha256s));
+    }
+
+    // once their content is written; a blob released meanwhile, or claimed by a live delete, is left as it is
+    public void markBlobsStored(Collection<String> sha256s, long claimedSince) {
+        if (sha256s.isEmpty()) return;
+        writes.run(() -> jdbc.batchUpdate("""
+    UPDATE blobs SET state = 'stored', state_at = NULL
+    WHERE sha256 = ? AND refs > 0 AND (state = 'pending' OR state = 'deleting' AND state_at < ?)
+    """, List.copyOf(sha256s), BATCH_SIZE, (ps, sha) -> {
+            ps.setString(1, sha);
+            ps.setLong(2, claimedSince);
+        }));
+    }
+
+    /**
+     * Drops the manifests of the runs {@code runFilter} selects and their blob references.
+     * Blobs left without references are claimed for deletion ({@code state = 'deleting'})
+     * and returned; their content goes after the write commits, see {@link #deleteBlobs}.
+     */
+    private List<String> releaseAttachments(String runFilter, Object[] args) {
+        Map<String, Integer> refs = new LinkedHashMap<>();
+        jdbc.query("SELECT sha256, COUNT(*) AS n FROM run_attachments WHERE run_id IN (" + runFilter + ") GROUP BY sha256",
+                rs -> { refs.put(rs.getString("sha256"), rs.getInt("n")); }, args);
+        if (refs.isEmpty()) return List.of();
+
+        jdbc.update("DELETE FROM run_attachments WHERE run_id IN (" + runFilter + ")", args);
+        jdbc.batchUpdate("UPDATE blobs SET refs = refs - ? WHERE sha256 = ?",
+                List.copyOf(refs.entrySet()), BATCH_SIZE, (ps, e) -> {
+                    ps.setInt(1, e.getValue());
+                    ps.setString(2, e.getKey());
+                });
+        List<String> orphaned = selectIn("SELECT sha256 FROM blobs WHERE refs <= 0 AND sha256 IN ", refs.keySet());
+        long now = System.currentTimeMillis();
+        jdbc.batchUpdate("UPDATE blobs SET state = 'deleting', state_at = ? WHERE sha256 = ?", orphaned, BATCH_SIZE,
+                (ps, sha) -> {
+                    ps.setLong(1, now);
+                    ps.setString(2, sha);
+                });
+        return orphaned;
+    }
+
+    /**
+     * Removes the content of blobs a committed delete released, on the calling thread rather
+     * than the writer, then their rows. An upload referencing one of them meanwhile waits for
+     * this to finish (see {@link #deletingBlobs}); its blob is kept, set back to pending, and
+     * written again by that upload.
+     */
+    private void deleteBlobs(List<String> claimed, Consumer<List<String>> onOrphaned) {
+        if (claimed.isEmpty()) return;
+        try {
+            // no need to remove content an upload took a reference on since the claim
+            List<String> unreferenced = selectIn(read,
+                    "SELECT sha256 FROM blobs WHERE state = 'deleting' AND refs <= 0 AND sha256 IN ", claimed);
+            if (!unreferenced.isEmpty()) onOrphaned.accept(unreferenced);
+        } finally {
+            writes.run(() -> {
+                jdbc.batchUpdate("DELETE FROM blobs WHERE sha256 = ? AND state = 'deleting' AND refs <= 0",
+                        claimed, BATCH_SIZE, (ps, sha) -> ps.setString(1, sha));
+                jdbc.batchUpdate("UPDATE blobs SET state = 'pending', state_at = NULL WHERE sha256 = ? AND state = 'deleting'",
+                        claimed, BATCH_SIZE, (ps, sha) -> ps.setString(1, sha));
+            });
+        }
+    }
+
+    // runs "<sql>(?, ?, ...)" on the writer in chunks, for key sets of any size
+    private List<String> selectIn(String sql, Collection<String> keys) {
+        return selectIn(jdbc, sql, keys);
+    }
+
+    private static List<String> selectIn(JdbcTemplate db, String sql, Collection<String> keys) {
+        List<String> all = List.copyOf(keys);
+        List<String> found = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += IN_CHUNK) {
+            List<String> chunk = all.subList(i, Math.min(i + IN_CHUNK, all.size()));
+            found.addAll(db.queryForList(sql + "(" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                    String.class, chunk.toArray()));
+        }
+        return found;
+    }
+
+    public void saveTestResults(String runId, List<TestResult> tests) {
+        writes.run(() -> insertTestResults(runId, tests));
+    }
+
+    private void insertTestResults(String runId, List<TestResult> tests) {
+        jdbc.batchUpdate("""
+    INSERT INTO test_results(
+        run_id, history_id, name, full_name, status, start_ms, duration_ms, labels
     )
-    """);;
+    VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+    """, tests, BATCH_SIZE, (ps, t) -> {
+            ps.setString(1, runId);
+            ps.setString(2, t.getHistoryId());
+            ps.setString(3, t.getName());
+            ps.setString(4, t.getFullName());
+            ps.setString(5, t.getStatus());
+            ps.setLong(6, t.getStart());
+            ps.setLong(7, t.getDurationMs());
+            ps.setString(8, labelsJson(t.getLabels()));
+        });
+    }
+
+    private String labelsJson(Map<String, String> labels) {
+        try {
+            return labels == null || labels.isEmpty() ? null : mapper.writeValueAsString(labels);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
+    // execution_date is stored as an epoch day, timestamp as epoch millis (UTC)
     public void save(RunMeta r) {
+        writes.run(() -> insertRun(r));
+    }
+
+    private void insertRun(RunMeta r) {
+        jdbc.update("INSERT INTO apps(app_id) VALUES (?) ON CONFLICT DO NOTHING", r.getAppId());
+        jdbc.update("INSERT INTO releases(app_id, release) VALUES (?, ?) ON CONFLICT DO NOTHING", r.getAppId(), r.getRelease());
         jdbc.update("""
     INSERT INTO runs(
         run_id, app_id, release, execution_date, timestamp,
         passed, failed, broken, skipped, total,
-        duration_ms, html_path, history_path
+        duration_ms, html_path, history_path, content_sha256, idempotency_key,
+        html_deferred
     )
-    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
     """,
                 r.getRunId(),
                 r.getAppId(),
                 r.getRelease(),
-                r.getExecutionDate().toString(),   // ✅ FIXED
-                r.getTimestamp().toString(),
+                r.getExecutionDate().toEpochDay(),
+                r.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli(),
                 r.getPassed(),
                 r.getFailed(),
                 r.getBroken(),
@@ -61,29 +265,140 @@ public class RunRepository {
                 r.getTotal(),
                 r.getDurationMs(),
                 r.getHtmlPath(),
-                r.getHistoryPath()
+                r.getHistoryPath(),
+                r.getContentSha256(),
+                r.getIdempotencyKey(),
+                r.isHtmlDeferred() ? 1 : 0
         );
+        rollup(r, 1);
     }
 
-
-    public List<RunMeta> findByAppAndRelease(String appId, String release) {
-        return jdbc.query(
-                "SELECT * FROM runs WHERE app_id=? AND release=? ORDER BY timestamp DESC",
-                (rs, i) -> map(rs),
-                appId, release
+    // adds (sign 1) or removes (sign -1) one run's counts in its run_daily row
+    private void rollup(RunMeta r, int sign) {
+        boolean hasPct = r.getTotal() > 0;
+        jdbc.update("""
+    INSERT INTO run_daily(
+        app_id, release, day, runs, passed, failed, broken, skipped, total,
+        duration_ms, pass_pct_sum, pass_pct_runs
+    )
+    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    ON CONFLICT(app_id, release, day) DO UPDATE SET
+        runs = run_daily.runs + excluded.runs,
+        passed = run_daily.passed + excluded.passed,
+        failed = run_daily.failed + excluded.failed,
+        broken = run_daily.broken + excluded.broken,
+        skipped = run_daily.skipped + excluded.skipped,
+        total = run_daily.total + excluded.total,
+        duration_ms = run_daily.duration_ms + excluded.duration_ms,
+        pass_pct_sum = run_daily.pass_pct_sum + excluded.pass_pct_sum,
+        pass_pct_runs = run_daily.pass_pct_runs + excluded.pass_pct_runs
+    """,
+                r.getAppId(),
+                r.getRelease(),
+                r.getExecutionDate().toEpochDay(),
+                sign,
+                sign * r.getPassed(),
+                sign * r.getFailed(),
+                sign * r.getBroken(),
+                sign * r.getSkipped(),
+                sign * r.getTotal(),
+                sign * r.getDurationMs(),
+                hasPct ? sign * (r.getPassed() * 100.0 / r.getTotal()) : 0.0,
+                hasPct ? sign : 0
         );
+        if (sign < 0) {
+            jdbc.update("DELETE FROM run_daily WHERE app_id = ? AND release = ? AND day = ? AND runs <= 0",
+                    r.getAppId(), r.getRelease(), r.getExecutionDate().toEpochDay());
+        }
+    }
+
+
+    // newest first, one page at a time; see RunQuery
+    public RunQuery.Page findRuns(RunQuery q) {
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(q.fields() == null ? "*" : projection(q.fields()))
+                .append(" FROM runs WHERE app_id = ? AND release = ?");
+        List<Object> args = new ArrayList<>(List.of(q.appId(), q.release()));
+
+        if (q.from() != null) {
+            sql.append(" AND execution_date >= ?");
+            args.add(q.from().toEpochDay());
+        }
+        if (q.to() != null) {
+            sql.append(" AND execution_date <= ?");
+            args.add(q.to().toEpochDay());
+        }
+        if (q.minPassPercent() != null) {
+            sql.append(" AND total > 0 AND passed * 100.0 / total >= ?");
+            args.add(q.minPassPercent());
+        }
+        if (q.maxPassPercent() != null) {
+            sql.append(" AND total > 0 AND passed * 100.0 / total <= ?");
+            args.add(q.maxPassPercent());
+        }
+        if (q.after() != null) {
+            sql.append(" AND (timestamp < ? OR (timestamp = ? AND run_id < ?))");
+            args.add(q.after().timestamp());
+            args.add(q.after().timestamp());
+            args.add(q.after().runId());
+        }
+        // one extra row tells whether there is a next page
+        sql.append(" ORDER BY timestamp DESC, run_id DESC LIMIT ?");
+        args.add(q.limit() + 1);
+
+        List<PageRow> rows = read.query(sql.toString(), (rs, i) -> new PageRow(
+                q.fields() == null ? map(rs) : project(rs, q.fields()),
+                rs.getLong("timestamp"),
+                rs.getString("run_id")
+        ), args.toArray());
+
+        String next = null;
+        if (rows.size() > q.limit()) {
+            rows = rows.subList(0, q.limit());
+            PageRow last = rows.get(rows.size() - 1);
+            next = new RunQuery.Cursor(last.timestamp(), last.runId()).encode();
+        }
+        return new RunQuery.Page(rows.stream().map(PageRow::run).toList(), next);
+    }
+
+    private record PageRow(Object run, long timestamp, String runId) { }
+
+    // requested columns plus the two the cursor is built from
+    private static String projection(List<String> fields) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (String f : fields) columns.add(RunQuery.COLUMNS.get(f));
+        columns.add("timestamp");
+        columns.add("run_id");
+        return String.join(", ", columns);
+    }
+
+    private static Map<String, Object> project(ResultSet rs, List<String> fields) throws SQLException {
+        Map<String, Object> run = new LinkedHashMap<>();
+        for (String f : fields) {
+            String column = RunQuery.COLUMNS.get(f);
+            Object value = switch (f) {
+                case "timestamp" -> {
+                    long ts = rs.getLong(column);
+                    yield rs.wasNull() ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
+                }
+                case "executionDate" -> LocalDate.ofEpochDay(rs.getLong(column));
+                default -> rs.getObject(column);
+            };
+            run.put(f, value);
+        }
+        return run;
     }
 
     public List<String> findApps() {
-        return jdbc.queryForList(
-                "SELECT DISTINCT app_id FROM runs ORDER BY app_id",
+        return read.queryForList(
+                "SELECT app_id FROM apps ORDER BY app_id",
                 String.class
         );
     }
 
     public List<String> findReleases(String appId) {
-        return jdbc.queryForList(
-                "SELECT DISTINCT release FROM runs WHERE app_id=? ORDER BY release",
+        return read.queryForList(
+                "SELECT release FROM releases WHERE app_id=? ORDER BY release",
                 String.class, appId
         );
     }
@@ -93,8 +408,9 @@ public class RunRepository {
         r.setRunId(rs.getString("run_id"));
         r.setAppId(rs.getString("app_id"));
         r.setRelease(rs.getString("release"));
-        r.setExecutionDate(LocalDate.parse(rs.getString("execution_date")));
-        r.setTimestamp(LocalDateTime.parse(rs.getString("timestamp")));
+        r.setExecutionDate(LocalDate.ofEpochDay(rs.getLong("execution_date")));
+        long timestamp = rs.getLong("timestamp");
+        r.setTimestamp(rs.wasNull() ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC));
         r.setPassed(rs.getInt("passed"));
         r.setFailed(rs.getInt("failed"));
         r.setBroken(rs.getInt("broken"));
@@ -103,39 +419,101 @@ public class RunRepository {
         r.setDurationMs(rs.getLong("duration_ms"));
         r.setHtmlPath(rs.getString("html_path"));
         r.setHistoryPath(rs.getString("history_path"));
+        r.setContentSha256(rs.getString("content_sha256"));
+        r.setIdempotencyKey(rs.getString("idempotency_key"));
+        r.setHtmlDeferred(rs.getInt("html_deferred") != 0);
         return r;
     }
 
     public RunMeta findLatestBefore(String appId, String release, String excludeRunId) {
         String sql = "SELECT * FROM runs WHERE app_id = ? AND release = ? AND run_id <> ? ORDER BY timestamp DESC LIMIT 1";
-        List<RunMeta> list = jdbc.query(sql, new Object[]{ appId, release, excludeRunId }, (rs, rowNum) -> map(rs));
+        List<RunMeta> list = read.query(sql, new Object[]{ appId, release, excludeRunId }, (rs, rowNum) -> map(rs));
         return list.isEmpty() ? null : list.get(0);
     }
-    // Delete single run
-    public void deleteByRunId(String runId) {
-        jdbc.update("DELETE FROM runs WHERE run_id = ?", runId);
+    // Delete single run; onOrphaned gets the blobs no other run references, once the delete has committed (see deleteBlobs)
+    public void deleteByRunId(String runId, Consumer<List<String>> onOrphaned) {
+        List<String> orphaned = writes.call(() -> {
+            List<String> released = releaseAttachments("?", new Object[]{ runId });
+            List<RunMeta> found = jdbc.query("SELECT * FROM runs WHERE run_id=?", (rs, i) -> map(rs), runId);
+            RunMeta run = found.isEmpty() ? null : found.get(0);
+            List<String> tests = jdbc.queryForList(
+                    "SELECT DISTINCT history_id FROM test_results WHERE run_id = ? AND history_id IS NOT NULL", String.class, runId);
+            jdbc.update("DELETE FROM test_results WHERE run_id = ?", runId);
+            jdbc.update("DELETE FROM run_stage_timings WHERE run_id = ?", runId);
+            jdbc.update("DELETE FROM runs WHERE run_id = ?", runId);
+            if (run != null) {
+                rollup(run, -1);
+                // streaks and flips depend on run order, so the run's tests are folded again; the others are unaffected
+                TestHistory.rebuild(jdbc, run.getAppId(), run.getRelease(), tests);
+                pruneDimensions(run.getAppId(), run.getRelease());
+            }
+            return released;
+        });
+        deleteBlobs(orphaned, onOrphaned);
     }
 
     // Delete all runs for a release
-    public void deleteByAppAndRelease(String appId, String release) {
-        jdbc.update("DELETE FROM runs WHERE app_id = ? AND release = ?", appId, release);
+    public void deleteByAppAndRelease(String appId, String release, Consumer<List<String>> onOrphaned) {
+        List<String> orphaned = writes.call(() -> {
+            List<String> released = releaseAttachments("SELECT run_id FROM runs WHERE app_id = ? AND release = ?",
+                    new Object[]{ appId, release });
+            jdbc.update("DELETE FROM test_results WHERE run_id IN (SELECT run_id FROM runs WHERE app_id = ? AND release = ?)", appId, release);
+            jdbc.update("DELETE FROM run_stage_timings WHERE run_id IN (SELECT run_id FROM runs WHERE app_id = ? AND release = ?)", appId, release);
+            jdbc.update("DELETE FROM runs WHERE app_id = ? AND release = ?", appId, release);
+            jdbc.update("DELETE FROM run_daily WHERE app_id = ? AND release = ?", appId, release);
+            jdbc.update("DELETE FROM test_history WHERE app_id = ? AND release = ?", appId, release);
+            pruneDimensions(appId, release);
+            return released;
+        });
+        deleteBlobs(orphaned, onOrphaned);
     }
 
     // Delete all runs for an app
-    public void deleteByApp(String appId) {
-        jdbc.update("DELETE FROM runs WHERE app_id = ?", appId);
+    public void deleteByApp(String appId, Consumer<List<String>> onOrphaned) {
+        List<String> orphaned = writes.call(() -> {
+            List<String> released = releaseAttachments("SELECT run_id FROM runs WHERE app_id = ?", new Object[]{ appId });
+            jdbc.update("DELETE FROM test_results WHERE run_id IN (SELECT run_id FROM runs WHERE app_id = ?)", appId);
+            jdbc.update("DELETE FROM run_stage_timings WHERE run_id IN (SELECT run_id FROM runs WHERE app_id = ?)", appId);
+            jdbc.update("DELETE FROM runs WHERE app_id = ?", appId);
+            jdbc.update("DELETE FROM run_daily WHERE app_id = ?", appId);
+            jdbc.update("DELETE FROM test_history WHERE app_id = ?", appId);
+            jdbc.update("DELETE FROM releases WHERE app_id = ?", appId);
+            jdbc.update("DELETE FROM apps WHERE app_id = ?", appId);
+            return released;
+        });
+        deleteBlobs(orphaned, onOrphaned);
+    }
+
+    // drops the release, then the app, once no run refers to them any more
+    private void pruneDimensions(String appId, String release) {
+        jdbc.update("""
+    DELETE FROM releases WHERE app_id = ? AND release = ?
+      AND NOT EXISTS (SELECT 1 FROM runs WHERE app_id = ? AND release = ?)
+    """, appId, release, appId, release);
+        jdbc.update("""
+    DELETE FROM apps WHERE app_id = ?
+      AND NOT EXISTS (SELECT 1 FROM releases WHERE app_id = ?)
+    """, appId, appId);
     }
 
     // Fetch runs for cleanup
     public List<RunMeta> findAllByApp(String appId) {
-        return jdbc.query("SELECT * FROM runs WHERE app_id = ?", (rs, i) -> map(rs), appId);
+        return read.query("SELECT * FROM runs WHERE app_id = ?", (rs, i) -> map(rs), appId);
     }
 
     public List<RunMeta> findAllByAppAndRelease(String appId, String release) {
-        return jdbc.query("SELECT * FROM runs WHERE app_id = ? AND release = ?", (rs, i) -> map(rs), appId, release);
+        return read.query("SELECT * FROM runs WHERE app_id = ? AND release = ?", (rs, i) -> map(rs), appId, release);
+    }
+
+    // runs of an app, or of one of its releases when release is not null
+    public int countRuns(String appId, String release) {
+        Integer count = release == null
+                ? read.queryForObject("SELECT COUNT(*) FROM runs WHERE app_id = ?", Integer.class, appId)
+                : read.queryForObject("SELECT COUNT(*) FROM runs WHERE app_id = ? AND release = ?", Integer.class, appId, release);
+        return count == null ? 0 : count;
     }
     public RunMeta findByRunId(String runId) {
-        List<RunMeta> list = jdbc.query(
+        List<RunMeta> list = read.query(
                 "SELECT * FROM runs WHERE run_id=?",
                 (rs, i) -> map(rs),
                 runId
@@ -143,92 +521,280 @@ public class RunRepository {
         return list.isEmpty() ? null : list.get(0);
     }
 
+    // earliest run of this app, release and execution date built from an archive with this SHA-256, or null
+    public RunMeta findByContent(String appId, String release, LocalDate executionDate, String sha256) {
+        List<RunMeta> list = read.query("""
+    SELECT * FROM runs
+    WHERE app_id = ? AND release = ? AND execution_date = ? AND content_sha256 = ?
+    ORDER BY timestamp LIMIT 1
+    """,
+                (rs, i) -> map(rs),
+                appId, release, executionDate.toEpochDay(), sha256
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // the run an upload with this Idempotency-Key produced, or null
+    public RunMeta findByIdempotencyKey(String appId, String key) {
+        List<RunMeta> list = read.query(
+                "SELECT * FROM runs WHERE app_id = ? AND idempotency_key = ? ORDER BY timestamp LIMIT 1",
+                (rs, i) -> map(rs),
+                appId, key
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // ================= HISTORY STORES =================
+    // next version of a HistoryStore location: one past the last handed out, and past `floor`,
+    // the highest version found in the store (which may predate this counter)
+    public long nextHistoryVersion(String store, long floor) {
+        return writes.call(() -> jdbc.queryForObject("""
+    INSERT INTO history_versions(store, version) VALUES (?, ?)
+    ON CONFLICT(store) DO UPDATE SET version = CASE
+        WHEN history_versions.version >= excluded.version THEN history_versions.version + 1
+        ELSE excluded.version END
+    RETURNING version
+    """, Long.class, store, floor + 1));
+    }
+
+    public void deleteHistoryVersion(String store) {
+        writes.run(() -> jdbc.update("DELETE FROM history_versions WHERE store = ?", store));
+    }
+
+    // ================= ATTACHMENTS =================
+    // content hash of one attachment in a run's manifest, or null
+    public String findAttachment(String runId, String name) {
+        List<String> sha = read.queryForList("SELECT sha256 FROM run_attachments WHERE run_id = ? AND name = ?",
+                String.class, runId, name);
+        return sha.isEmpty() ? null : sha.get(0);
+    }
+
+    // a run's whole manifest, e.g. to put its attachments back next to its results
+    public List<RunAttachment> findAttachments(String runId) {
+        return read.query("""
+        SELECT a.name, a.sha256, b.size
+        FROM run_attachments a
+        JOIN blobs b ON b.sha256 = a.sha256
+        WHERE a.run_id = ?
+        """, (rs, i) -> new RunAttachment(rs.getString("name"), rs.getString("sha256"), rs.getLong("size")), runId);
+    }
+
+    // stored bytes against the bytes the runs' attachments add up to
+    public Map<String, Object> blobStats() {
+        return read.queryForMap("""
+        SELECT COUNT(*) AS blobs,
+               COALESCE(SUM(size), 0) AS "storedBytes",
+               COALESCE(SUM(size * refs), 0) AS "referencedBytes"
+        FROM blobs
+        """);
+    }
+
+    // ================= STAGE TIMINGS =================
+    // stage -> milliseconds, in pipeline order; empty for runs uploaded before timings were kept
+    public Map<String, Long> findStageTimings(String runId) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        read.query("SELECT stage, duration_ms FROM run_stage_timings WHERE run_id = ? ORDER BY seq",
+                rs -> { timings.put(rs.getString("stage"), rs.getLong("duration_ms")); }, runId);
+        return timings;
+    }
+
+    // slowest runs of a release for one stage, or for the whole pipeline when stage is null
+    public List<Map<String, Object>> slowestRuns(String appId, String release, String stage, int limit) {
+        List<Object> args = new ArrayList<>(List.of(appId, release));
+        if (stage != null) args.add(stage);
+        args.add(limit);
+
+        return read.query("""
+        SELECT t.run_id, r.timestamp, SUM(t.duration_ms) AS duration_ms
+        FROM run_stage_timings t
+        JOIN runs r ON r.run_id = t.run_id
+        WHERE r.app_id = ? AND r.release = ?
+        %s
+        GROUP BY t.run_id, r.timestamp
+        ORDER BY duration_ms DESC, t.run_id
+        LIMIT ?
+        """.formatted(stage == null ? "" : "AND t.stage = ?"), (rs, i) -> {
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("runId", rs.getString("run_id"));
+            run.put("timestamp", LocalDateTime.ofInstant(Instant.ofEpochMilli(rs.getLong("timestamp")), ZoneOffset.UTC));
+            run.put("durationMs", rs.getLong("duration_ms"));
+            return run;
+        }, args.toArray());
+    }
+
+    // ================= TEST HISTORY =================
+    // read from the test_history index (see TestHistory), so they cost O(tests) rather than O(runs)
+
+    // tests whose outcome changes most often over their recent executions
+    public List<Map<String, Object>> flakyTests(String appId, String release, int limit) {
+        return read.query("""
+        SELECT * FROM test_history
+        WHERE app_id = ? AND release = ? AND flakiness > 0
+        ORDER BY flakiness DESC, flips DESC, history_id
+        LIMIT ?
+        """, (rs, i) -> {
+            TestHistory.Row r = TestHistory.map(rs);
+            Map<String, Object> test = testSummary(r);
+            test.put("flakiness", Math.round(rs.getDouble("flakiness") * 1000) / 1000.0);
+            test.put("flips", r.flips);
+            test.put("recent", r.recent);
+            return test;
+        }, appId, release, limit);
+    }
+
+    // tests failing (or broken) in their latest executions, longest streak first
+    public List<Map<String, Object>> failureStreaks(String appId, String release, int limit) {
+        return read.query("""
+        SELECT * FROM test_history
+        WHERE app_id = ? AND release = ? AND streak > 0
+        ORDER BY streak DESC, streak_since, history_id
+        LIMIT ?
+        """, (rs, i) -> {
+            TestHistory.Row r = TestHistory.map(rs);
+            Map<String, Object> test = testSummary(r);
+            test.put("streak", r.streak);
+            test.put("failingSince", toDateTime(r.streakSince));
+            test.put("maxStreak", r.maxStreak);
+            return test;
+        }, appId, release, limit);
+    }
+
+    // tests with the highest mean duration, each with the durations of its latest executions (oldest first)
+    public List<Map<String, Object>> slowestTests(String appId, String release, int limit, int last) {
+        List<TestHistory.Row> rows = read.query("""
+        SELECT * FROM test_history
+        WHERE app_id = ? AND release = ?
+        ORDER BY duration_sum / executions DESC, history_id
+        LIMIT ?
+        """, (rs, i) -> TestHistory.map(rs), appId, release, limit);
+        if (rows.isEmpty()) return List.of();
+
+        // the latest executions of all of them in one query, oldest first per test
+        Map<String, List<Map<String, Object>>> trends = new HashMap<>();
+        List<Object> args = new ArrayList<>(List.of(appId, release));
+        rows.forEach(r -> args.add(r.historyId));
+        args.add(last);
+        read.query("""
+        SELECT history_id, run_id, timestamp, duration_ms FROM (
+            SELECT t.history_id, t.run_id, r.timestamp, t.duration_ms,
+                   ROW_NUMBER() OVER (PARTITION BY t.history_id ORDER BY r.timestamp DESC, t.start_ms DESC) AS n
+            FROM test_results t
+            JOIN runs r ON r.run_id = t.run_id
+            WHERE r.app_id = ? AND r.release = ? AND t.history_id IN (%s)
+        ) latest
+        WHERE n <= ?
+        ORDER BY history_id, n DESC
+        """.formatted(String.join(", ", Collections.nCopies(rows.size(), "?"))), rs -> {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("runId", rs.getString("run_id"));
+            point.put("timestamp", toDateTime(rs.getLong("timestamp")));
+            point.put("durationMs", rs.getLong("duration_ms"));
+            trends.computeIfAbsent(rs.getString("history_id"), k -> new ArrayList<>()).add(point);
+        }, args.toArray());
+
+        List<Map<String, Object>> slowest = new ArrayList<>();
+        for (TestHistory.Row r : rows) {
+            Map<String, Object> test = testSummary(r);
+            test.put("meanMs", r.durationSum / r.executions);
+            test.put("lastMs", r.durationLast);
+            test.put("trend", trends.getOrDefault(r.historyId, List.of()));
+            slowest.add(test);
+        }
+        return slowest;
+    }
+
+    private static Map<String, Object> testSummary(TestHistory.Row r) {
+        Map<String, Object> test = new LinkedHashMap<>();
+        test.put("historyId", r.historyId);
+        test.put("name", r.name);
+        test.put("executions", r.executions);
+        test.put("failures", r.failures);
+        test.put("lastStatus", r.lastStatus);
+        test.put("lastRun", toDateTime(r.lastTimestamp));
+        return test;
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
     // ================= APP LEVEL =================
+    // charts read the run_daily rollup, so they cost O(days) rather than O(runs)
     public List<Map<String, Object>> appOverview(String appId, LocalDate from, LocalDate to) {
 
-        return jdbc.queryForList("""
+        return read.queryForList("""
         SELECT release,
-               COUNT(*) AS runs,
-               AVG(passed * 100.0 / total) AS passPercent,
+               SUM(runs) AS runs,
+               SUM(pass_pct_sum) / NULLIF(SUM(pass_pct_runs), 0) AS "passPercent",
                SUM(failed) AS failed,
                SUM(broken) AS broken,
                SUM(skipped) AS skipped
-        FROM runs
+        FROM run_daily
         WHERE app_id = ?
-          AND execution_date BETWEEN ? AND ?
+          AND day BETWEEN ? AND ?
         GROUP BY release
         ORDER BY release
-        """, appId, from.toString(), to.toString());
+        """, appId, from.toEpochDay(), to.toEpochDay());
     }
 
     // ================= RELEASE LEVEL =================
+    // one row per day; runs on the same day are summed
     public List<Map<String, Object>> releaseTrend(String appId, String release, LocalDate from, LocalDate to) {
 
-        return jdbc.queryForList("""
-        SELECT execution_date,
-               passed, failed, broken, skipped, total, duration_ms
-        FROM runs
+        return read.queryForList("""
+        SELECT %s AS execution_date,
+               runs, passed, failed, broken, skipped, total, duration_ms
+        FROM run_daily
         WHERE app_id = ?
           AND release = ?
-          AND execution_date BETWEEN ? AND ?
-        ORDER BY execution_date
-        """, appId, release, from.toString(), to.toString());
+          AND day BETWEEN ? AND ?
+        ORDER BY day
+        """.formatted(dialect.epochDayToDate("day")), appId, release, from.toEpochDay(), to.toEpochDay());
     }
-    public List<Map<String, Object>> bugStatus(String appId, String release) {
-        return jdbc.queryForList("""
-        SELECT 'Open' AS status, SUM(failed) AS count
-        FROM runs
-        WHERE app_id = ? AND release = ?
 
-        UNION ALL
-
-        SELECT 'In Progress', SUM(broken)
-        FROM runs
+    // Status, reporter and type charts are all cut from the same four sums, read in one pass
+    public Map<String, List<Map<String, Object>>> bugSummary(String appId, String release) {
+        Map<String, Object> sums = read.queryForMap("""
+        SELECT SUM(passed) AS passed,
+               SUM(failed) AS failed,
+               SUM(broken) AS broken,
+               SUM(skipped) AS skipped
+        FROM run_daily
         WHERE app_id = ? AND release = ?
+        """, appId, release);
 
-        UNION ALL
-
-        SELECT 'Closed', SUM(passed)
-        FROM runs
-        WHERE app_id = ? AND release = ?
-    """,
-                appId, release,
-                appId, release,
-                appId, release
-        );
+        Map<String, List<Map<String, Object>>> charts = new LinkedHashMap<>();
+        charts.put("status", List.of(
+                slice("status", "Open", sums.get("failed")),
+                slice("status", "In Progress", sums.get("broken")),
+                slice("status", "Closed", sums.get("passed"))));
+        charts.put("reporter", List.of(
+                slice("reporter", "Development Team", sums.get("failed")),
+                slice("reporter", "QA Team", sums.get("broken")),
+                slice("reporter", "Automation", sums.get("skipped"))));
+        charts.put("type", List.of(
+                slice("type", "Functional", sums.get("failed")),
+                slice("type", "Logical", sums.get("broken")),
+                slice("type", "System", sums.get("skipped"))));
+        return charts;
     }
-    public List<Map<String, Object>> bugReporter(String appId, String release) {
-        return jdbc.queryForList("""
-        SELECT 'Development Team' AS reporter, SUM(failed) AS count
-        FROM runs
-        WHERE app_id = ? AND release = ?
-
-        UNION ALL
 
-        SELECT 'QA Team', SUM(broken)
-        FROM runs
-        WHERE app_id = ? AND release = ?
+    private static Map<String, Object> slice(String labelKey, String label, Object count) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put(labelKey, label);
+        row.put("count", count);
+        return row;
+    }
 
-        UNION ALL
+    public List<Map<String, Object>> bugStatus(String appId, String release) {
+        return bugSummary(appId, release).get("status");
+    }
 
-        SELECT 'Automation', SUM(skipped)
-        FROM runs
-        WHERE app_id = ? AND release = ?
-    """,
-                appId, release,
-                appId, release,
-                appId, release
-        );
+    public List<Map<String, Object>> bugReporter(String appId, String release) {
+        return bugSummary(appId, release).get("reporter");
     }
+
     public List<Map<String, Object>> bugTypes(String appId, String release) {
-        return jdbc.queryForList("""
-      SELECT 'Functional' AS type, SUM(failed) AS count FROM runs WHERE app_id=? AND release=?
-      UNION ALL
-      SELECT 'Logical', SUM(broken) FROM runs WHERE app_id=? AND release=?
-      UNION ALL
-      SELECT 'System', SUM(skipped) FROM runs WHERE app_id=? AND release=?
-    """, appId, release, appId, release, appId, release);
+        return bugSummary(appId, release).get("type");
     }
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,481 @@
+package io.allure.platform.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Versioned schema changes for the runs database. Applied versions are recorded in
+ * {@code schema_version}; each pending migration runs in its own transaction, in
+ * order, so a failed step leaves the schema at the last good version.
+ *
+ * <p>SQLite databases carry the full history from version 1. PostgreSQL support starts
+ * at version 3, so a new PostgreSQL database is created at that version directly; later
+ * migrations are listed for both dialects.
+ */
+@Component
+public class SchemaMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private record Migration(int version, String description, Consumer<JdbcTemplate> apply) { }
+
+    private static final List<Migration> SQLITE = List.of(
+            new Migration(1, "runs and test_results", SchemaMigrator::baseline),
+            new Migration(2, "integer dates, run indexes, apps/releases tables", SchemaMigrator::indexedRuns),
+            new Migration(3, "run_daily rollup", SchemaMigrator::dailyRollup),
+            new Migration(4, "run paging index on (timestamp, run_id)", SchemaMigrator::runPagingIndex),
+            new Migration(5, "run_stage_timings", SchemaMigrator::stageTimings),
+            new Migration(6, "attachment blobs and run manifests", SchemaMigrator::attachmentBlobs),
+            new Migration(7, "per-test history index", SchemaMigrator::testHistory),
+            new Migration(8, "run and upload job content digest and idempotency key", SchemaMigrator::uploadIdentity),
+            new Migration(9, "deferred report flag", SchemaMigrator::deferredReports),
+            new Migration(10, "test flakiness score", SchemaMigrator::flakinessScore),
+            new Migration(11, "cluster nodes and upload job ownership", SchemaMigrator::clusterNodes),
+            new Migration(12, "cluster-wide named locks", SchemaMigrator::clusterLocks),
+            new Migration(13, "history store versions", SchemaMigrator::historyVersions),
+            new Migration(14, "blob storage state", SchemaMigrator::blobState),
+            new Migration(15, "purge jobs", SchemaMigrator::purgeJobs)
+    );
+
+    private static final List<Migration> POSTGRES = List.of(
+            new Migration(3, "runs, test_results, apps/releases, run_daily (postgres)", SchemaMigrator::postgresBaseline),
+            new Migration(4, "run paging index on (timestamp, run_id)", SchemaMigrator::runPagingIndex),
+            new Migration(5, "run_stage_timings", SchemaMigrator::stageTimings),
+            new Migration(6, "attachment blobs and run manifests", SchemaMigrator::attachmentBlobs),
+            new Migration(7, "per-test history index", SchemaMigrator::testHistory),
+            new Migration(8, "run and upload job content digest and idempotency key", SchemaMigrator::uploadIdentity),
+            new Migration(9, "deferred report flag", SchemaMigrator::deferredReports),
+            new Migration(10, "test flakiness score", SchemaMigrator::flakinessScore),
+            new Migration(11, "cluster nodes and upload job ownership", SchemaMigrator::clusterNodes),
+            new Migration(12, "cluster-wide named locks", SchemaMigrator::clusterLocks),
+            new Migration(13, "history store versions", SchemaMigrator::historyVersions),
+            new Migration(14, "blob storage state", SchemaMigrator::blobState),
+            new Migration(15, "purge jobs", SchemaMigrator::purgeJobs)
+    );
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final SqlDialect dialect;
+    private final List<Migration> migrations;
+    private boolean migrated;
+
+    public SchemaMigrator(JdbcTemplate jdbc, TransactionTemplate tx, SqlDialect dialect) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.dialect = dialect;
+        this.migrations = dialect == SqlDialect.POSTGRES ? POSTGRES : SQLITE;
+    }
+
+    public synchronized void migrate() {
+        if (migrated) return;
+        jdbc.execute("""
+    CREATE TABLE IF NOT EXISTS schema_version (
+        version INTEGER PRIMARY KEY,
+        description TEXT,
+        applied_at BIGINT NOT NULL
+    )
+    """);
+
+        for (Migration m : migrations) {
+            if (m.version() <= currentVersion()) continue;
+            tx.executeWithoutResult(status -> {
+                // another instance may have applied it while we waited for the lock
+                dialect.lockSchema(jdbc);
+                if (m.version() <= currentVersion()) return;
+                log.info("Migrating schema to version {}: {}", m.version(), m.description());
+                m.apply().accept(jdbc);
+                jdbc.update("INSERT INTO schema_version(version, description, applied_at) VALUES (?, ?, ?)",
+                        m.version(), m.description(), System.currentTimeMillis());
+            });
+        }
+        migrated = true;
+    }
+
+    private int currentVersion() {
+        Integer current = jdbc.queryForObject("SELECT COALESCE(MAX(version), 0) FROM schema_version", Integer.class);
+        return current == null ? 0 : current;
+    }
+
+    // ---------------- migrations ----------------
+
+    // the tables as they were before versioning; IF NOT EXISTS keeps older databases intact
+    private static void baseline(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE IF NOT EXISTS runs (
+        run_id TEXT PRIMARY KEY,
+        app_id TEXT,
+        release TEXT,
+        execution_date TEXT NOT NULL,
+        timestamp TEXT,
+        passed INTEGER,
+        failed INTEGER,
+        broken INTEGER,
+        skipped INTEGER,
+        total INTEGER,
+        duration_ms INTEGER,
+        html_path TEXT,
+        history_path TEXT
+    )
+    """);
+        jdbc.execute("""
+    CREATE TABLE IF NOT EXISTS test_results (
+        run_id TEXT NOT NULL,
+        history_id TEXT,
+        name TEXT,
+        full_name TEXT,
+        status TEXT,
+        start_ms INTEGER,
+        duration_ms INTEGER,
+        labels TEXT
+    )
+    """);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_test_results_run ON test_results(run_id)");
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_test_results_history ON test_results(history_id)");
+    }
+
+    // execution_date becomes an epoch day and timestamp epoch millis (UTC), so both sort
+    // and range-scan as integers; apps/releases replace SELECT DISTINCT over runs
+    private static void indexedRuns(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE runs_v2 (
+        run_id TEXT PRIMARY KEY,
+        app_id TEXT,
+        release TEXT,
+        execution_date INTEGER NOT NULL,
+        timestamp INTEGER,
+        passed INTEGER,
+        failed INTEGER,
+        broken INTEGER,
+        skipped INTEGER,
+        total INTEGER,
+        duration_ms INTEGER,
+        html_path TEXT,
+        history_path TEXT
+    )
+    """);
+        // strftime('%f') is SS.SSS, so characters 4-6 are the milliseconds
+        jdbc.execute("""
+    INSERT INTO runs_v2
+    SELECT run_id, app_id, release,
+           CAST(strftime('%s', execution_date) AS INTEGER) / 86400,
+           CAST(strftime('%s', timestamp) AS INTEGER) * 1000 + CAST(substr(strftime('%f', timestamp), 4, 3) AS INTEGER),
+           passed, failed, broken, skipped, total, duration_ms, html_path, history_path
+    FROM runs
+    """);
+        jdbc.execute("DROP TABLE runs");
+        jdbc.execute("ALTER TABLE runs_v2 RENAME TO runs");
+        jdbc.execute("CREATE INDEX idx_runs_app_release_ts ON runs(app_id, release, timestamp)");
+        jdbc.execute("CREATE INDEX idx_runs_app_date ON runs(app_id, execution_date)");
+
+        jdbc.execute("CREATE TABLE apps (app_id TEXT PRIMARY KEY) WITHOUT ROWID");
+        jdbc.execute("""
+    CREATE TABLE releases (
+        app_id TEXT NOT NULL,
+        release TEXT NOT NULL,
+        PRIMARY KEY (app_id, release)
+    ) WITHOUT ROWID
+    """);
+        jdbc.execute("INSERT INTO apps SELECT DISTINCT app_id FROM runs WHERE app_id IS NOT NULL");
+        jdbc.execute("INSERT INTO releases SELECT DISTINCT app_id, release FROM runs WHERE app_id IS NOT NULL AND release IS NOT NULL");
+    }
+
+    // one row per app/release/day so chart queries cost O(days) instead of O(runs);
+    // pass_pct_sum/pass_pct_runs keep the per-run average exact (runs with no tests
+    // have no pass percentage, as with AVG over runs)
+    private static void dailyRollup(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE run_daily (
+        app_id TEXT NOT NULL,
+        release TEXT NOT NULL,
+        day INTEGER NOT NULL,
+        runs INTEGER NOT NULL,
+        passed INTEGER NOT NULL,
+        failed INTEGER NOT NULL,
+        broken INTEGER NOT NULL,
+        skipped INTEGER NOT NULL,
+        total INTEGER NOT NULL,
+        duration_ms INTEGER NOT NULL,
+        pass_pct_sum REAL NOT NULL,
+        pass_pct_runs INTEGER NOT NULL,
+        PRIMARY KEY (app_id, release, day)
+    ) WITHOUT ROWID
+    """);
+        jdbc.execute("CREATE INDEX idx_run_daily_app_day ON run_daily(app_id, day)");
+        jdbc.execute("""
+    INSERT INTO run_daily
+    SELECT app_id, release, execution_date,
+           COUNT(*),
+           COALESCE(SUM(passed), 0), COALESCE(SUM(failed), 0), COALESCE(SUM(broken), 0),
+           COALESCE(SUM(skipped), 0), COALESCE(SUM(total), 0), COALESCE(SUM(duration_ms), 0),
+           COALESCE(SUM(passed * 100.0 / total), 0), COUNT(passed * 100.0 / total)
+    FROM runs
+    WHERE app_id IS NOT NULL AND release IS NOT NULL
+    GROUP BY app_id, release, execution_date
+    """);
+    }
+
+    // /api/runs pages on (timestamp, run_id) newest first; runs migrated without a
+    // timestamp get midnight of their execution date so they still sort and page
+    private static void runPagingIndex(JdbcTemplate jdbc) {
+        jdbc.execute("UPDATE runs SET timestamp = execution_date * 86400000 WHERE timestamp IS NULL");
+        jdbc.execute("DROP INDEX idx_runs_app_release_ts");
+        jdbc.execute("CREATE INDEX idx_runs_app_release_ts_id ON runs(app_id, release, timestamp, run_id)");
+    }
+
+    // upload pipeline stage durations per run, so slow uploads can be looked at later
+    private static void stageTimings(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE run_stage_timings (
+        run_id TEXT NOT NULL,
+        seq INTEGER NOT NULL,
+        stage TEXT NOT NULL,
+        duration_ms BIGINT NOT NULL,
+        PRIMARY KEY (run_id, stage)
+    )
+    """);
+    }
+
+    // attachments are stored once per content hash; run_attachments is each run's
+    // manifest (file name -> hash) and blobs.refs counts the manifest rows pointing at a blob
+    private static void attachmentBlobs(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE blobs (
+        sha256 TEXT PRIMARY KEY,
+        size BIGINT NOT NULL,
+        refs INTEGER NOT NULL
+    )
+    """);
+        jdbc.execute("""
+    CREATE TABLE run_attachments (
+        run_id TEXT NOT NULL,
+        name TEXT NOT NULL,
+        sha256 TEXT NOT NULL,
+        PRIMARY KEY (run_id, name)
+    )
+    """);
+    }
+
+    // one row per test and release (see TestHistory), built from the test_results already stored
+    private static void testHistory(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE test_history (
+        app_id TEXT NOT NULL,
+        release TEXT NOT NULL,
+        history_id TEXT NOT NULL,
+        name TEXT,
+        executions INTEGER NOT NULL,
+        failures INTEGER NOT NULL,
+        flips INTEGER NOT NULL,
+        streak INTEGER NOT NULL,
+        max_streak INTEGER NOT NULL,
+        streak_since BIGINT,
+        last_status TEXT,
+        last_timestamp BIGINT,
+        duration_sum BIGINT NOT NULL,
+        duration_last BIGINT NOT NULL,
+        recent TEXT NOT NULL,
+        PRIMARY KEY (app_id, release, history_id)
+    )
+    """);
+        TestHistory.rebuildAll(jdbc);
+    }
+
+    // a re-sent archive (same SHA-256 for the same app, release and execution date) or a
+    // retried Idempotency-Key is answered with the run it produced the first time
+    private static void uploadIdentity(JdbcTemplate jdbc) {
+        jdbc.execute("ALTER TABLE runs ADD COLUMN content_sha256 TEXT");
+        jdbc.execute("ALTER TABLE runs ADD COLUMN idempotency_key TEXT");
+        jdbc.execute("CREATE INDEX idx_runs_content ON runs(app_id, release, execution_date, content_sha256)");
+        jdbc.execute("CREATE INDEX idx_runs_idempotency_key ON runs(app_id, idempotency_key)");
+
+        uploadTables(jdbc);
+        jdbc.execute("ALTER TABLE upload_jobs ADD COLUMN idempotency_key TEXT");
+        jdbc.execute("ALTER TABLE upload_jobs ADD COLUMN content_sha256 TEXT");
+        jdbc.execute("CREATE INDEX idx_upload_jobs_key ON upload_jobs(app_id, idempotency_key)");
+    }
+
+    // runs uploaded with report.render=lazy have no stored HTML; /api/view goes straight to the report cache for them
+    private static void deferredReports(JdbcTemplate jdbc) {
+        jdbc.execute("ALTER TABLE runs ADD COLUMN html_deferred INTEGER NOT NULL DEFAULT 0");
+    }
+
+    // the flaky tests chart reads the highest scores off an index instead of scoring every flipping test
+    private static void flakinessScore(JdbcTemplate jdbc) {
+        jdbc.execute("ALTER TABLE test_history ADD COLUMN flakiness DOUBLE PRECISION NOT NULL DEFAULT 0");
+        jdbc.execute("CREATE INDEX idx_test_history_flakiness ON test_history(app_id, release, flakiness)");
+        TestHistory.scoreAll(jdbc);
+    }
+
+    // instances sharing the database and their last heartbeat; a job belongs to the node
+    // running it (owner) and, while its ZIP sits on one node's disk, to that node (staged_on)
+    private static void clusterNodes(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE cluster_nodes (
+        node_id TEXT PRIMARY KEY,
+        url TEXT,
+        heartbeat_at BIGINT NOT NULL
+    )
+    """);
+        jdbc.execute("ALTER TABLE upload_jobs ADD COLUMN owner TEXT");
+        jdbc.execute("ALTER TABLE upload_jobs ADD COLUMN staged_on TEXT");
+        jdbc.execute("CREATE INDEX idx_upload_jobs_status ON upload_jobs(status, created_at)");
+    }
+
+    // a row per held lock, e.g. an Idempotency-Key being processed; a lock whose owner
+    // node stopped sending heartbeats may be taken over
+    private static void clusterLocks(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE cluster_locks (
+        name TEXT PRIMARY KEY,
+        owner TEXT NOT NULL,
+        acquired_at BIGINT NOT NULL
+    )
+    """);
+        jdbc.execute("CREATE INDEX idx_cluster_locks_owner ON cluster_locks(owner)");
+    }
+
+    // the last version handed out per HistoryStore location, so two instances never
+    // derive the same one from listing the store
+    private static void historyVersions(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE history_versions (
+        store TEXT PRIMARY KEY,
+        version BIGINT NOT NULL
+    )
+    """);
+    }
+
+    // whether a blob's content is in the store: 'pending' until an upload has written it,
+    // 'deleting' from when its last reference goes until the content is removed (since state_at)
+    private static void blobState(JdbcTemplate jdbc) {
+        jdbc.execute("ALTER TABLE blobs ADD COLUMN state TEXT NOT NULL DEFAULT 'stored'");
+        jdbc.execute("ALTER TABLE blobs ADD COLUMN state_at BIGINT");
+    }
+
+    // background release/app deletions, so any instance can report one and a restart does not lose
+    // it; at most one job per target is queued or running
+    private static void purgeJobs(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE purge_jobs (
+        job_id TEXT PRIMARY KEY,
+        app_id TEXT NOT NULL,
+        release TEXT,
+        status TEXT NOT NULL,
+        runs INTEGER NOT NULL,
+        objects_deleted BIGINT NOT NULL DEFAULT 0,
+        error TEXT,
+        owner TEXT,
+        created_at TEXT,
+        updated_at TEXT
+    )
+    """);
+        jdbc.execute("""
+    CREATE UNIQUE INDEX idx_purge_jobs_active ON purge_jobs(app_id, COALESCE(release, ''))
+    WHERE status IN ('QUEUED', 'RUNNING')
+    """);
+        jdbc.execute("CREATE INDEX idx_purge_jobs_status ON purge_jobs(status, created_at)");
+    }
+
+    // the async and chunked upload tables as UploadJobRepository created them on startup
+    // before they were versioned; IF NOT EXISTS keeps the ones already there
+    private static void uploadTables(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE IF NOT EXISTS upload_jobs (
+        job_id TEXT PRIMARY KEY,
+        run_id TEXT NOT NULL,
+        app_id TEXT,
+        release TEXT,
+        execution_date TEXT NOT NULL,
+        status TEXT NOT NULL,
+        stage TEXT,
+        zip_path TEXT,
+        error TEXT,
+        created_at TEXT,
+        updated_at TEXT
+    )
+    """);
+        // chunked uploads (status RECEIVING): how much of the ZIP is stored, for resuming
+        jdbc.execute("""
+    CREATE TABLE IF NOT EXISTS upload_sessions (
+        job_id TEXT PRIMARY KEY,
+        bytes_total BIGINT,
+        bytes_received BIGINT NOT NULL
+    )
+    """);
+    }
+
+    // the schema as of version 3; BRIN indexes suit the date columns, which grow with
+    // insertion order, and stay a fraction of the size of a b-tree
+    private static void postgresBaseline(JdbcTemplate jdbc) {
+        jdbc.execute("""
+    CREATE TABLE runs (
+        run_id TEXT PRIMARY KEY,
+        app_id TEXT,
+        release TEXT,
+        execution_date INTEGER NOT NULL,
+        timestamp BIGINT,
+        passed INTEGER,
+        failed INTEGER,
+        broken INTEGER,
+        skipped INTEGER,
+        total INTEGER,
+        duration_ms BIGINT,
+        html_path TEXT,
+        history_path TEXT
+    )
+    """);
+        jdbc.execute("CREATE INDEX idx_runs_app_release_ts ON runs(app_id, release, timestamp)");
+        jdbc.execute("CREATE INDEX idx_runs_app_date ON runs(app_id, execution_date)");
+        jdbc.execute("CREATE INDEX idx_runs_date_brin ON runs USING BRIN (execution_date)");
+
+        jdbc.execute("""
+    CREATE TABLE test_results (
+        run_id TEXT NOT NULL,
+        history_id TEXT,
+        name TEXT,
+        full_name TEXT,
+        status TEXT,
+        start_ms BIGINT,
+        duration_ms BIGINT,
+        labels TEXT
+    )
+    """);
+        jdbc.execute("CREATE INDEX idx_test_results_run ON test_results(run_id)");
+        jdbc.execute("CREATE INDEX idx_test_results_history ON test_results(history_id)");
+
+        jdbc.execute("CREATE TABLE apps (app_id TEXT PRIMARY KEY)");
+        jdbc.execute("""
+    CREATE TABLE releases (
+        app_id TEXT NOT NULL,
+        release TEXT NOT NULL,
+        PRIMARY KEY (app_id, release)
+    )
+    """);
+
+        jdbc.execute("""
+    CREATE TABLE run_daily (
+        app_id TEXT NOT NULL,
+        release TEXT NOT NULL,
+        day INTEGER NOT NULL,
+        runs BIGINT NOT NULL,
+        passed BIGINT NOT NULL,
+        failed BIGINT NOT NULL,
+        broken BIGINT NOT NULL,
+        skipped BIGINT NOT NULL,
+        total BIGINT NOT NULL,
+        duration_ms BIGINT NOT NULL,
+        pass_pct_sum DOUBLE PRECISION NOT NULL,
+        pass_pct_runs BIGINT NOT NULL,
+        PRIMARY KEY (app_id, release, day)
+    )
+    """);
+        jdbc.execute("CREATE INDEX idx_run_daily_app_day ON run_daily(app_id, day)");
+        jdbc.execute("CREATE INDEX idx_run_daily_day_brin ON run_daily USING BRIN (day)");
+    }
+}
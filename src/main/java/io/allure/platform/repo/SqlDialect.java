@@ -0,0 +1,49 @@
+package io.allure.platform.repo;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * The SQL differences between the supported run databases. SQLite keeps everything in
+ * one local file and suits a single instance; PostgreSQL is shared, so several
+ * instances of the app can run behind a load balancer.
+ */
+public enum SqlDialect {
+
+    SQLITE {
+        @Override
+        public String epochDayToDate(String column) {
+            return "date(" + column + " * 86400, 'unixepoch')";
+        }
+
+        // the writer opens transactions with BEGIN IMMEDIATE, which already serializes them
+        @Override
+        public void lockSchema(JdbcTemplate jdbc) { }
+    },
+
+    POSTGRES {
+        @Override
+        public String epochDayToDate(String column) {
+            return "to_char(DATE '1970-01-01' + " + column + ", 'YYYY-MM-DD')";
+        }
+
+        // held until the transaction ends, so instances starting together migrate one at a time
+        @Override
+        public void lockSchema(JdbcTemplate jdbc) {
+            jdbc.query("SELECT pg_advisory_xact_lock(" + SCHEMA_LOCK_KEY + ")", rs -> { });
+        }
+    };
+
+    private static final long SCHEMA_LOCK_KEY = 0x616c6c757265L;
+
+    /** SQL expression rendering an epoch-day integer column as {@code yyyy-MM-dd}. */
+    public abstract String epochDayToDate(String column);
+
+    /** Serializes schema migrations across instances sharing the database. */
+    public abstract void lockSchema(JdbcTemplate jdbc);
+
+    public static SqlDialect forUrl(String jdbcUrl) {
+        if (jdbcUrl.startsWith("jdbc:sqlite:")) return SQLITE;
+        if (jdbcUrl.startsWith("jdbc:postgresql:")) return POSTGRES;
+        throw new IllegalArgumentException("Unsupported database URL: " + jdbcUrl);
+    }
+}
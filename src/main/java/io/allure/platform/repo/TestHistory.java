@@ -0,0 +1,276 @@
+package io.allure.platform.repo;
+
+import io.allure.platform.model.TestResult;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The test_history index: one row per test (history id) and release, folded forward one
+ * execution at a time, so flaky tests, failure streaks and slow tests are read without
+ * scanning test_results. Retries within a run count as executions of their own, which
+ * is how a fail-then-pass retry shows up as a flip.
+ *
+ * <p>{@code recent} holds the statuses of the last {@link #WINDOW} executions, oldest
+ * first, one letter each: p(assed), f(ailed), b(roken), s(kipped), u(nknown). Its
+ * {@link #flakiness} is stored alongside, so the flakiest tests are an indexed query.
+ */
+final class TestHistory {
+
+    static final int WINDOW = 64;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int IN_CHUNK = 500;
+
+    private static final String COLUMNS = """
+        app_id, release, history_id, name, executions, failures, flips, streak, max_streak,
+        streak_since, last_status, last_timestamp, duration_sum, duration_last, recent, flakiness""";
+
+    private TestHistory() { }
+
+    /** One test_history row. */
+    static final class Row {
+        final String historyId;
+        String name;
+        int executions;
+        int failures;
+        int flips;
+        int streak;
+        int maxStreak;
+        long streakSince;
+        String lastStatus;
+        long lastTimestamp;
+        long durationSum;
+        long durationLast;
+        String recent = "";
+
+        Row(String historyId) {
+            this.historyId = historyId;
+        }
+
+        // folds one execution into the row
+        void add(String status, String testName, long timestamp, long durationMs) {
+            char code = code(status);
+            char previous = lastOutcome(recent);
+            if (code != 's' && code != 'u' && previous != 0 && failing(code) != failing(previous)) flips++;
+
+            if (failing(code)) {
+                failures++;
+                if (streak++ == 0) streakSince = timestamp;
+                maxStreak = Math.max(maxStreak, streak);
+            } else if (code == 'p') {
+                streak = 0;
+                streakSince = 0;
+            }
+
+            executions++;
+            recent = recent.length() < WINDOW ? recent + code : recent.substring(1) + code;
+            if (testName != null) name = testName;
+            lastStatus = status;
+            lastTimestamp = timestamp;
+            durationSum += durationMs;
+            durationLast = durationMs;
+        }
+    }
+
+    /** Share of outcome changes between consecutive executions in the window, skips ignored. */
+    static double flakiness(String recent) {
+        int outcomes = 0, changes = 0;
+        char previous = 0;
+        for (int i = 0; i < recent.length(); i++) {
+            char c = recent.charAt(i);
+            if (c == 's' || c == 'u') continue;
+            if (previous != 0 && failing(c) != failing(previous)) changes++;
+            previous = c;
+            outcomes++;
+        }
+        return outcomes < 2 ? 0 : (double) changes / (outcomes - 1);
+    }
+
+    private static char code(String status) {
+        if (status == null) return 'u';
+        return switch (status) {
+            case "passed" -> 'p';
+            case "failed" -> 'f';
+            case "broken" -> 'b';
+            case "skipped" -> 's';
+            default -> 'u';
+        };
+    }
+
+    private static boolean failing(char code) {
+        return code == 'f' || code == 'b';
+    }
+
+    private static char lastOutcome(String recent) {
+        for (int i = recent.length() - 1; i >= 0; i--) {
+            char c = recent.charAt(i);
+            if (c != 's' && c != 'u') return c;
+        }
+        return 0;
+    }
+
+    // ---------------- writes (on the writer thread) ----------------
+
+    /** Folds one run's tests into the release's rows. */
+    static void append(JdbcTemplate jdbc, String appId, String release, long timestamp, List<TestResult> tests) {
+        Map<String, List<TestResult>> byTest = new LinkedHashMap<>();
+        for (TestResult t : tests) {
+            if (t.getHistoryId() != null) byTest.computeIfAbsent(t.getHistoryId(), k -> new ArrayList<>()).add(t);
+        }
+        if (byTest.isEmpty()) return;
+
+        Map<String, Row> rows = load(jdbc, appId, release, List.copyOf(byTest.keySet()));
+        for (Map.Entry<String, List<TestResult>> e : byTest.entrySet()) {
+            Row row = rows.computeIfAbsent(e.getKey(), Row::new);
+            List<TestResult> attempts = e.getValue();
+            attempts.sort(Comparator.comparingLong(TestResult::getStart));
+            for (TestResult t : attempts) {
+                row.add(t.getStatus(), t.getName() != null ? t.getName() : t.getFullName(), timestamp, t.getDurationMs());
+            }
+        }
+        upsert(jdbc, appId, release, List.copyOf(rows.values()));
+    }
+
+    /** Rebuilds a release's rows from test_results. */
+    static void rebuild(JdbcTemplate jdbc, String appId, String release) {
+        jdbc.update("DELETE FROM test_history WHERE app_id = ? AND release = ?", appId, release);
+        fold(jdbc, appId, release, "", List.of());
+    }
+
+    /**
+     * Rebuilds the rows of the given tests only, e.g. those of a deleted run: the other
+     * tests' executions are unchanged. Costs O(executions of those tests) rather than a
+     * fold of the whole release; tests left without executions lose their row.
+     */
+    static void rebuild(JdbcTemplate jdbc, String appId, String release, List<String> historyIds) {
+        for (int i = 0; i < historyIds.size(); i += IN_CHUNK) {
+            List<String> chunk = historyIds.subList(i, Math.min(i + IN_CHUNK, historyIds.size()));
+            String in = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            List<Object> args = new ArrayList<>(List.of(appId, release));
+            args.addAll(chunk);
+            jdbc.update("DELETE FROM test_history WHERE app_id = ? AND release = ? AND history_id IN (" + in + ")", args.toArray());
+            fold(jdbc, appId, release, "AND t.history_id IN (" + in + ")", chunk);
+        }
+    }
+
+    // folds the matching executions of a release, test by test in run order, and writes the rows
+    private static void fold(JdbcTemplate jdbc, String appId, String release, String filter, List<String> filterArgs) {
+        List<Object> args = new ArrayList<>(List.of(appId, release));
+        args.addAll(filterArgs);
+        List<Row> pending = new ArrayList<>();
+        Row[] current = new Row[1];
+        jdbc.query("""
+        SELECT t.history_id, t.name, t.full_name, t.status, t.duration_ms, r.timestamp
+        FROM test_results t
+        JOIN runs r ON r.run_id = t.run_id
+        WHERE r.app_id = ? AND r.release = ? AND t.history_id IS NOT NULL %s
+        ORDER BY t.history_id, r.timestamp, t.start_ms
+        """.formatted(filter), rs -> {
+            String historyId = rs.getString("history_id");
+            if (current[0] == null || !current[0].historyId.equals(historyId)) {
+                if (current[0] != null) pending.add(current[0]);
+                if (pending.size() == BATCH_SIZE) {
+                    upsert(jdbc, appId, release, pending);
+                    pending.clear();
+                }
+                current[0] = new Row(historyId);
+            }
+            String name = rs.getString("name");
+            current[0].add(rs.getString("status"), name != null ? name : rs.getString("full_name"),
+                    rs.getLong("timestamp"), rs.getLong("duration_ms"));
+        }, args.toArray());
+        if (current[0] != null) pending.add(current[0]);
+        upsert(jdbc, appId, release, pending);
+    }
+
+    /** Builds the index for every release; used once, when the table is created. */
+    static void rebuildAll(JdbcTemplate jdbc) {
+        for (Map<String, Object> r : jdbc.queryForList("SELECT DISTINCT app_id, release FROM runs")) {
+            rebuild(jdbc, (String) r.get("app_id"), (String) r.get("release"));
+        }
+    }
+
+    /** Scores every row's flakiness; used once, when the column is added. */
+    static void scoreAll(JdbcTemplate jdbc) {
+        List<Object[]> scores = jdbc.query("SELECT app_id, release, history_id, recent FROM test_history WHERE flips > 0",
+                (rs, i) -> new Object[]{ flakiness(rs.getString("recent")),
+                        rs.getString("app_id"), rs.getString("release"), rs.getString("history_id") });
+        jdbc.batchUpdate("UPDATE test_history SET flakiness = ? WHERE app_id = ? AND release = ? AND history_id = ?", scores);
+    }
+
+    private static Map<String, Row> load(JdbcTemplate jdbc, String appId, String release, List<String> historyIds) {
+        Map<String, Row> rows = new LinkedHashMap<>();
+        for (int i = 0; i < historyIds.size(); i += IN_CHUNK) {
+            List<String> chunk = historyIds.subList(i, Math.min(i + IN_CHUNK, historyIds.size()));
+            List<Object> args = new ArrayList<>(List.of(appId, release));
+            args.addAll(chunk);
+            jdbc.query("SELECT * FROM test_history WHERE app_id = ? AND release = ? AND history_id IN ("
+                            + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                    rs -> { rows.put(rs.getString("history_id"), map(rs)); }, args.toArray());
+        }
+        return rows;
+    }
+
+    private static void upsert(JdbcTemplate jdbc, String appId, String release, List<Row> rows) {
+        if (rows.isEmpty()) return;
+        jdbc.batchUpdate("INSERT INTO test_history(" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                + """
+                 ON CONFLICT(app_id, release, history_id) DO UPDATE SET
+                    name = excluded.name,
+                    executions = excluded.executions,
+                    failures = excluded.failures,
+                    flips = excluded.flips,
+                    streak = excluded.streak,
+                    max_streak = excluded.max_streak,
+                    streak_since = excluded.streak_since,
+                    last_status = excluded.last_status,
+                    last_timestamp = excluded.last_timestamp,
+                    duration_sum = excluded.duration_sum,
+                    duration_last = excluded.duration_last,
+                    recent = excluded.recent,
+                    flakiness = excluded.flakiness
+                """, rows, BATCH_SIZE, (ps, r) -> {
+            ps.setString(1, appId);
+            ps.setString(2, release);
+            ps.setString(3, r.historyId);
+            ps.setString(4, r.name);
+            ps.setInt(5, r.executions);
+            ps.setInt(6, r.failures);
+            ps.setInt(7, r.flips);
+            ps.setInt(8, r.streak);
+            ps.setInt(9, r.maxStreak);
+            ps.setLong(10, r.streakSince);
+            ps.setString(11, r.lastStatus);
+            ps.setLong(12, r.lastTimestamp);
+            ps.setLong(13, r.durationSum);
+            ps.setLong(14, r.durationLast);
+            ps.setString(15, r.recent);
+            ps.setDouble(16, flakiness(r.recent));
+        });
+    }
+
+    static Row map(ResultSet rs) throws SQLException {
+        Row r = new Row(rs.getString("history_id"));
+        r.name = rs.getString("name");
+        r.executions = rs.getInt("executions");
+        r.failures = rs.getInt("failures");
+        r.flips = rs.getInt("flips");
+        r.streak = rs.getInt("streak");
+        r.maxStreak = rs.getInt("max_streak");
+        r.streakSince = rs.getLong("streak_since");
+        r.lastStatus = rs.getString("last_status");
+        r.lastTimestamp = rs.getLong("last_timestamp");
+        r.durationSum = rs.getLong("duration_sum");
+        r.durationLast = rs.getLong("duration_last");
+        r.recent = rs.getString("recent");
+        return r;
+    }
+}
@@ -0,0 +1,221 @@
+package io.allure.platform.repo;
+
+import io.allure.platform.model.UploadJob;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+@Repository
+public class UploadJobRepository {
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate read;
+    private final WriteQueue writes;
+
+    public UploadJobRepository(JdbcTemplate jdbc,
+                               @Qualifier("readJdbcTemplate") JdbcTemplate read,
+                               WriteQueue writes,
+                               SchemaMigrator migrator) {
+        this.jdbc = jdbc;
+        this.read = read;
+        this.writes = writes;
+        // upload_jobs and upload_sessions come from the versioned migrations
+        migrator.migrate();
+    }
+
+    public void save(UploadJob j) {
+        writes.run(() -> insert(j));
+    }
+
+    // a chunked upload's job and its receive state, created together
+    public void save(UploadJob j, Long bytesTotal) {
+        writes.run(() -> {
+            insert(j);
+            jdbc.update("INSERT INTO upload_sessions(job_id, bytes_total, bytes_received) VALUES (?, ?, 0)",
+                    j.getJobId(), bytesTotal);
+        });
+    }
+
+    private void insert(UploadJob j) {
+        jdbc.update("""
+    INSERT INTO upload_jobs(
+        job_id, run_id, app_id, release, execution_date,
+        status, stage, zip_path, error, created_at, updated_at,
+        idempotency_key, content_sha256, owner, staged_on
+    )
+    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """,
+                j.getJobId(),
+                j.getRunId(),
+                j.getAppId(),
+                j.getRelease(),
+                j.getExecutionDate(),
+                j.getStatus(),
+                j.getStage(),
+                j.getZipPath(),
+                j.getError(),
+                j.getCreatedAt().toString(),
+                j.getUpdatedAt().toString(),
+                j.getIdempotencyKey(),
+                j.getContentSha256(),
+                j.getOwner(),
+                j.getStagedOn()
+        );
+    }
+
+    public void updateStatus(String jobId, String status, String stage, String error) {
+        writes.run(() -> jdbc.update("UPDATE upload_jobs SET status = ?, stage = ?, error = ?, updated_at = ? WHERE job_id = ?",
+                status, stage, error, LocalDateTime.now().toString(), jobId));
+    }
+
+    // the pipeline answered with an earlier run of the same archive
+    public void updateRunId(String jobId, String runId) {
+        writes.run(() -> jdbc.update("UPDATE upload_jobs SET run_id = ? WHERE job_id = ?", runId, jobId));
+    }
+
+    // ---------------- duplicates ----------------
+
+    // Latest job submitted with this Idempotency-Key that has not failed
+    public UploadJob findByIdempotencyKey(String appId, String key) {
+        List<UploadJob> list = read.query(
+                "SELECT * FROM upload_jobs WHERE app_id = ? AND idempotency_key = ? AND status <> 'FAILED' ORDER BY created_at DESC LIMIT 1",
+                (rs, i) -> map(rs),
+                appId, key
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // A queued or running job for the same archive, app, release and execution date
+    public UploadJob findPendingByContent(String appId, String release, String executionDate, String sha256) {
+        List<UploadJob> list = read.query("""
+    SELECT * FROM upload_jobs
+    WHERE app_id = ? AND release = ? AND execution_date = ? AND content_sha256 = ?
+      AND status IN ('QUEUED', 'RUNNING')
+    ORDER BY created_at LIMIT 1
+    """,
+                (rs, i) -> map(rs),
+                appId, release, executionDate, sha256
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // ---------------- chunked upload sessions ----------------
+
+    public UploadSession findSession(String jobId) {
+        List<UploadSession> list = read.query(
+                "SELECT * FROM upload_sessions WHERE job_id = ?",
+                (rs, i) -> new UploadSession(rs.getString("job_id"),
+                        rs.getObject("bytes_total") == null ? null : rs.getLong("bytes_total"),
+                        rs.getLong("bytes_received")),
+                jobId
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    public void updateReceived(String jobId, long bytesReceived) {
+        writes.run(() -> {
+            jdbc.update("UPDATE upload_sessions SET bytes_received = ? WHERE job_id = ?", bytesReceived, jobId);
+            jdbc.update("UPDATE upload_jobs SET updated_at = ? WHERE job_id = ?", LocalDateTime.now().toString(), jobId);
+        });
+    }
+
+    public void deleteSession(String jobId) {
+        writes.run(() -> jdbc.update("DELETE FROM upload_sessions WHERE job_id = ?", jobId));
+    }
+
+    // Uploads left RECEIVING with nothing new since `before`
+    public List<UploadJob> findIdle(LocalDateTime before) {
+        return read.query(
+                "SELECT * FROM upload_jobs WHERE status = 'RECEIVING' AND updated_at < ?",
+                (rs, i) -> map(rs),
+                before.toString()
+        );
+    }
+
+    public UploadJob findById(String jobId) {
+        List<UploadJob> list = read.query(
+                "SELECT * FROM upload_jobs WHERE job_id = ?",
+                (rs, i) -> map(rs),
+                jobId
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    // Queued jobs this node can run, those staged in S3 or on its own disk; oldest first, so
+    // jobs are dispatched in arrival order
+    public List<UploadJob> findQueued(String node) {
+        return read.query(
+                "SELECT * FROM upload_jobs WHERE status = 'QUEUED' AND (staged_on IS NULL OR staged_on = ?) ORDER BY created_at",
+                (rs, i) -> map(rs),
+                node
+        );
+    }
+
+    public int countByStatus(String... statuses) {
+        String placeholders = String.join(",", Collections.nCopies(statuses.length, "?"));
+        Integer count = read.queryForObject(
+                "SELECT COUNT(*) FROM upload_jobs WHERE status IN (" + placeholders + ")",
+                Integer.class, (Object[]) statuses);
+        return count == null ? 0 : count;
+    }
+
+    // ---------------- ownership ----------------
+
+    // Takes a queued job for the node; false when another node took it first
+    public boolean claim(String jobId, String owner) {
+        return writes.call(() -> jdbc.update(
+                "UPDATE upload_jobs SET status = 'RUNNING', owner = ?, updated_at = ? WHERE job_id = ? AND status = 'QUEUED'",
+                owner, LocalDateTime.now().toString(), jobId)) == 1;
+    }
+
+    // Jobs the node was running when it stopped go back to the queue
+    public int requeueOwned(String owner) {
+        return writes.call(() -> jdbc.update(
+                "UPDATE upload_jobs SET status = 'QUEUED', owner = NULL, updated_at = ? WHERE status = 'RUNNING' AND owner = ?",
+                LocalDateTime.now().toString(), owner));
+    }
+
+    // Running jobs of nodes without a heartbeat since aliveSince go back to the queue
+    public int requeueOrphans(long aliveSince) {
+        return writes.call(() -> jdbc.update("""
+    UPDATE upload_jobs SET status = 'QUEUED', owner = NULL, updated_at = ?
+    WHERE status = 'RUNNING' AND (owner IS NULL OR owner NOT IN (%s))
+    """.formatted(ClusterRepository.LIVE_NODES),
+                LocalDateTime.now().toString(), aliveSince));
+    }
+
+    // Queued jobs whose ZIP sits on the disk of a node that is gone cannot run anywhere else
+    public int failStranded(long aliveSince) {
+        return writes.call(() -> jdbc.update("""
+    UPDATE upload_jobs SET status = 'FAILED', owner = NULL, updated_at = ?,
+        error = 'ZIP was staged on node ' || staged_on || ', which stopped'
+    WHERE status = 'QUEUED' AND staged_on IS NOT NULL AND staged_on NOT IN (%s)
+    """.formatted(ClusterRepository.LIVE_NODES),
+                LocalDateTime.now().toString(), aliveSince));
+    }
+
+    private UploadJob map(ResultSet rs) throws SQLException {
+        UploadJob j = new UploadJob();
+        j.setJobId(rs.getString("job_id"));
+        j.setRunId(rs.getString("run_id"));
+        j.setAppId(rs.getString("app_id"));
+        j.setRelease(rs.getString("release"));
+        j.setExecutionDate(rs.getString("execution_date"));
+        j.setStatus(rs.getString("status"));
+        j.setStage(rs.getString("stage"));
+        j.setZipPath(rs.getString("zip_path"));
+        j.setError(rs.getString("error"));
+        j.setCreatedAt(LocalDateTime.parse(rs.getString("created_at")));
+        j.setUpdatedAt(LocalDateTime.parse(rs.getString("updated_at")));
+        j.setIdempotencyKey(rs.getString("idempotency_key"));
+        j.setContentSha256(rs.getString("content_sha256"));
+        j.setOwner(rs.getString("owner"));
+        j.setStagedOn(rs.getString("staged_on"));
+        return j;
+    }
+}
@@ -0,0 +1,7 @@
+package io.allure.platform.repo;
+
+/**
+ * Receive state of a chunked upload: the bytes of its ZIP stored so far, and the
+ * total the client announced (null when it did not). Keyed by the upload's job id.
+ */
+public record UploadSession(String jobId, Long bytesTotal, long bytesReceived) { }
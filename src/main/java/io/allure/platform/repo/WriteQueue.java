@@ -0,0 +1,152 @@
+package io.allure.platform.repo;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Funnels every database write through one thread. Writes queued while a commit is
+ * in progress are applied together in the next transaction, each inside its own
+ * savepoint, so a failing write is rolled back on its own and the rest still commit.
+ * Callers block until their write has been committed.
+ *
+ * <p>At most {@code sqlite.write.max-pending} writes wait at once; further callers block
+ * before queueing. With platform threads the request pool bounded this already, with
+ * virtual threads (see {@link io.allure.platform.config.VirtualThreads}) nothing else does.
+ */
+@Component
+public class WriteQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteQueue.class);
+
+    private record Task(Supplier<?> work, CompletableFuture<Object> done) { }
+
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final Semaphore pending;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate savepoint;
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public WriteQueue(PlatformTransactionManager txManager,
+                      @Value("${sqlite.write.max-batch:64}") int maxBatch,
+                      @Value("${sqlite.write.max-pending:1024}") int maxPending) {
+        this.tx = new TransactionTemplate(txManager);
+        this.savepoint = new TransactionTemplate(txManager);
+        this.savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.maxBatch = Math.max(1, maxBatch);
+        this.pending = new Semaphore(Math.max(1, maxPending), true);
+
+        this.writer = new Thread(this::loop, "sqlite-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void run(Runnable work) {
+        call(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T call(Supplier<T> work) {
+        // a write issued from inside a queued write joins its transaction
+        if (Thread.currentThread() == writer) return work.get();
+        if (!running) throw new IllegalStateException("Write queue is shut down");
+
+        CompletableFuture<Object> done = new CompletableFuture<>();
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a database write", e);
+        }
+        try {
+            queue.add(new Task(work, done));
+            return (T) done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a database write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        } finally {
+            pending.release();
+        }
+    }
+
+    // ---------------- writer thread ----------------
+
+    private void loop() {
+        List<Task> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Task first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                log.error("Write batch of {} failed", batch.size(), t);
+                batch.forEach(task -> task.done().completeExceptionally(t));
+            }
+            batch.clear();
+        }
+        queue.forEach(task -> task.done().completeExceptionally(new IllegalStateException("Write queue is shut down")));
+    }
+
+    private void commit(List<Task> batch) {
+        Object[] results = new Object[batch.size()];
+        RuntimeException[] errors = new RuntimeException[batch.size()];
+
+        try {
+            tx.executeWithoutResult(status -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    Supplier<?> work = batch.get(i).work();
+                    try {
+                        results[i] = batch.size() == 1 ? work.get() : savepoint.execute(s -> work.get());
+                    } catch (RuntimeException e) {
+                        if (batch.size() == 1) throw e;
+                        errors[i] = e;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // the single write failed, or the commit did and nothing in the batch was written
+            batch.forEach(task -> task.done().completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors[i] != null) batch.get(i).done().completeExceptionally(errors[i]);
+            else batch.get(i).done().complete(results[i]);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
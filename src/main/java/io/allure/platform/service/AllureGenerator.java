@@ -0,0 +1,165 @@
+package io.allure.platform.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Renders Allure reports. In {@code embedded} mode the Allure distribution's jars are
+ * loaded once into an isolated class loader and its generate command is called in
+ * process, so every report shares a warm JIT instead of paying for a fresh JVM.
+ * {@code cli} mode forks the {@code allure} binary as before and is also used when
+ * no distribution can be found. Either way at most {@code max-concurrent}
+ * generations run at once.
+ */
+@Component
+public class AllureGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(AllureGenerator.class);
+
+    private final Semaphore slots;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Path allureHome;
+    private URLClassLoader loader;
+    private Object commands;
+    private Method generate;
+    private Class<?> configOptions;
+    private Class<?> reportNameOptions;
+
+    public AllureGenerator(@Value("${report.generator.mode:embedded}") String mode,
+                           @Value("${report.generator.allure-home:}") String allureHome,
+                           @Value("${report.generator.max-concurrent:2}") int maxConcurrent,
+                           MeterRegistry registry) {
+        this.slots = new Semaphore(maxConcurrent, true);
+        registry.gauge("report.generator.running", running);
+        registry.gauge("report.generator.waiting", slots, Semaphore::getQueueLength);
+        this.allureHome = resolveAllureHome(allureHome);
+
+        if ("embedded".equalsIgnoreCase(mode)) {
+            try {
+                initEmbedded();
+                log.info("Allure report generation runs in process from {}", this.allureHome);
+            } catch (Exception e) {
+                log.warn("Embedded Allure generator unavailable ({}), falling back to the allure CLI", e.toString());
+                loader = null;
+            }
+        }
+    }
+
+    public boolean isEmbedded() {
+        return loader != null;
+    }
+
+    /**
+     * Generates a report from {@code resultsDir} into a clean {@code outDir}.
+     *
+     * @return true when the generator reported success
+     */
+    public boolean generate(Path resultsDir, Path outDir, boolean singleFile) throws IOException, InterruptedException {
+        slots.acquire();
+        running.incrementAndGet();
+        try {
+            return isEmbedded()
+                    ? generateEmbedded(resultsDir, outDir, singleFile)
+                    : generateCli(resultsDir, outDir, singleFile);
+        } finally {
+            running.decrementAndGet();
+            slots.release();
+        }
+    }
+
+    // ---------------- embedded ----------------
+    private void initEmbedded() throws Exception {
+        if (allureHome == null) throw new IllegalStateException("allure home not found");
+        Path lib = allureHome.resolve("lib");
+
+        List<URL> urls = new ArrayList<>();
+        try (Stream<Path> jars = Files.list(lib)) {
+            for (Path jar : jars.filter(p -> p.toString().endsWith(".jar")).toList()) {
+                urls.add(jar.toUri().toURL());
+            }
+        }
+        if (urls.isEmpty()) throw new IllegalStateException("no jars in " + lib);
+        Path config = lib.resolve("config");
+        if (Files.isDirectory(config)) urls.add(config.toUri().toURL());
+
+        // parent is the platform loader so Allure's Jackson/SLF4J never clash with ours
+        loader = new URLClassLoader("allure", urls.toArray(URL[]::new), ClassLoader.getPlatformClassLoader());
+
+        Class<?> commandsClass = loader.loadClass("io.qameta.allure.Commands");
+        configOptions = loader.loadClass("io.qameta.allure.option.ConfigOptions");
+        reportNameOptions = loader.loadClass("io.qameta.allure.option.ReportNameOptions");
+        commands = commandsClass.getConstructor(Path.class).newInstance(allureHome);
+        generate = commandsClass.getMethod("generate",
+                Path.class, List.class, boolean.class, boolean.class, configOptions, reportNameOptions);
+    }
+
+    private boolean generateEmbedded(Path resultsDir, Path outDir, boolean singleFile) {
+        Thread current = Thread.currentThread();
+        ClassLoader previous = current.getContextClassLoader();
+        current.setContextClassLoader(loader);
+        try {
+            Object exitCode = generate.invoke(commands, outDir, List.of(resultsDir), true, singleFile,
+                    configOptions.getConstructor().newInstance(),
+                    reportNameOptions.getConstructor().newInstance());
+            return (boolean) exitCode.getClass().getMethod("isSuccess").invoke(exitCode);
+        } catch (Exception e) {
+            log.error("Embedded Allure generation failed for {}", resultsDir, e);
+            return false;
+        } finally {
+            current.setContextClassLoader(previous);
+        }
+    }
+
+    // ---------------- cli ----------------
+    private boolean generateCli(Path resultsDir, Path outDir, boolean singleFile) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(List.of("allure", "generate", resultsDir.toString(), "--clean"));
+        if (singleFile) cmd.add("--single-file");
+        cmd.add("-o");
+        cmd.add(outDir.toString());
+        return new ProcessBuilder(cmd).inheritIO().start().waitFor() == 0;
+    }
+
+    // explicit setting, then $ALLURE_HOME, then wherever the allure binary on PATH lives
+    private static Path resolveAllureHome(String configured) {
+        if (configured != null && !configured.isBlank()) return Paths.get(configured);
+
+        String env = System.getenv("ALLURE_HOME");
+        if (env != null && !env.isBlank()) return Paths.get(env);
+
+        String path = System.getenv("PATH");
+        if (path == null) return null;
+        for (String dir : path.split(File.pathSeparator)) {
+            Path bin = Paths.get(dir, "allure");
+            if (Files.isExecutable(bin)) {
+                try {
+                    return bin.toRealPath().getParent().getParent();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (loader != null) loader.close();
+    }
+}
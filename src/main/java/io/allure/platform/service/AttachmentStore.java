@@ -0,0 +1,207 @@
+package io.allure.platform.service;
+
+import io.allure.platform.config.VirtualThreads;
+import io.allure.platform.repo.RunAttachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Content-addressed store for test attachments (screenshots, logs, videos). Every
+ * distinct content is stored once under its SHA-256, however many runs attach it. A
+ * run's manifest maps its attachment names to hashes and the runs database counts the
+ * references per blob (see {@link io.allure.platform.repo.RunRepository}), so blobs go
+ * away with the last run that uses them.
+ *
+ * <p>Blobs live under {@code {storage root}/_blobs/ab/<sha256>} in local mode and
+ * {@code blobs/ab/<sha256>} in the bucket in s3 mode.
+ */
+@Component
+public class AttachmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(AttachmentStore.class);
+
+    static final String LOCAL_DIR = "_blobs";
+    static final String S3_PREFIX = "blobs/";
+
+    private final S3Client s3;
+    private final S3Publisher publisher;
+    private final S3Deleter deleter;
+    private final VirtualThreads threads;
+    private final String bucket;
+    private final Path root;
+    private final boolean s3Mode;
+
+    public AttachmentStore(S3Client s3,
+                           S3Publisher publisher,
+                           S3Deleter deleter,
+                           VirtualThreads threads,
+                           @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
+                           @Value("${app.storage.root:storage}") String storageRoot,
+                           @Value("${storage.mode:local}") String storageMode) {
+        this.s3 = s3;
+        this.publisher = publisher;
+        this.deleter = deleter;
+        this.threads = threads;
+        this.bucket = bucket;
+        this.root = Paths.get(storageRoot).resolve(LOCAL_DIR);
+        this.s3Mode = "s3".equalsIgnoreCase(storageMode);
+    }
+
+    /** Allure adapters write attachments as {@code <uuid>-attachment[.ext]}. */
+    public static boolean isAttachment(String fileName) {
+        return fileName.contains("-attachment");
+    }
+
+    /** Hashes the attachment files directly in {@code resultsDir}, by file name. */
+    public Map<Path, RunAttachment> scan(Path resultsDir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(resultsDir,
+                p -> Files.isRegularFile(p) && isAttachment(p.getFileName().toString()))) {
+            for (Path p : ds) files.add(p);
+        }
+
+        Map<Path, RunAttachment> found = new ConcurrentSkipListMap<>();
+        threads.forEach(files, p -> {
+            MessageDigest sha256 = sha256();
+            byte[] buf = new byte[64 * 1024];
+            long size = 0;
+            try (InputStream in = Files.newInputStream(p)) {
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    sha256.update(buf, 0, n);
+                    size += n;
+                }
+            }
+            found.put(p, new RunAttachment(p.getFileName().toString(), HexFormat.of().formatHex(sha256.digest()), size));
+        });
+        return found;
+    }
+
+    /**
+     * Stores the content of the {@code unstored} blobs (those the database does not have as
+     * stored) and removes every scanned file from the run's folder; the other blobs are
+     * stored already. Content is keyed by its hash, so writing a blob twice is harmless.
+     *
+     * @return bytes written to the store
+     */
+    public long store(Map<Path, RunAttachment> scanned, Set<String> unstored) throws IOException {
+        Map<String, Path> toStore = new LinkedHashMap<>();
+        for (Map.Entry<Path, RunAttachment> e : scanned.entrySet()) {
+            if (unstored.contains(e.getValue().sha256())) toStore.putIfAbsent(e.getValue().sha256(), e.getKey());
+        }
+
+        long bytes = 0;
+        if (s3Mode) {
+            Map<Path, String> uploads = new LinkedHashMap<>();
+            toStore.forEach((sha, file) -> uploads.put(file, key(sha)));
+            if (!uploads.isEmpty()) bytes = (long) publisher.publish(uploads).get("bytes");
+        } else {
+            for (Map.Entry<String, Path> e : toStore.entrySet()) {
+                Path blob = path(e.getKey());
+                Files.createDirectories(blob.getParent());
+                bytes += Files.size(e.getValue());
+                // same content under the same name, so an existing blob may simply be replaced
+                Files.move(e.getValue(), blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        for (Path file : scanned.keySet()) Files.deleteIfExists(file);
+        return bytes;
+    }
+
+    /** A blob opened for streaming, or null when it is not stored. */
+    public StoredFile open(String sha256) throws IOException {
+        if (s3Mode) {
+            try {
+                ResponseInputStream<GetObjectResponse> in = s3.getObject(b -> b.bucket(bucket).key(key(sha256)));
+                return new StoredFile(in, in.response().contentLength());
+            } catch (NoSuchKeyException e) {
+                return null;
+            }
+        }
+        Path blob = path(sha256);
+        if (!Files.isRegularFile(blob)) return null;
+        return new StoredFile(Files.newInputStream(blob), Files.size(blob));
+    }
+
+    /**
+     * Writes a blob's content to {@code target}, streamed so a large video never sits
+     * in memory; an existing file is replaced.
+     *
+     * @return false when the blob is not stored
+     */
+    public boolean copyTo(String sha256, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        if (s3Mode) {
+            try {
+                s3.getObject(b -> b.bucket(bucket).key(key(sha256)), ResponseTransformer.toFile(target));
+                return true;
+            } catch (NoSuchKeyException e) {
+                return false;
+            }
+        }
+        Path blob = path(sha256);
+        if (!Files.isRegularFile(blob)) return false;
+        Files.copy(blob, target);
+        return true;
+    }
+
+    /**
+     * Removes blobs whose last reference is gone. Failures are logged rather than
+     * thrown: the references are already dropped and a leftover blob only costs space.
+     */
+    public void delete(Collection<String> sha256s) {
+        try {
+            if (s3Mode) {
+                List<String> keys = new ArrayList<>();
+                for (String sha : sha256s) keys.add(key(sha));
+                deleter.deleteKeys(keys);
+            } else {
+                for (String sha : sha256s) Files.deleteIfExists(path(sha));
+            }
+            log.info("Deleted {} unreferenced attachment blobs", sha256s.size());
+        } catch (IOException e) {
+            log.warn("Could not delete {} unreferenced attachment blobs: {}", sha256s.size(), e.getMessage());
+        }
+    }
+
+    private static String key(String sha256) {
+        return S3_PREFIX + sha256.substring(0, 2) + "/" + sha256;
+    }
+
+    private Path path(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package io.allure.platform.service;
+
+import io.allure.platform.config.VirtualThreads;
+import io.allure.platform.model.UploadJob;
+import io.allure.platform.repo.UploadJobRepository;
+import io.allure.platform.repo.UploadSession;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resumable chunked uploads: open, put chunks at an offset, complete. Chunks are
+ * written straight into the upload's staged ZIP and the pipeline starts with the first
+ * one, reading the ZIP as it grows, so extraction keeps pace with the network instead
+ * of waiting for the last byte.
+ *
+ * <p>An upload is an {@code upload_jobs} row with status RECEIVING; {@code upload_sessions}
+ * records how many bytes are stored, so a client that lost a chunk (or a server that
+ * restarted) carries on from that offset rather than from zero. Bytes below the stored
+ * offset are never rewritten, so a resent chunk only costs the network. A chunk may carry
+ * its SHA-256 and is only acknowledged once it matches.
+ *
+ * <p>The staged ZIP lives on the disk of the instance that opened the upload, which is
+ * recorded as the job's owner; other instances pass that upload's requests on to it
+ * (see {@link #ownerUrl}). An upload whose instance stopped cannot be resumed and fails.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private final ReportService reportService;
+    private final UploadJobRepository jobs;
+    private final UploadMetrics metrics;
+    private final ClusterNode cluster;
+    private final Path stagingDir;
+    private final int maxSessions;
+    private final Duration idleTimeout;
+    private final ExecutorService pipelines;
+    private final Map<String, Session> live = new ConcurrentHashMap<>();
+    // makes the session count check and the insert of a new session one step
+    private final ReentrantLock opening = new ReentrantLock();
+    private volatile boolean stopping;
+
+    public ChunkedUploadService(ReportService reportService,
+                                UploadJobRepository jobs,
+                                UploadMetrics metrics,
+                                ClusterNode cluster,
+                                VirtualThreads threads,
+                                @Value("${upload.async.staging-dir:data/upload-jobs}") String stagingDir,
+                                @Value("${upload.chunked.max-sessions:20}") int maxSessions,
+                                @Value("${upload.chunked.idle-timeout:15m}") Duration idleTimeout) {
+        this.reportService = reportService;
+        this.jobs = jobs;
+        this.metrics = metrics;
+        this.cluster = cluster;
+        this.stagingDir = Paths.get(stagingDir);
+        this.maxSessions = maxSessions;
+        this.idleTimeout = idleTimeout;
+
+        this.pipelines = threads.cachedPool("chunked-upload-");
+        try {
+            Files.createDirectories(this.stagingDir);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // in-memory side of one RECEIVING upload
+    private static final class Session {
+        final UploadJob job;
+        final Path zip;
+        final Long total;
+        // one chunk at a time, so a retry cannot interleave with the attempt it replaces
+        final ReentrantLock writing = new ReentrantLock();
+        // guards the fields below; a lock rather than the monitor, so a waiting virtual thread does not pin its carrier
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition changed = lock.newCondition();
+        long received;
+        boolean complete;
+        String failure;
+        String stage;
+        CompletableFuture<Map<String, Object>> result;
+
+        Session(UploadJob job, Long total, long received) {
+            this.job = job;
+            this.zip = Paths.get(job.getZipPath());
+            this.total = total;
+            this.received = received;
+        }
+    }
+
+    // ---------------- protocol ----------------
+
+    /**
+     * Opens an upload.
+     *
+     * @param size total ZIP size in bytes, or null when the client does not know it yet
+     * @throws RejectedExecutionException when {@code upload.chunked.max-sessions} uploads are open
+     */
+    public UploadJob open(String appId, String release, String executionDate, Long size) throws IOException {
+        if (size != null && size < 0) throw new IllegalArgumentException("size must not be negative");
+        expireIdle();
+
+        String jobId = UUID.randomUUID().toString();
+        Path zipPath = stagingDir.resolve(jobId + ".zip");
+
+        UploadJob job = new UploadJob();
+        job.setJobId(jobId);
+        job.setRunId(UUID.randomUUID().toString());
+        job.setAppId(appId);
+        job.setRelease(release);
+        job.setExecutionDate(executionDate);
+        job.setStatus("RECEIVING");
+        job.setZipPath(zipPath.toString());
+        job.setCreatedAt(LocalDateTime.now());
+        job.setUpdatedAt(job.getCreatedAt());
+        // the chunks land on this node's disk, and its pipeline reads them from there
+        job.setOwner(cluster.id());
+        job.setStagedOn(cluster.id());
+
+        opening.lock();
+        try {
+            if (jobs.countByStatus("RECEIVING") >= maxSessions) {
+                throw new RejectedExecutionException("Too many uploads in progress, retry later");
+            }
+            Files.createFile(zipPath);
+            jobs.save(job, size);
+        } finally {
+            opening.unlock();
+        }
+        return job;
+    }
+
+    /**
+     * Stores one chunk of the ZIP starting at {@code offset}, which may be at most the
+     * number of bytes stored so far; bytes already stored are skipped.
+     *
+     * @param sha256 hex SHA-256 of the chunk, or null to skip the check
+     * @return bytes stored after this chunk (the offset of the next one)
+     * @throws IllegalStateException    when the offset is past the stored bytes or the upload is not receiving
+     * @throws IllegalArgumentException when the checksum does not match or the chunk runs past the size
+     */
+    public long write(String jobId, long offset, InputStream chunk, String sha256) throws IOException {
+        Session s = session(jobId);
+        s.writing.lock();
+        try {
+            long stored;
+            s.lock.lock();
+            try {
+                if (s.failure != null || s.complete) throw new IllegalStateException("Upload " + jobId + " is no longer receiving");
+                if (offset < 0 || offset > s.received) {
+                    throw new IllegalStateException("Chunk at offset " + offset + " but " + s.received + " bytes are stored");
+                }
+                stored = s.received;
+            } finally {
+                s.lock.unlock();
+            }
+
+            MessageDigest digest = sha256 == null ? null : sha256();
+            long end = offset;
+            try (FileChannel ch = FileChannel.open(s.zip, StandardOpenOption.WRITE)) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = chunk.read(buf)) > 0) {
+                    if (s.total != null && end + n > s.total) {
+                        metrics.chunkBytes("rejected", end + n - offset);
+                        throw new IllegalArgumentException("Chunk runs past the upload size of " + s.total + " bytes");
+                    }
+                    if (digest != null) digest.update(buf, 0, n);
+                    // only bytes past the stored ones are written; the pipeline may be reading those
+                    int skip = (int) Math.max(0, Math.min(n, stored - end));
+                    ByteBuffer fresh = ByteBuffer.wrap(buf, skip, n - skip);
+                    long at = end + skip;
+                    while (fresh.hasRemaining()) at += ch.write(fresh, at);
+                    end += n;
+                }
+                if (digest != null && !HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256)) {
+                    metrics.chunkBytes("rejected", end - offset);
+                    throw new IllegalArgumentException("Chunk checksum does not match");
+                }
+                ch.force(false);
+            }
+
+            long added = Math.max(0, end - stored);
+            metrics.chunkBytes("stored", added);
+            metrics.chunkBytes("resent", end - offset - added);
+            if (added > 0) {
+                jobs.updateReceived(jobId, end);
+                s.lock.lock();
+                try {
+                    s.received = end;
+                    s.changed.signalAll();
+                } finally {
+                    s.lock.unlock();
+                }
+            }
+            startPipeline(s);
+            return Math.max(end, stored);
+        } finally {
+            s.writing.unlock();
+        }
+    }
+
+    /**
+     * Marks the upload as fully sent. Calling it again while the pipeline runs returns
+     * the same result.
+     *
+     * @return the pipeline's outcome, the same response a plain upload gets
+     * @throws IllegalStateException when fewer bytes than the announced size are stored
+     * @throws RejectedExecutionException when the instance is shutting down
+     */
+    public CompletableFuture<Map<String, Object>> complete(String jobId) {
+        Session s = session(jobId);
+        s.lock.lock();
+        try {
+            if (s.failure != null) throw new IllegalStateException("Upload " + jobId + " failed: " + s.failure);
+            // checked before the job moves to RUNNING, so the upload stays resumable
+            if (s.result == null && stopping) throw new RejectedExecutionException("Server is shutting down, retry later");
+            if (!s.complete) {
+                if (s.total != null && s.received != s.total) {
+                    throw new IllegalStateException(s.received + " of " + s.total + " bytes received");
+                }
+                s.complete = true;
+                s.changed.signalAll();
+                jobs.updateStatus(jobId, "RUNNING", s.stage, null);
+                jobs.deleteSession(jobId);
+            }
+        } finally {
+            s.lock.unlock();
+        }
+        startPipeline(s);
+        // the shutdown began after the check above; the job is re-queued when the instance starts again
+        if (s.result == null) throw new RejectedExecutionException("Server is shutting down, retry later");
+        return s.result;
+    }
+
+    /** Abandons an upload that is still receiving. */
+    public void cancel(String jobId) {
+        Session s = session(jobId);
+        s.lock.lock();
+        try {
+            if (s.complete) throw new IllegalStateException("Upload " + jobId + " is complete");
+        } finally {
+            s.lock.unlock();
+        }
+        fail(s, "Upload cancelled");
+    }
+
+    /** Status, stage and stored bytes of an upload, or null when there is no such upload. */
+    public Map<String, Object> describe(String jobId) {
+        UploadJob job = jobs.findById(jobId);
+        if (job == null) return null;
+
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("sessionId", job.getJobId());
+        resp.put("runId", job.getRunId());
+        resp.put("status", job.getStatus());
+        resp.put("stage", job.getStage());
+        UploadSession state = jobs.findSession(jobId);
+        Session s = live.get(jobId);
+        if (s != null) {
+            s.lock.lock();
+            try {
+                resp.put("offset", s.received);
+            } finally {
+                s.lock.unlock();
+            }
+        } else {
+            resp.put("offset", state == null ? null : state.bytesReceived());
+        }
+        resp.put("size", state == null ? null : state.bytesTotal());
+        resp.put("error", job.getError());
+        return resp;
+    }
+
+    // ---------------- sessions ----------------
+
+    /**
+     * Base URL of the instance holding the upload when that is another one, which must
+     * then serve the request; null when this instance serves it. An upload still receiving
+     * on an instance that stopped is failed here.
+     */
+    public String ownerUrl(String jobId) {
+        UploadJob job = jobs.findById(jobId);
+        if (job == null || job.getOwner() == null || cluster.isSelf(job.getOwner())) return null;
+        String url = cluster.liveUrl(job.getOwner());
+        if (url == null && "RECEIVING".equals(job.getStatus())) {
+            orphaned(job);
+        }
+        return url;
+    }
+
+    private Session session(String jobId) {
+        Session s = live.get(jobId);
+        if (s != null) return s;
+
+        UploadJob job = jobs.findById(jobId);
+        if (job == null) throw new NoSuchElementException("No upload " + jobId);
+        UploadSession state = jobs.findSession(jobId);
+        if (!"RECEIVING".equals(job.getStatus()) || state == null) {
+            throw new IllegalStateException("Upload " + jobId + " is " + job.getStatus());
+        }
+        // first use since open, or since a restart: bytes past the stored offset were never acknowledged
+        return live.computeIfAbsent(jobId, id -> {
+            try (FileChannel ch = FileChannel.open(Paths.get(job.getZipPath()), StandardOpenOption.WRITE)) {
+                ch.truncate(state.bytesReceived());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Session(job, state.bytesTotal(), state.bytesReceived());
+        });
+    }
+
+    private void fail(Session s, String error) {
+        s.lock.lock();
+        try {
+            if (s.failure != null) return;
+            s.failure = error;
+            s.changed.signalAll();
+            jobs.updateStatus(s.job.getJobId(), "FAILED", s.stage, error);
+            jobs.deleteSession(s.job.getJobId());
+        } finally {
+            s.lock.unlock();
+        }
+        if (s.result == null) {
+            live.remove(s.job.getJobId());
+            try { Files.deleteIfExists(s.zip); } catch (IOException ignored) {}
+        }
+    }
+
+    // the staged bytes are on a stopped instance's disk
+    private void orphaned(UploadJob job) {
+        log.info("Failing chunked upload {}, its node {} stopped", job.getJobId(), job.getOwner());
+        jobs.updateStatus(job.getJobId(), "FAILED", job.getStage(), "Node " + job.getOwner() + " holding the upload stopped");
+        jobs.deleteSession(job.getJobId());
+    }
+
+    // uploads nobody sent to for idle-timeout; those with a pipeline time out on their own.
+    // Another live instance's uploads are left to it.
+    private void expireIdle() {
+        for (UploadJob job : jobs.findIdle(LocalDateTime.now().minus(idleTimeout))) {
+            boolean elsewhere = job.getOwner() != null && !cluster.isSelf(job.getOwner());
+            if (elsewhere) {
+                if (cluster.liveUrl(job.getOwner()) == null) orphaned(job);
+                continue;
+            }
+            Session s = live.get(job.getJobId());
+            if (s != null && s.result != null) continue;
+            log.info("Expiring chunked upload {}, idle for {}", job.getJobId(), idleTimeout);
+            String error = "No chunk received for " + idleTimeout;
+            if (s != null) {
+                fail(s, error);
+            } else {
+                jobs.updateStatus(job.getJobId(), "FAILED", job.getStage(), error);
+                jobs.deleteSession(job.getJobId());
+                try { Files.deleteIfExists(Paths.get(job.getZipPath())); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    // ---------------- pipeline ----------------
+
+    private void startPipeline(Session s) {
+        s.lock.lock();
+        try {
+            if (s.result != null || stopping) return;
+            s.result = CompletableFuture.supplyAsync(() -> run(s), pipelines);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    private Map<String, Object> run(Session s) {
+        UploadJob job = s.job;
+        try (InputStream zip = new ArrivingInputStream(s)) {
+            Map<String, Object> resp = reportService.handleUpload(job.getAppId(), job.getRelease(), job.getExecutionDate(),
+                    zip, job.getRunId(), stage -> {
+                        s.lock.lock();
+                        try {
+                            s.stage = stage;
+                            jobs.updateStatus(job.getJobId(), s.complete ? "RUNNING" : "RECEIVING", stage, null);
+                        } finally {
+                            s.lock.unlock();
+                        }
+                    });
+            // the archive repeats one already stored; the session points at that run instead
+            if (!job.getRunId().equals(resp.get("runId"))) jobs.updateRunId(job.getJobId(), (String) resp.get("runId"));
+            jobs.updateStatus(job.getJobId(), "COMPLETED", s.stage, null);
+            return resp;
+        } catch (Exception e) {
+            // a shutdown leaves the upload as it is; it resumes with the next chunk, or is re-queued once complete
+            if (stopping) throw new CompletionException(e);
+            if (s.failure != null) {
+                log.info("Chunked upload {} stopped: {}", job.getJobId(), s.failure);
+            } else {
+                log.error("Chunked upload {} failed in stage {}", job.getJobId(), s.stage, e);
+                fail(s, e.getMessage());
+            }
+            throw new CompletionException(e);
+        } finally {
+            live.remove(job.getJobId());
+            if (!stopping) {
+                try { Files.deleteIfExists(s.zip); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * The staged ZIP as the pipeline sees it: reads block until the next chunk is stored
+     * and end once the upload is complete and every byte is read.
+     */
+    private final class ArrivingInputStream extends InputStream {
+        private final Session s;
+        private final FileChannel ch;
+        private long pos;
+
+        ArrivingInputStream(Session s) throws IOException {
+            this.s = s;
+            this.ch = FileChannel.open(s.zip, StandardOpenOption.READ);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long stored = awaitBytes();
+            if (stored <= pos) return -1;
+            int n = ch.read(ByteBuffer.wrap(b, off, (int) Math.min(len, stored - pos)), pos);
+            pos += n;
+            return n;
+        }
+
+        // bytes stored so far once there are more than `pos`, or `pos` at the end of a complete upload
+        private long awaitBytes() throws IOException {
+            s.lock.lock();
+            try {
+                long deadline = System.nanoTime() + idleTimeout.toNanos();
+                while (s.received <= pos && !s.complete && s.failure == null) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) throw new IOException("No chunk received for " + idleTimeout);
+                    try {
+                        s.changed.awaitNanos(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for the next chunk");
+                    }
+                }
+                if (s.failure != null) throw new IOException(s.failure);
+                return s.received;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        pipelines.shutdownNow();
+    }
+}
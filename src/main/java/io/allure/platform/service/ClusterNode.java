@@ -0,0 +1,127 @@
+package io.allure.platform.service;
+
+import io.allure.platform.repo.ClusterRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This instance among those sharing the database. It writes a heartbeat to
+ * {@code cluster_nodes} every {@code cluster.heartbeat}; a node silent for
+ * {@code cluster.node-timeout} counts as gone, and the others take over its queued and
+ * running upload jobs. Node ids must differ between instances and stay the same across
+ * restarts of one, so a restarted node picks up what it left behind.
+ *
+ * <p>Named locks ({@link #tryLock}) are held per node: threads of one instance share
+ * them, and serialize among themselves where needed.
+ */
+@Component
+public class ClusterNode {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterNode.class);
+
+    private final ClusterRepository repo;
+    private final String id;
+    private final String url;
+    private final Duration timeout;
+    private final ScheduledExecutorService beats;
+    private final List<Runnable> onHeartbeat = new CopyOnWriteArrayList<>();
+
+    public ClusterNode(ClusterRepository repo,
+                       @Value("${cluster.node-id:}") String nodeId,
+                       @Value("${cluster.node-url:}") String nodeUrl,
+                       @Value("${server.port:8080}") int port,
+                       @Value("${cluster.heartbeat:10s}") Duration heartbeat,
+                       @Value("${cluster.node-timeout:60s}") Duration timeout) {
+        this.repo = repo;
+        String host = hostName();
+        // with the port, instances sharing a host still get ids of their own
+        this.id = nodeId.isBlank() ? host + ":" + port : nodeId;
+        this.url = nodeUrl.isBlank() ? "http://" + host + ":" + port : nodeUrl.replaceAll("/+$", "");
+        this.timeout = timeout;
+
+        repo.heartbeat(id, url, System.currentTimeMillis());
+        int released = repo.releaseLocks(id);
+        log.info("Cluster node {} at {}{}", id, url, released > 0 ? ", released " + released + " lock(s) left from before" : "");
+
+        this.beats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        beats.scheduleWithFixedDelay(this::beat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public boolean isSelf(String nodeId) {
+        return id.equals(nodeId);
+    }
+
+    /** Heartbeats at or after this epoch millis mark a node as alive. */
+    public long aliveSince() {
+        return System.currentTimeMillis() - timeout.toMillis();
+    }
+
+    /** Base URL of a live node, or null when it has stopped sending heartbeats. */
+    public String liveUrl(String nodeId) {
+        return repo.liveUrl(nodeId, aliveSince());
+    }
+
+    /** Takes the cluster-wide lock {@code name} unless a live node, this one included, holds it. */
+    public boolean tryLock(String name) {
+        return repo.tryLock(name, id, System.currentTimeMillis(), aliveSince());
+    }
+
+    public void unlock(String name) {
+        repo.unlock(name, id);
+    }
+
+    /** Runs {@code task} after every heartbeat, on the heartbeat thread. */
+    public void onHeartbeat(Runnable task) {
+        onHeartbeat.add(task);
+    }
+
+    private void beat() {
+        try {
+            repo.heartbeat(id, url, System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("Heartbeat of node {} failed: {}", id, e.getMessage());
+            return;
+        }
+        for (Runnable task : onHeartbeat) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("Periodic task after heartbeat failed", e);
+            }
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            String env = System.getenv("HOSTNAME");
+            return env != null ? env : "localhost";
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        beats.shutdownNow();
+    }
+}
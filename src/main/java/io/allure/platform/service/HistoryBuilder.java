@@ -0,0 +1,222 @@
+package io.allure.platform.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.allure.platform.model.TestResult;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds Allure {@code history} data (history.json and the four trend files) for a
+ * run directly from its parsed results, the same way Allure's history and trend
+ * plugins do. This replaces rendering a whole report just to read back its history.
+ * Categories follow Allure's defaults (failed = product, broken = test defects).
+ *
+ * <p>History is handled as a map of file name to JSON content. {@link #delta} is one
+ * run's own contribution and {@link #merge} folds a delta onto earlier history, so
+ * callers can store deltas and compact them later.
+ */
+@Component
+public class HistoryBuilder {
+
+    // Allure keeps the same number of entries per test and per trend
+    static final int HISTORY_LIMIT = 20;
+
+    static final String HISTORY = "history.json";
+    static final List<String> TRENDS = List.of("history-trend.json", "duration-trend.json",
+            "categories-trend.json", "retry-trend.json");
+
+    private static final String[] STATUSES = {"failed", "broken", "skipped", "passed", "unknown"};
+    private static final String[] STATISTIC_KEYS = {"failed", "broken", "skipped", "passed", "unknown", "total"};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The history a single run adds: one item and a statistic of one per test, and
+     * one entry per trend.
+     *
+     * @param results every result of this run, retries included
+     */
+    public Map<String, JsonNode> delta(List<TestResult> results) {
+        // the latest attempt per historyId counts, earlier ones are retries
+        Map<String, TestResult> latest = new LinkedHashMap<>();
+        List<TestResult> unique = new ArrayList<>();
+        for (TestResult r : results) {
+            if (r.getHistoryId() == null) {
+                unique.add(r);
+                continue;
+            }
+            latest.merge(r.getHistoryId(), r, (a, b) -> b.getStart() >= a.getStart() ? b : a);
+        }
+        unique.addAll(latest.values());
+        int retries = results.size() - unique.size();
+
+        Map<String, JsonNode> delta = new LinkedHashMap<>();
+        delta.put(HISTORY, history(latest));
+
+        ObjectNode statistic = statistic();
+        int productDefects = 0, testDefects = 0;
+        for (TestResult r : unique) {
+            increment(statistic, r.getStatus());
+            if ("failed".equals(r.getStatus())) productDefects++;
+            if ("broken".equals(r.getStatus())) testDefects++;
+        }
+        delta.put("history-trend.json", trendEntry(statistic));
+
+        long start = Long.MAX_VALUE, stop = 0;
+        for (TestResult r : results) {
+            if (r.getStart() > 0) start = Math.min(start, r.getStart());
+            stop = Math.max(stop, r.getStop());
+        }
+        ObjectNode duration = mapper.createObjectNode();
+        duration.put("duration", stop > start ? stop - start : 0);
+        delta.put("duration-trend.json", trendEntry(duration));
+
+        ObjectNode categories = mapper.createObjectNode();
+        if (productDefects > 0) categories.put("Product defects", productDefects);
+        if (testDefects > 0) categories.put("Test defects", testDefects);
+        delta.put("categories-trend.json", trendEntry(categories));
+
+        ObjectNode retry = mapper.createObjectNode();
+        retry.put("run", unique.size());
+        retry.put("retry", retries);
+        delta.put("retry-trend.json", trendEntry(retry));
+        return delta;
+    }
+
+    /**
+     * Folds a newer delta onto earlier history. Statistics add up; items and trend
+     * entries are kept newest first and capped at {@link #HISTORY_LIMIT}.
+     */
+    public Map<String, JsonNode> merge(Map<String, JsonNode> base, Map<String, JsonNode> delta) {
+        Map<String, JsonNode> merged = new LinkedHashMap<>();
+
+        ObjectNode history = object(base.get(HISTORY)).deepCopy();
+        object(delta.get(HISTORY)).fields().forEachRemaining(e -> {
+            JsonNode old = history.get(e.getKey());
+            history.set(e.getKey(), old != null && old.isObject() ? mergeEntry(old, e.getValue()) : e.getValue());
+        });
+        merged.put(HISTORY, history);
+
+        for (String file : TRENDS) {
+            ArrayNode trend = mapper.createArrayNode();
+            append(trend, delta.get(file));
+            append(trend, base.get(file));
+            merged.put(file, trend);
+        }
+        return merged;
+    }
+
+    /** Reads an Allure history folder; missing or damaged files are left out. */
+    public Map<String, JsonNode> read(Path dir) {
+        Map<String, JsonNode> files = new LinkedHashMap<>();
+        JsonNode history = read(dir, HISTORY);
+        if (history != null) files.put(HISTORY, history);
+        for (String file : TRENDS) {
+            JsonNode trend = read(dir, file);
+            if (trend != null) files.put(file, trend);
+        }
+        return files;
+    }
+
+    /** Writes history as an Allure history folder. */
+    public void write(Map<String, JsonNode> files, Path out) throws IOException {
+        Files.createDirectories(out);
+        for (Map.Entry<String, JsonNode> e : files.entrySet()) {
+            mapper.writeValue(out.resolve(e.getKey()).toFile(), e.getValue());
+        }
+    }
+
+    private ObjectNode history(Map<String, TestResult> latest) {
+        ObjectNode history = mapper.createObjectNode();
+        for (TestResult r : latest.values()) {
+            ObjectNode entry = history.putObject(r.getHistoryId());
+            ObjectNode statistic = statistic();
+            increment(statistic, r.getStatus());
+            entry.set("statistic", statistic);
+
+            ObjectNode item = entry.putArray("items").addObject();
+            item.put("uid", r.getUuid());
+            item.put("status", status(r.getStatus()));
+            if (r.getStatusMessage() != null) item.put("statusDetails", r.getStatusMessage());
+            ObjectNode time = item.putObject("time");
+            time.put("start", r.getStart());
+            time.put("stop", r.getStop());
+            time.put("duration", r.getDurationMs());
+        }
+        return history;
+    }
+
+    private ObjectNode mergeEntry(JsonNode old, JsonNode newer) {
+        ObjectNode statistic = mapper.createObjectNode();
+        for (String key : STATISTIC_KEYS) {
+            statistic.put(key, old.path("statistic").path(key).asInt() + newer.path("statistic").path(key).asInt());
+        }
+        ArrayNode items = mapper.createArrayNode();
+        append(items, newer.get("items"));
+        append(items, old.get("items"));
+
+        ObjectNode entry = mapper.createObjectNode();
+        entry.set("statistic", statistic);
+        entry.set("items", items);
+        return entry;
+    }
+
+    private void append(ArrayNode target, JsonNode from) {
+        if (from == null || !from.isArray()) return;
+        for (JsonNode n : from) {
+            if (target.size() >= HISTORY_LIMIT) break;
+            target.add(n);
+        }
+    }
+
+    private ArrayNode trendEntry(ObjectNode data) {
+        ArrayNode trend = mapper.createArrayNode();
+        trend.addObject().set("data", data);
+        return trend;
+    }
+
+    private ObjectNode object(JsonNode n) {
+        return n != null && n.isObject() ? (ObjectNode) n : mapper.createObjectNode();
+    }
+
+    private ObjectNode statistic() {
+        ObjectNode s = mapper.createObjectNode();
+        for (String key : STATISTIC_KEYS) s.put(key, 0);
+        return s;
+    }
+
+    private void increment(ObjectNode statistic, String status) {
+        String key = status(status);
+        statistic.put(key, statistic.path(key).asInt() + 1);
+        statistic.put("total", statistic.path("total").asInt() + 1);
+    }
+
+    private String status(String status) {
+        for (String s : STATUSES) {
+            if (s.equals(status)) return s;
+        }
+        return "unknown";
+    }
+
+    private JsonNode read(Path dir, String file) {
+        if (dir == null) return null;
+        Path p = dir.resolve(file);
+        if (!Files.exists(p)) return null;
+        try {
+            return mapper.readTree(p.toFile());
+        } catch (IOException e) {
+            // a damaged history file only costs us the trend, not the upload
+            return null;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package io.allure.platform.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.allure.platform.repo.RunRepository;
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * One trend history per app/release, kept under {@code {app}/{release}/_history}
+ * instead of a full history folder per run.
+ *
+ * <p>The store holds a compacted snapshot ({@code snapshot-<version>.json}) and a log
+ * of per-run deltas ({@code log-<version>-<runId>.json}). An upload appends only its
+ * own delta; once {@code history.compact-every} deltas pile up they are folded into
+ * a new snapshot. A run's {@code history_path} records the store and the version its
+ * delta got, e.g. {@code reports/app/1.0/_history#v12}.
+ *
+ * <p>A store is used by one thread at a time across all instances: a local lock orders
+ * this instance's threads, a cluster lock ({@code history:<store>}) the instances.
+ * Versions come from {@code history_versions} rather than from listing the store.
+ */
+@Component
+public class HistoryStore {
+
+    static final String DIR = "_history";
+
+    private static final String SNAPSHOT = "snapshot-";
+    private static final String LOG = "log-";
+    private static final long LOCK_POLL_MILLIS = 50;
+
+    // work done while holding a store
+    @FunctionalInterface
+    private interface StoreWork<T> {
+        T run() throws IOException;
+    }
+
+    private final HistoryBuilder builder;
+    private final RunRepository repo;
+    private final ClusterNode cluster;
+    private final S3Client s3;
+    private final String bucket;
+    private final Path storageRoot;
+    private final boolean s3Mode;
+    private final int compactEvery;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // held across S3 calls; a virtual thread waiting for one leaves its carrier free, unlike on a monitor
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public HistoryStore(HistoryBuilder builder,
+                        RunRepository repo,
+                        ClusterNode cluster,
+                        S3Client s3,
+                        @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
+                        @Value("${app.storage.root:storage}") String storageRoot,
+                        @Value("${storage.mode:local}") String storageMode,
+                        @Value("${history.compact-every:10}") int compactEvery) {
+        this.builder = builder;
+        this.repo = repo;
+        this.cluster = cluster;
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.storageRoot = Paths.get(storageRoot);
+        this.s3Mode = "s3".equalsIgnoreCase(storageMode);
+        this.compactEvery = Math.max(1, compactEvery);
+    }
+
+    /** True for history paths written by this store, as opposed to a legacy per-run folder. */
+    public static boolean isPointer(String historyPath) {
+        return historyPath != null && historyPath.contains("/" + DIR + "#v");
+    }
+
+    /** The current history of a release: the latest snapshot with every newer delta folded on. */
+    public Map<String, JsonNode> load(String appId, String release) throws IOException {
+        String store = location(appId, release);
+        return locked(store, () -> {
+            List<String> names = list(store);
+            return fold(store, names, snapshotVersion(names), Long.MAX_VALUE);
+        });
+    }
+
+    /** Starts an empty store from existing history, e.g. the last legacy run folder. */
+    public void seed(String appId, String release, Map<String, JsonNode> history) throws IOException {
+        if (history.isEmpty()) return;
+        String store = location(appId, release);
+        locked(store, () -> {
+            if (list(store).isEmpty()) write(store, name(SNAPSHOT, 0, null), history);
+            return null;
+        });
+    }
+
+    /**
+     * Appends one run's delta, compacting the log first when it is long enough.
+     *
+     * @return the run's history pointer
+     */
+    public String append(String appId, String release, String runId, Map<String, JsonNode> delta) throws IOException {
+        String store = location(appId, release);
+        return locked(store, () -> {
+            List<String> names = list(store);
+
+            // a re-queued job replaces its own delta rather than adding a second one
+            List<String> own = names.stream().filter(n -> isDelta(n, runId)).toList();
+            remove(store, own);
+            names.removeAll(own);
+
+            // compacted before the new delta goes in, so a failed upload can still take it out again
+            long snapshot = snapshotVersion(names);
+            long pending = names.stream().filter(n -> n.startsWith(LOG) && version(n) > snapshot).count();
+            if (pending >= compactEvery) compact(store, names, snapshot);
+
+            long version = repo.nextHistoryVersion(store, names.stream().mapToLong(HistoryStore::version).max().orElse(0));
+            write(store, name(LOG, version, runId), delta);
+            return store + "#v" + version;
+        });
+    }
+
+    /**
+     * Takes a run's delta out of the log, for a run whose upload failed or that was deleted.
+     * A delta a later upload already folded into a snapshot stays part of the trend.
+     */
+    public void remove(String appId, String release, String runId) throws IOException {
+        String store = location(appId, release);
+        locked(store, () -> {
+            remove(store, list(store).stream().filter(n -> isDelta(n, runId)).toList());
+            return null;
+        });
+    }
+
+    /** Drops the whole store of a release. */
+    public void delete(String appId, String release) throws IOException {
+        String store = location(appId, release);
+        locked(store, () -> {
+            if (s3Mode) remove(store, list(store));
+            else FileUtils.deleteDirectory(Paths.get(store).toFile());
+            repo.deleteHistoryVersion(store);
+            return null;
+        });
+        locks.remove(store);
+    }
+
+    private <T> T locked(String store, StoreWork<T> work) throws IOException {
+        ReentrantLock local = lock(store);
+        local.lock();
+        try {
+            String name = "history:" + store;
+            while (!cluster.tryLock(name)) {
+                try {
+                    Thread.sleep(LOCK_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for history store " + store);
+                }
+            }
+            try {
+                return work.run();
+            } finally {
+                cluster.unlock(name);
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    // ---------------- compaction ----------------
+
+    private void compact(String store, List<String> names, long snapshot) throws IOException {
+        long latest = names.stream().mapToLong(HistoryStore::version).max().orElse(0);
+        Map<String, JsonNode> history = fold(store, names, snapshot, latest);
+
+        // the new snapshot is written before anything it replaces is removed
+        write(store, name(SNAPSHOT, latest, null), history);
+        remove(store, names.stream().filter(n -> version(n) <= latest && !n.equals(name(SNAPSHOT, latest, null))).toList());
+    }
+
+    private Map<String, JsonNode> fold(String store, List<String> names, long snapshot, long upTo) throws IOException {
+        Map<String, JsonNode> history = new LinkedHashMap<>();
+        if (snapshot >= 0) history = read(store, name(SNAPSHOT, snapshot, null));
+        for (String n : names) {
+            long v = version(n);
+            if (n.startsWith(LOG) && v > snapshot && v <= upTo) history = builder.merge(history, read(store, n));
+        }
+        return history;
+    }
+
+    // ---------------- naming ----------------
+
+    private String location(String appId, String release) {
+        return s3Mode
+                ? String.format("reports/%s/%s/%s", appId, release, DIR)
+                : storageRoot.resolve(appId).resolve(release).resolve(DIR).toString();
+    }
+
+    private ReentrantLock lock(String store) {
+        return locks.computeIfAbsent(store, k -> new ReentrantLock());
+    }
+
+    // zero padded so names sort by version
+    private static String name(String kind, long version, String runId) {
+        return kind + String.format("%010d", version) + (runId != null ? "-" + runId : "") + ".json";
+    }
+
+    private static boolean isDelta(String name, String runId) {
+        return name.startsWith(LOG) && name.endsWith("-" + runId + ".json");
+    }
+
+    private static long version(String name) {
+        int start = name.startsWith(SNAPSHOT) ? SNAPSHOT.length() : LOG.length();
+        return Long.parseLong(name.substring(start, start + 10));
+    }
+
+    // -1 when the store has no snapshot yet
+    private static long snapshotVersion(List<String> names) {
+        return names.stream().filter(n -> n.startsWith(SNAPSHOT)).mapToLong(HistoryStore::version).max().orElse(-1);
+    }
+
+    // ---------------- storage ----------------
+
+    private List<String> list(String store) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (s3Mode) {
+            ListObjectsV2Request req = ListObjectsV2Request.builder().bucket(bucket).prefix(store + "/").build();
+            ListObjectsV2Response res;
+            do {
+                res = s3.listObjectsV2(req);
+                for (S3Object o : res.contents()) names.add(o.key().substring(store.length() + 1));
+                req = req.toBuilder().continuationToken(res.nextContinuationToken()).build();
+            } while (Boolean.TRUE.equals(res.isTruncated()));
+        } else if (Files.isDirectory(Paths.get(store))) {
+            try (Stream<Path> files = Files.list(Paths.get(store))) {
+                files.map(p -> p.getFileName().toString()).forEach(names::add);
+            }
+        }
+        names.removeIf(n -> !n.endsWith(".json") || !(n.startsWith(SNAPSHOT) || n.startsWith(LOG)));
+        names.sort(null);
+        return names;
+    }
+
+    private Map<String, JsonNode> read(String store, String name) throws IOException {
+        JsonNode node = s3Mode
+                ? mapper.readTree(s3.getObjectAsBytes(b -> b.bucket(bucket).key(store + "/" + name)).asByteArray())
+                : mapper.readTree(Paths.get(store, name).toFile());
+        Map<String, JsonNode> files = new LinkedHashMap<>();
+        node.fields().forEachRemaining(e -> files.put(e.getKey(), e.getValue()));
+        return files;
+    }
+
+    private void write(String store, String name, Map<String, JsonNode> files) throws IOException {
+        ObjectNode node = mapper.createObjectNode();
+        files.forEach(node::set);
+        byte[] bytes = mapper.writeValueAsBytes(node);
+        if (s3Mode) {
+            s3.putObject(b -> b.bucket(bucket).key(store + "/" + name), RequestBody.fromBytes(bytes));
+        } else {
+            Path dir = Files.createDirectories(Paths.get(store));
+            Path tmp = dir.resolve(name + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void remove(String store, List<String> names) throws IOException {
+        if (names.isEmpty()) return;
+        if (s3Mode) {
+            List<ObjectIdentifier> ids = names.stream().map(n -> ObjectIdentifier.builder().key(store + "/" + n).build()).toList();
+            // DeleteObjects takes at most 1000 keys per call
+            for (int i = 0; i < ids.size(); i += 1000) {
+                List<ObjectIdentifier> batch = ids.subList(i, Math.min(i + 1000, ids.size()));
+                s3.deleteObjects(b -> b.bucket(bucket).delete(d -> d.objects(batch)));
+            }
+        } else {
+            for (String n : names) Files.deleteIfExists(Paths.get(store, n));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.allure.platform.service;
+
+import io.allure.platform.model.PurgeJob;
+import io.allure.platform.repo.PurgeJobRepository;
+import io.allure.platform.repo.RunRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs release and app deletions in the background so large purges do not hold
+ * the admin request open. Jobs live in {@code purge_jobs}, so any instance reports
+ * them, and are kept for an hour after they finish. Like upload jobs they are
+ * taken by one instance at a time; a purge cut short by a restart, or by its
+ * instance going silent, is queued again and deletes what is left.
+ */
+@Service
+public class PurgeJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(PurgeJobService.class);
+
+    private static final long RETAIN_MINUTES = 60;
+
+    private final ReportService reportService;
+    private final RunRepository repo;
+    private final PurgeJobRepository jobs;
+    private final ClusterNode cluster;
+    private final int workerCount;
+    private final ExecutorService workers;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // serializes dispatch, which waits on the database
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean stopping;
+
+    public PurgeJobService(ReportService reportService,
+                           RunRepository repo,
+                           PurgeJobRepository jobs,
+                           ClusterNode cluster,
+                           @Value("${admin.purge.workers:2}") int workerCount) {
+        this.reportService = reportService;
+        this.repo = repo;
+        this.jobs = jobs;
+        this.cluster = cluster;
+        this.workerCount = workerCount;
+
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "purge-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Queues the deletion of a release, or of the whole app when {@code release} is null. */
+    public PurgeJob submit(String appId, String release) {
+        jobs.deleteFinished(LocalDateTime.now().minusMinutes(RETAIN_MINUTES));
+
+        while (true) {
+            // the same target already being purged is reported instead of purged twice
+            PurgeJob active = jobs.findActive(appId, release);
+            if (active != null) return active;
+
+            PurgeJob job = new PurgeJob();
+            job.setJobId(UUID.randomUUID().toString());
+            job.setAppId(appId);
+            job.setRelease(release);
+            job.setStatus("QUEUED");
+            job.setRuns(repo.countRuns(appId, release));
+            job.setCreatedAt(LocalDateTime.now());
+            job.setUpdatedAt(job.getCreatedAt());
+            // a submit for the same target on another instance may have got in first
+            if (jobs.save(job)) {
+                dispatch();
+                return job;
+            }
+        }
+    }
+
+    public PurgeJob find(String jobId) {
+        return jobs.findById(jobId);
+    }
+
+    // ---------------- dispatch ----------------
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        int requeued = jobs.requeueOwned(cluster.id());
+        if (requeued > 0) log.info("Re-queued {} interrupted purge job(s)", requeued);
+        cluster.onHeartbeat(this::adoptOrphans);
+        adoptOrphans();
+    }
+
+    // jobs of nodes that stopped sending heartbeats, and jobs queued on other nodes
+    private void adoptOrphans() {
+        int requeued = jobs.requeueOrphans(cluster.aliveSince());
+        if (requeued > 0) log.info("Re-queued {} purge job(s) of stopped nodes", requeued);
+        dispatch();
+    }
+
+    private void dispatch() {
+        lock.lock();
+        try {
+            if (stopping || inFlight.size() >= workerCount) return;
+            for (PurgeJob job : jobs.findQueued()) {
+                if (inFlight.size() >= workerCount) return;
+                if (!jobs.claim(job.getJobId(), cluster.id())) continue;
+                inFlight.add(job.getJobId());
+                workers.execute(() -> run(job));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(PurgeJob job) {
+        try {
+            if (job.getRelease() == null) {
+                reportService.deleteApp(job.getAppId(), n -> jobs.addObjectsDeleted(job.getJobId(), n));
+            } else {
+                reportService.deleteRelease(job.getAppId(), job.getRelease(), n -> jobs.addObjectsDeleted(job.getJobId(), n));
+            }
+            jobs.updateStatus(job.getJobId(), "COMPLETED", null);
+        } catch (Exception e) {
+            // left RUNNING; the next start of this node, or another node, queues it again
+            if (stopping) return;
+            log.error("Purge job {} for {}/{} failed", job.getJobId(), job.getAppId(), job.getRelease(), e);
+            jobs.updateStatus(job.getJobId(), "FAILED", e.getMessage());
+        } finally {
+            inFlight.remove(job.getJobId());
+        }
+        dispatch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        workers.shutdownNow();
+    }
+}
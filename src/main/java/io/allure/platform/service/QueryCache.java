@@ -0,0 +1,130 @@
+package io.allure.platform.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches the JSON of the dashboard's read endpoints (app/release lists, run lists,
+ * charts), keyed by query and parameters. Entries are bounded by count and age and
+ * dropped as soon as an upload or delete touches their app or release. Responses carry
+ * an ETag and Last-Modified, so a browser revalidating unchanged data gets a 304.
+ *
+ * <p>Invalidation is local to this instance; with several instances sharing a database
+ * the others catch up within {@code cache.query.ttl}.
+ */
+@Component
+public class QueryCache {
+
+    /** A cached query. {@code appId}/{@code release} say what it covers; null means all of it. */
+    public record Key(String query, String appId, String release, List<Object> params) { }
+
+    private record Entry(byte[] body, HttpHeaders headers, String etag, long lastModified) { }
+
+    private final Cache<Key, Entry> cache;
+    private final ObjectMapper mapper;
+    // bumped by every invalidation; a load that overlaps one is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public QueryCache(ObjectMapper mapper,
+                      @Value("${cache.query.max-entries:10000}") long maxEntries,
+                      @Value("${cache.query.ttl:60s}") Duration ttl) {
+        this.mapper = mapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public static Key global(String query) {
+        return new Key(query, null, null, List.of());
+    }
+
+    public static Key forApp(String query, String appId, Object... params) {
+        return new Key(query, appId, null, List.of(params));
+    }
+
+    public static Key forRelease(String query, String appId, String release, Object... params) {
+        return new Key(query, appId, release, List.of(params));
+    }
+
+    /** The cached JSON for {@code key}, loading it on a miss. */
+    public ResponseEntity<byte[]> respond(Key key, Supplier<?> loader) {
+        return respond(key, loader, Function.identity(), value -> HttpHeaders.EMPTY);
+    }
+
+    /**
+     * Like {@link #respond(Key, Supplier)}, for a loaded value whose {@code body} is
+     * sent along with {@code headers} derived from it; both are cached together.
+     */
+    public <T> ResponseEntity<byte[]> respond(Key key, Supplier<T> loader,
+                                              Function<T, ?> body, Function<T, HttpHeaders> headers) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            long gen = generation.get();
+            T value = loader.get();
+            entry = load(body.apply(value), headers.apply(value));
+            if (generation.get() == gen) cache.put(key, entry);
+        }
+        // the conditional GET itself (If-None-Match / If-Modified-Since -> 304) is evaluated by Spring
+        return ResponseEntity.ok()
+                .headers(entry.headers())
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .eTag(entry.etag())
+                .lastModified(entry.lastModified())
+                .body(entry.body());
+    }
+
+    private Entry load(Object value, HttpHeaders headers) {
+        try {
+            byte[] body = mapper.writeValueAsBytes(value);
+            String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+            return new Entry(body, HttpHeaders.readOnlyHttpHeaders(headers), etag, System.currentTimeMillis());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Drops everything covering {@code appId}/{@code release} (the whole app when
+     * {@code release} is null), plus the global lists, after a change was committed.
+     */
+    public void invalidate(String appId, String release) {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.asMap().keySet().removeIf(k -> k.appId() == null
+                || k.appId().equals(appId) && (release == null || k.release() == null || k.release().equals(release)));
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats s = cache.stats();
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("size", cache.estimatedSize());
+        resp.put("hits", s.hitCount());
+        resp.put("misses", s.missCount());
+        resp.put("hitRate", s.hitRate());
+        resp.put("evictions", s.evictionCount());
+        resp.put("invalidations", invalidations.get());
+        return resp;
+    }
+}
@@ -0,0 +1,422 @@
+package io.allure.platform.service;
+
+import io.allure.platform.config.VirtualThreads;
+import io.allure.platform.model.RunMeta;
+import io.allure.platform.repo.RunAttachment;
+import io.allure.platform.repo.RunRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Reports of runs uploaded with {@code report.render=lazy}: the HTML is rendered from the
+ * run's stored results the first time someone views it and kept in a disk cache of
+ * {@code report.lazy.cache-size} bytes, least recently viewed reports going first.
+ * Concurrent views of a run that is not cached yet wait for one shared render. A report
+ * being sent is pinned by its {@link Lease} and not evicted meanwhile; an evicted report
+ * is simply rendered again on its next view.
+ *
+ * <p>The stored results carry the release history as it was at upload, so a report
+ * rendered later still shows the trends it would have shown then.
+ */
+@Component
+public class ReportCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ReportCache.class);
+
+    private static final String HTML = "index.html";
+    private static final String TMP_PREFIX = ".tmp-";
+
+    private final RunRepository repo;
+    private final AllureGenerator generator;
+    private final ResultsArchive archive;
+    private final AttachmentStore attachments;
+    private final VirtualThreads threads;
+    private final Path root;
+    private final long maxBytes;
+    private final boolean s3Mode;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter shared;
+
+    // guards entries, totalBytes and pins; a lock rather than the monitor, since it is held
+    // across directory moves and a virtual thread blocked on a monitor pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // runId -> bytes on disk, least recently viewed first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // runId -> open leases; pinned reports are skipped by trim
+    private final Map<String, Integer> pins = new HashMap<>();
+    // renders in progress, so concurrent views of one run share a single render
+    private final Map<String, CompletableFuture<Void>> rendering = new ConcurrentHashMap<>();
+
+    public ReportCache(RunRepository repo,
+                       AllureGenerator generator,
+                       ResultsArchive archive,
+                       AttachmentStore attachments,
+                       VirtualThreads threads,
+                       MeterRegistry registry,
+                       @Value("${report.lazy.cache-dir:data/report-cache}") String cacheDir,
+                       @Value("${report.lazy.cache-size:2GB}") DataSize cacheSize,
+                       @Value("${storage.mode:local}") String storageMode) {
+        this.repo = repo;
+        this.generator = generator;
+        this.archive = archive;
+        this.attachments = attachments;
+        this.threads = threads;
+        this.root = Paths.get(cacheDir).toAbsolutePath().normalize();
+        this.maxBytes = cacheSize.toBytes();
+        this.s3Mode = "s3".equalsIgnoreCase(storageMode);
+        this.hits = Counter.builder("report.cache.requests").tag("result", "hit")
+                .description("Lazily rendered report views").register(registry);
+        this.misses = Counter.builder("report.cache.requests").tag("result", "miss")
+                .description("Lazily rendered report views").register(registry);
+        this.shared = Counter.builder("report.cache.requests").tag("result", "shared")
+                .description("Lazily rendered report views").register(registry);
+        registry.gauge("report.cache.bytes", this, c -> c.bytes());
+        try {
+            Files.createDirectories(root);
+            load();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------------- lookup ----------------
+
+    /**
+     * The run whose {@code htmlPath} (as stored in its metadata and passed to /api/view)
+     * is {@code key}, or null when {@code key} is not the report of a stored run.
+     */
+    public RunMeta runOf(String key) {
+        if (key == null || !key.endsWith(HTML)) return null;
+        Path parent = Paths.get(key).getParent();
+        if (parent == null || parent.getFileName() == null) return null;
+
+        RunMeta meta = repo.findByRunId(parent.getFileName().toString());
+        return meta != null && key.equals(meta.getHtmlPath()) ? meta : null;
+    }
+
+    /**
+     * The cached report of a run, rendering it first when it is not cached. The report
+     * stays on disk until the lease is closed; only deleting the run removes it sooner.
+     *
+     * @throws IOException when the run's results cannot be read or the render fails
+     */
+    public Lease open(RunMeta meta) throws IOException {
+        String runId = meta.getRunId();
+        Lease lease = pin(runId);
+        if (lease != null) {
+            hits.increment();
+            return lease;
+        }
+
+        while (true) {
+            CompletableFuture<Void> mine = new CompletableFuture<>();
+            CompletableFuture<Void> running = rendering.putIfAbsent(runId, mine);
+            if (running != null) {
+                shared.increment();
+                await(running);
+                lease = pin(runId);
+                // evicted again before this view got to it: render once more
+                if (lease != null) return lease;
+                continue;
+            }
+            try {
+                // a render may have finished between the lookup and the claim
+                lease = pin(runId);
+                if (lease == null) {
+                    misses.increment();
+                    lease = render(meta);
+                }
+                mine.complete(null);
+                return lease;
+            } catch (IOException | RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                rendering.remove(runId, mine);
+            }
+        }
+    }
+
+    /** A cached report held on disk while it is read; close it once the report is sent. */
+    public final class Lease implements AutoCloseable {
+        private final String runId;
+        private boolean closed;
+
+        private Lease(String runId) {
+            this.runId = runId;
+        }
+
+        public Path path() {
+            return root.resolve(runId).resolve(HTML);
+        }
+
+        @Override
+        public void close() {
+            boolean over;
+            lock.lock();
+            try {
+                if (closed) return;
+                closed = true;
+                pins.computeIfPresent(runId, (k, n) -> n == 1 ? null : n - 1);
+                over = totalBytes > maxBytes;
+            } finally {
+                lock.unlock();
+            }
+            // renders of other runs may have had to leave this one in place
+            if (over) trim();
+        }
+    }
+
+    private Lease pin(String runId) {
+        lock.lock();
+        try {
+            if (entries.get(runId) == null) return null;
+            if (!Files.isRegularFile(root.resolve(runId).resolve(HTML))) {
+                totalBytes -= entries.remove(runId);
+                return null;
+            }
+            pins.merge(runId, 1, Integer::sum);
+            return new Lease(runId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void await(CompletableFuture<Void> render) throws IOException {
+        try {
+            render.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    // ---------------- render ----------------
+
+    // the new report comes back pinned, so trimming for it cannot take it away again
+    private Lease render(RunMeta meta) throws IOException {
+        String runId = meta.getRunId();
+        long start = System.nanoTime();
+        Path work = Files.createTempDirectory(root, TMP_PREFIX + runId + "-");
+        try {
+            Path results = work.resolve("allure-results");
+            materialize(meta, results);
+
+            Path out = work.resolve("report");
+            boolean generated;
+            try {
+                generated = generator.generate(results, out, true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted rendering the report of run " + runId, e);
+            }
+            Path html = out.resolve(HTML);
+            if (!generated || !Files.isRegularFile(html)) {
+                throw new IOException("Report generation failed for run " + runId);
+            }
+            ReportService.precompress(html);
+
+            // only the report and its gzip variant are kept, moved in as one directory
+            Path staged = Files.createDirectory(work.resolve("cached"));
+            Files.move(html, staged.resolve(HTML));
+            Files.move(out.resolve(HTML + ".gz"), staged.resolve(HTML + ".gz"));
+            long size = sizeOf(staged);
+
+            Path target = root.resolve(runId);
+            Path replaced;
+            Lease lease;
+            lock.lock();
+            try {
+                replaced = detach(runId);
+                Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+                Long previous = entries.put(runId, size);
+                totalBytes += size - (previous == null ? 0 : previous);
+                lease = pin(runId);
+            } finally {
+                lock.unlock();
+            }
+            delete(replaced);
+            trim();
+            log.info("Rendered report of run {} in {} ms ({} bytes)", runId, (System.nanoTime() - start) / 1_000_000, size);
+            return lease;
+        } finally {
+            FileUtils.deleteDirectory(work.toFile());
+        }
+    }
+
+    // The run's allure-results as stored at upload (history included), attachments put back from the blob store.
+    private void materialize(RunMeta meta, Path results) throws IOException {
+        String runId = meta.getRunId();
+        if (s3Mode) {
+            String key = meta.getHtmlPath().substring(0, meta.getHtmlPath().lastIndexOf('/') + 1) + ResultsArchive.OBJECT_NAME;
+            try {
+                archive.unpack(key, results);
+            } catch (NoSuchKeyException e) {
+                throw new IOException("No stored results for run " + runId);
+            }
+        } else {
+            Path stored = Paths.get(meta.getHtmlPath()).resolveSibling("allure-results");
+            if (!Files.isDirectory(stored)) throw new IOException("No stored results for run " + runId);
+            FileUtils.copyDirectory(stored.toFile(), results.toFile());
+        }
+
+        Path dir = results.toAbsolutePath().normalize();
+        List<RunAttachment> manifest = repo.findAttachments(runId);
+        threads.forEach(manifest, a -> {
+            Path file = dir.resolve(a.name()).normalize();
+            if (!file.startsWith(dir)) return;
+            Files.createDirectories(file.getParent());
+            if (!attachments.copyTo(a.sha256(), file)) {
+                log.warn("Attachment {} of run {} is missing from the blob store", a.name(), runId);
+            }
+        });
+    }
+
+    // ---------------- eviction ----------------
+
+    /** Drops a run's cached report, e.g. when the run is deleted, leases or not. */
+    public void evict(String runId) throws IOException {
+        Path dir = root.resolve(runId).normalize();
+        if (!dir.startsWith(root) || dir.equals(root)) return;
+        Path detached;
+        lock.lock();
+        try {
+            Long size = entries.remove(runId);
+            if (size != null) totalBytes -= size;
+            detached = detach(runId);
+        } finally {
+            lock.unlock();
+        }
+        delete(detached);
+    }
+
+    // least recently viewed reports go until the cache fits again; reports being sent stay
+    private void trim() {
+        List<Path> victims = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (pins.containsKey(e.getKey())) continue;
+                totalBytes -= e.getValue();
+                it.remove();
+                try {
+                    victims.add(detach(e.getKey()));
+                } catch (IOException ex) {
+                    log.warn("Could not remove cached report of run {}", e.getKey(), ex);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Path dir : victims) delete(dir);
+        if (!victims.isEmpty()) log.debug("Evicted {} cached report(s)", victims.size());
+    }
+
+    // Renames a run's report directory aside, under the lock, so a render of the same run moving
+    // its directory in meanwhile cannot be lost to a late delete; the slow delete happens outside.
+    // Returns null when nothing is cached on disk for the run.
+    private Path detach(String runId) throws IOException {
+        Path dir = root.resolve(runId);
+        if (!Files.exists(dir)) return null;
+        Path aside = root.resolve(TMP_PREFIX + "evicted-" + runId + "-" + UUID.randomUUID());
+        Files.move(dir, aside, StandardCopyOption.ATOMIC_MOVE);
+        return aside;
+    }
+
+    private static void delete(Path dir) {
+        if (dir == null) return;
+        try {
+            FileUtils.deleteDirectory(dir.toFile());
+        } catch (IOException e) {
+            // a leftover is removed on the next startup
+            log.warn("Could not remove {}", dir, e);
+        }
+    }
+
+    public long bytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------- startup ----------------
+
+    // Picks up reports cached before a restart, oldest first; leftovers of interrupted renders go.
+    private void load() throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> list = Files.list(root)) {
+            dirs = list.filter(Files::isDirectory).toList();
+        }
+        List<Path> cached = new ArrayList<>();
+        for (Path dir : dirs) {
+            if (dir.getFileName().toString().startsWith(TMP_PREFIX) || !Files.isRegularFile(dir.resolve(HTML))) {
+                FileUtils.deleteDirectory(dir.toFile());
+            } else {
+                cached.add(dir);
+            }
+        }
+        cached.sort(Comparator.comparingLong(ReportCache::lastModified));
+        lock.lock();
+        try {
+            for (Path dir : cached) {
+                long size = sizeOf(dir);
+                entries.put(dir.getFileName().toString(), size);
+                totalBytes += size;
+            }
+        } finally {
+            lock.unlock();
+        }
+        trim();
+        if (!entries.isEmpty()) log.info("Report cache holds {} report(s), {} bytes", entries.size(), bytes());
+    }
+
+    private static long lastModified(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir.resolve(HTML)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            long total = 0;
+            for (Path f : files.toList()) total += Files.size(f);
+            return total;
+        }
+    }
+}
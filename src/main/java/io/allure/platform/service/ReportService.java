@@ -1,49 +1,111 @@
 package io.allure.platform.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.allure.platform.config.VirtualThreads;
 import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.TestResult;
+import io.allure.platform.repo.RunAttachment;
 import io.allure.platform.repo.RunRepository;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 public class ReportService {
 
+    private static final long KEY_POLL_MILLIS = 250;
+    private static final long BLOB_POLL_MILLIS = 100;
+    // a blob delete claimed longer ago than this was left by a node that stopped midway
+    private static final long BLOB_DELETE_TIMEOUT_MILLIS = 5 * 60_000;
+
     private final Path storageRoot;
     private final RunRepository repo;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final HistoryBuilder historyBuilder;
+    private final HistoryStore historyStore;
+    private final AllureGenerator generator;
+    private final ResultsExtractor extractor;
+    private final ResultParser parser;
+    private final S3Publisher publisher;
+    private final ResultsArchive archive;
+    private final AttachmentStore attachments;
+    private final S3Deleter deleter;
+    private final QueryCache queryCache;
+    private final UploadMetrics metrics;
+    private final ReportCache reportCache;
+    private final VirtualThreads threads;
     private final S3Client s3;
     private final String bucket;
     private final String storageMode;
+    // lazy: uploads keep results and stats only, ReportCache renders the HTML on first view
+    private final boolean lazyRender;
+    // Idempotency-Keys (per app) being processed are cluster locks, so retries on any instance wait
+    private final ClusterNode cluster;
+    // how long a retry waits for the attempt holding its Idempotency-Key
+    private final Duration keyWait;
 
     public ReportService(@Value("${app.storage.root:storage}") String storageRoot,
                          RunRepository repo,
+                         HistoryBuilder historyBuilder,
+                         HistoryStore historyStore,
+                         AllureGenerator generator,
+                         ResultsExtractor extractor,
+                         ResultParser parser,
+                         S3Publisher publisher,
+                         ResultsArchive archive,
+                         AttachmentStore attachments,
+                         S3Deleter deleter,
+                         QueryCache queryCache,
+                         UploadMetrics metrics,
+                         ReportCache reportCache,
+                         VirtualThreads threads,
+                         ClusterNode cluster,
                          S3Client s3,
                          @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
-                         @Value("${storage.mode:local}") String storageMode) {
+                         @Value("${storage.mode:local}") String storageMode,
+                         @Value("${report.render:eager}") String render,
+                         @Value("${upload.idempotency.wait:30s}") Duration keyWait) {
         this.storageRoot = Paths.get(storageRoot);
         this.repo = repo;
+        this.historyBuilder = historyBuilder;
+        this.historyStore = historyStore;
+        this.generator = generator;
+        this.extractor = extractor;
+        this.parser = parser;
+        this.publisher = publisher;
+        this.archive = archive;
+        this.attachments = attachments;
+        this.deleter = deleter;
+        this.queryCache = queryCache;
+        this.metrics = metrics;
+        this.reportCache = reportCache;
+        this.threads = threads;
+        this.cluster = cluster;
         this.s3 = s3;
         this.bucket = bucket;
         this.storageMode = storageMode;
+        this.lazyRender = "lazy".equalsIgnoreCase(render);
+        this.keyWait = keyWait;
         try {
             Files.createDirectories(this.storageRoot);
         } catch (IOException e) {
@@ -52,31 +114,149 @@ public class ReportService {
     }
 
     // ---------------- MAIN UPLOAD ----------------
-    public Map<String, Object> handleUpload(String appId, String release, String executionDate, MultipartFile file) throws Exception {
-        String runId = UUID.randomUUID().toString();
+    public Map<String, Object> handleUpload(String appId, String release, String executionDate, InputStream zip) throws Exception {
+        return handleUpload(appId, release, executionDate, zip, (String) null);
+    }
+
+    public Map<String, Object> handleUpload(String appId, String release, String executionDate,
+                                            InputStream zip, String idempotencyKey) throws Exception {
+        return handleUpload(appId, release, executionDate, zip, UUID.randomUUID().toString(), idempotencyKey, stage -> {});
+    }
 
+    public Map<String, Object> handleUpload(String appId, String release, String executionDate,
+                                            InputStream zip, String runId, Consumer<String> onStage) throws Exception {
+        return handleUpload(appId, release, executionDate, zip, runId, null, onStage);
+    }
+
+    /**
+     * Runs the full pipeline for one results ZIP. The stage listener is told when
+     * each stage (unzip, history, parse, generate, publish) starts; stage times go to
+     * {@link UploadMetrics} and are stored with the run.
+     *
+     * <p>An archive byte-identical to one already stored for the same app, release and
+     * execution date is answered with that run once it is unzipped. With an
+     * {@code idempotencyKey}, an upload retried under the same key gets the run of the
+     * first attempt without being read; while that attempt runs, retries wait for it.
+     *
+     * @throws TimeoutException when the attempt holding the key is still running after {@code upload.idempotency.wait}
+     */
+    public Map<String, Object> handleUpload(String appId, String release, String executionDate, InputStream zip,
+                                            String runId, String idempotencyKey, Consumer<String> onStage) throws Exception {
+        if (idempotencyKey == null) return process(appId, release, executionDate, zip, runId, null, onStage);
+
+        String claim = "upload-key:" + appId + "\n" + idempotencyKey;
+        long deadline = System.nanoTime() + keyWait.toNanos();
+        while (true) {
+            Map<String, Object> existing = findUpload(appId, release, executionDate, idempotencyKey);
+            if (existing != null) return existing;
+
+            if (cluster.tryLock(claim)) {
+                try {
+                    // the first attempt may have finished between the lookup and the claim
+                    existing = findUpload(appId, release, executionDate, idempotencyKey);
+                    if (existing != null) return existing;
+                    return process(appId, release, executionDate, zip, runId, idempotencyKey, onStage);
+                } finally {
+                    cluster.unlock(claim);
+                }
+            }
+            // another attempt, on this instance or another, holds the key; once it is done its run
+            // is found above, and had it failed this one goes ahead
+            if (System.nanoTime() - deadline >= 0) {
+                throw new TimeoutException("An upload with Idempotency-Key " + idempotencyKey + " is still being processed");
+            }
+            Thread.sleep(KEY_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * The run an earlier upload with this Idempotency-Key produced, answered the way
+     * {@link #handleUpload} answers a duplicate; null when the key is new.
+     *
+     * @throws IllegalStateException when the key was used for another release or execution date
+     */
+    public Map<String, Object> findUpload(String appId, String release, String executionDate, String idempotencyKey) {
+        RunMeta run = repo.findByIdempotencyKey(appId, idempotencyKey);
+        if (run == null) return null;
+        if (!run.getRelease().equals(release) || !run.getExecutionDate().equals(LocalDate.parse(executionDate))) {
+            throw new IllegalStateException("Idempotency-Key " + idempotencyKey + " was used for run " + run.getRunId()
+                    + " of release " + run.getRelease() + " on " + run.getExecutionDate());
+        }
+        metrics.duplicate("key");
+        return existingRun(run, "key");
+    }
+
+    /** The earliest run built from an archive with this SHA-256, or null. */
+    public RunMeta findDuplicate(String appId, String release, String executionDate, String contentSha256) {
+        return repo.findByContent(appId, release, LocalDate.parse(executionDate), contentSha256);
+    }
+
+    private Map<String, Object> process(String appId, String release, String executionDate, InputStream zip,
+                                        String runId, String idempotencyKey, Consumer<String> onStage) throws Exception {
+        UploadMetrics.StageClock clock = metrics.start(appId, release);
+        boolean success = false;
+        try {
+            Map<String, Object> response = runPipeline(appId, release, executionDate, zip, runId, idempotencyKey,
+                    clock, clock.andThen(onStage));
+            success = true;
+            return response;
+        } finally {
+            clock.close(success);
+        }
+    }
+
+    private Map<String, Object> runPipeline(String appId, String release, String executionDate, InputStream zip,
+                                            String runId, String idempotencyKey,
+                                            UploadMetrics.StageClock clock, Consumer<String> onStage) throws Exception {
         Path runFolder;
         if ("s3".equalsIgnoreCase(storageMode)) {
             runFolder = Files.createTempDirectory("run_" + runId + "_");
         } else {
             runFolder = storageRoot.resolve(appId).resolve(release).resolve(runId);
+            // a re-queued job may have left a partial run behind
+            FileUtils.deleteDirectory(runFolder.toFile());
             Files.createDirectories(runFolder);
         }
 
-        Path zipPath = runFolder.resolve("upload.zip");
-        Files.copy(file.getInputStream(), zipPath, StandardCopyOption.REPLACE_EXISTING);
-
+        onStage.accept("unzip");
         Path resultsDir = runFolder.resolve("allure-results");
-        Files.createDirectories(resultsDir);
-        unzip(zipPath, resultsDir);
+        // the archive's digest is taken as it streams through extraction
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        CountingInputStream counted = new CountingInputStream(new DigestInputStream(zip, digest));
+        try {
+            metrics.filesExtracted(extractor.extract(counted, resultsDir));
+        } catch (Exception e) {
+            // a rejected archive must not leave a half-extracted run behind
+            FileUtils.deleteDirectory(runFolder.toFile());
+            throw e;
+        } finally {
+            metrics.bytesIn(counted.getByteCount());
+        }
+        String contentSha256 = HexFormat.of().formatHex(digest.digest());
+
+        // a CI retry of the same archive gets the run its first attempt produced
+        RunMeta earlier = findDuplicate(appId, release, executionDate, contentSha256);
+        if (earlier != null) {
+            FileUtils.deleteDirectory(runFolder.toFile());
+            metrics.duplicate("content");
+            return existingRun(earlier, "content");
+        }
 
         // Trend/historical merge
-        prepareHistoryForRun(appId, release, runId, runFolder, resultsDir);
+        onStage.accept("history");
+        prepareHistoryForRun(appId, release, runId, resultsDir);
 
-        Map<String, Object> stats = parseAllureResults(resultsDir);
+        onStage.accept("parse");
+        List<TestResult> tests = new ArrayList<>();
+        Map<String, Object> stats = parseAllureResults(resultsDir, tests);
+        Map<String, JsonNode> historyDelta = historyBuilder.delta(tests);
 
         Path htmlPath = runFolder.resolve("index.html");
-        boolean generated = generateFinalReports(runFolder, resultsDir, htmlPath);
+        boolean generated = false;
+        if (!lazyRender) {
+            onStage.accept("generate");
+            generated = generateFinalReports(runFolder, resultsDir, htmlPath);
+        }
 
         RunMeta meta = new RunMeta();
         meta.setRunId(runId);
@@ -90,22 +270,58 @@ public class ReportService {
         meta.setSkipped((int) stats.getOrDefault("skipped", 0));
         meta.setTotal((int) stats.getOrDefault("total", 0));
         meta.setDurationMs((long) stats.getOrDefault("duration", 0L));
-
+        meta.setContentSha256(contentSha256);
+        meta.setIdempotencyKey(idempotencyKey);
+        meta.setHtmlDeferred(lazyRender);
+
+        onStage.accept("publish");
+        // attachments go to the shared blob store, not with the run; see storeAttachments
+        Map<Path, RunAttachment> runAttachments = attachments.scan(resultsDir);
+        Map<String, Object> publishStats = null;
         if ("s3".equalsIgnoreCase(storageMode)) {
             String prefix = String.format("reports/%s/%s/%s", appId, release, runId);
-            if (Files.exists(htmlPath)) uploadFileToS3(htmlPath, prefix + "/index.html");
-            uploadDirectoryToS3(runFolder.resolve("history"), prefix + "/history");
-            uploadDirectoryToS3(resultsDir, prefix + "/allure-results");
-            uploadFileToS3(zipPath, prefix + "/upload.zip");
+            // results travel as one archive object rather than one key per file
+            Path resultsZip = runFolder.resolve(ResultsArchive.OBJECT_NAME);
+            archive.pack(resultsDir, resultsZip, runAttachments::containsKey);
+
+            Map<Path, String> uploads = new LinkedHashMap<>();
+            uploads.put(htmlPath, prefix + "/index.html");
+            uploads.put(htmlPath.resolveSibling("index.html.gz"), prefix + "/index.html.gz");
+            uploads.put(resultsZip, prefix + "/" + ResultsArchive.OBJECT_NAME);
+            publishStats = publisher.publish(uploads);
+            metrics.bytesOut((long) publishStats.get("bytes"));
 
             meta.setHtmlPath(prefix + "/index.html");
-            meta.setHistoryPath(prefix + "/history");
         } else {
+            metrics.bytesOut(sizeOf(htmlPath) + sizeOf(htmlPath.resolveSibling("index.html.gz")));
             meta.setHtmlPath(htmlPath.toString());
-            meta.setHistoryPath(runFolder.resolve("history").toString());
         }
+        // only this run's delta is written; the release's history lives in the shared store
+        meta.setHistoryPath(historyStore.append(appId, release, runId, historyDelta));
 
-        repo.save(meta);
+        Map<String, Long> timings = clock.finish();
+        Set<String> unstored;
+        try {
+            unstored = repo.save(meta, tests, timings, List.copyOf(runAttachments.values()));
+        } catch (RuntimeException e) {
+            // a run that was never saved must not show up in later trends
+            try {
+                historyStore.remove(appId, release, runId);
+            } catch (IOException removeFailed) {
+                e.addSuppressed(removeFailed);
+            }
+            throw e;
+        }
+        queryCache.invalidate(appId, release);
+        long blobBytes;
+        try {
+            blobBytes = storeAttachments(runAttachments, unstored);
+        } catch (IOException e) {
+            // without its attachments the run is incomplete; take it out again
+            deleteRun(runId);
+            throw e;
+        }
+        metrics.bytesOut(blobBytes);
 
         if ("s3".equalsIgnoreCase(storageMode)) {
             try { FileUtils.deleteDirectory(runFolder.toFile()); } catch (IOException ignored) {}
@@ -115,146 +331,112 @@ public class ReportService {
         response.put("runId", runId);
         response.put("stats", stats);
         response.put("htmlGenerated", generated);
+        if (lazyRender) response.put("htmlDeferred", true);
         response.put("htmlPath", meta.getHtmlPath());
         response.put("storagePath", meta.getHistoryPath());
+        if (publishStats != null) response.put("publish", publishStats);
+        response.put("attachments", Map.of("files", runAttachments.size(), "newBlobs", unstored.size(), "bytesStored", blobBytes));
+        response.put("timings", timings);
         return response;
     }
 
-    // ---------------- unzip ----------------
-    private void unzip(Path zipPath, Path destDir) throws IOException {
-        Path tmpRoot = destDir.resolve("tmp");
-        Files.createDirectories(tmpRoot);
-
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipPath.toFile()))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                Path out = tmpRoot.resolve(entry.getName()).normalize();
-                if (!out.startsWith(tmpRoot)) continue;
-
-                if (entry.isDirectory()) Files.createDirectories(out);
-                else {
-                    Files.createDirectories(out.getParent());
-                    Files.copy(zis, out, StandardCopyOption.REPLACE_EXISTING);
-                }
+    // Writes the content of the run's blobs the database does not have as stored, then marks
+    // them stored. The references are taken first, so no delete starts on them meanwhile; a
+    // delete already under way is waited for, since it could remove content written before it ends.
+    private long storeAttachments(Map<Path, RunAttachment> scanned, Set<String> unstored) throws IOException {
+        long claimedSince = System.currentTimeMillis() - BLOB_DELETE_TIMEOUT_MILLIS;
+        for (Set<String> deleting = repo.deletingBlobs(unstored, claimedSince); !deleting.isEmpty();
+             deleting = repo.deletingBlobs(deleting, claimedSince)) {
+            try {
+                Thread.sleep(BLOB_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for attachment blobs being deleted");
             }
         }
+        long bytes = attachments.store(scanned, unstored);
+        repo.markBlobsStored(unstored, claimedSince);
+        return bytes;
+    }
 
-        Path real = findAllureResults(tmpRoot);
-        if (real == null) throw new RuntimeException("ZIP does not contain allure-results folder");
-
-        FileUtils.copyDirectory(real.toFile(), destDir.toFile());
-        FileUtils.deleteDirectory(tmpRoot.toFile());
+    private static long sizeOf(Path file) throws IOException {
+        return Files.exists(file) ? Files.size(file) : 0;
     }
 
-    private Path findAllureResults(Path root) throws IOException {
-        try (Stream<Path> s = Files.walk(root)) {
-            return s.filter(Files::isDirectory)
-                    .filter(p -> p.getFileName().toString().equals("allure-results"))
-                    .findFirst().orElse(null);
-        }
+    // the answer to an upload that repeats an earlier one: that run, flagged with why it matched
+    private static Map<String, Object> existingRun(RunMeta run, String matchedBy) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("runId", run.getRunId());
+        response.put("duplicate", matchedBy);
+        response.put("stats", Map.of("passed", run.getPassed(), "failed", run.getFailed(), "broken", run.getBroken(),
+                "skipped", run.getSkipped(), "total", run.getTotal(), "duration", run.getDurationMs()));
+        response.put("htmlPath", run.getHtmlPath());
+        response.put("storagePath", run.getHistoryPath());
+        return response;
     }
 
     // ---------------- trend/history merge ----------------
-    private void prepareHistoryForRun(String appId, String release, String runId, Path runFolder, Path resultsDir) throws Exception {
-        RunMeta previous = repo.findLatestBefore(appId, release, runId);
-
-        Path baseReport = runFolder.resolve("baseline-report");
-        FileUtils.deleteDirectory(baseReport.toFile());
-        Files.createDirectories(baseReport);
-
-        new ProcessBuilder("allure", "generate", resultsDir.toString(), "--clean", "-o", baseReport.toString())
-                .inheritIO().start().waitFor();
-
-        Path baselineHistory = baseReport.resolve("history");
-        Path runHistory = runFolder.resolve("history");
-        mergeHistory(baselineHistory, runHistory);
-
-        if (previous != null) {
-            if ("s3".equalsIgnoreCase(storageMode)) {
-                // download entire previous history prefix to a temp folder then merge
-                String prevPrefix = previous.getHistoryPath();
-                if (prevPrefix.startsWith("/")) prevPrefix = prevPrefix.substring(1);
-                Path prevTmp = Files.createTempDirectory("prev_history_");
-                downloadS3PrefixToLocal(prevPrefix, prevTmp);
-                mergeHistory(prevTmp, runHistory);
-                FileUtils.deleteDirectory(prevTmp.toFile());
-            } else {
-                Path prevHistory = Paths.get(previous.getHistoryPath());
-                mergeHistory(prevHistory, runHistory);
-            }
-        }
-
-        // copy merged history back into resultsDir/history so next generate picks it up
+    // Seeds resultsDir/history with the release's history so the report shows trends.
+    private void prepareHistoryForRun(String appId, String release, String runId, Path resultsDir) throws Exception {
         Path resultsHistory = resultsDir.resolve("history");
-        mergeHistory(runHistory, resultsHistory);
+        Map<String, JsonNode> history = historyStore.load(appId, release);
+        if (!history.isEmpty()) {
+            historyBuilder.write(history, resultsHistory);
+            return;
+        }
 
-        FileUtils.deleteDirectory(baseReport.toFile());
-    }
+        // releases uploaded before the history store keep their history next to the last run
+        RunMeta previous = repo.findLatestBefore(appId, release, runId);
+        if (previous == null || HistoryStore.isPointer(previous.getHistoryPath())) return;
 
-    private void mergeHistory(Path from, Path to) throws IOException {
-        if (from == null || !Files.exists(from)) return;
-        Files.createDirectories(to);
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(from)) {
-            for (Path file : ds) {
-                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
-            }
+        Files.createDirectories(resultsHistory);
+        if ("s3".equalsIgnoreCase(storageMode)) {
+            String prevPrefix = previous.getHistoryPath();
+            if (prevPrefix.startsWith("/")) prevPrefix = prevPrefix.substring(1);
+            downloadS3PrefixToLocal(prevPrefix, resultsHistory);
+        } else {
+            Path from = Paths.get(previous.getHistoryPath());
+            if (Files.isDirectory(from)) FileUtils.copyDirectory(from.toFile(), resultsHistory.toFile());
         }
+        historyStore.seed(appId, release, historyBuilder.read(resultsHistory));
     }
 
     // ---------------- parse allure results ----------------
-    private Map<String, Object> parseAllureResults(Path resultsDir) throws IOException {
+    private Map<String, Object> parseAllureResults(Path resultsDir, List<TestResult> tests) throws IOException {
         int passed = 0, failed = 0, broken = 0, skipped = 0, total = 0;
         long duration = 0;
 
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(resultsDir, "*-result.json")) {
-            for (Path p : ds) {
-                JsonNode n = mapper.readTree(p.toFile());
-                total++;
-                String status = n.has("status") ? n.get("status").asText() : "unknown";
-                switch (status) {
-                    case "passed": passed++; break;
-                    case "failed": failed++; break;
-                    case "broken": broken++; break;
-                    case "skipped": skipped++; break;
-                }
-                long start = n.has("start") ? n.get("start").asLong() : 0;
-                long stop = n.has("stop") ? n.get("stop").asLong() : 0;
-                if (start > 0 && stop > start) duration += (stop - start);
+        tests.addAll(parser.parse(resultsDir));
+        for (TestResult t : tests) {
+            total++;
+            switch (t.getStatus()) {
+                case "passed": passed++; break;
+                case "failed": failed++; break;
+                case "broken": broken++; break;
+                case "skipped": skipped++; break;
             }
+            duration += t.getDurationMs();
         }
 
         return Map.of("passed", passed, "failed", failed, "broken", broken, "skipped", skipped, "total", total, "duration", duration);
     }
 
-    // ---------------- generate final reports ----------------
+    // ---------------- generate final report ----------------
+    // One single-file render; the history folder is built by HistoryBuilder instead of a second render.
     private boolean generateFinalReports(Path runFolder, Path resultsDir, Path htmlOut) {
         try {
-            Path fullReport = runFolder.resolve("full-report");
             Path singleReport = runFolder.resolve("single-report");
 
-            FileUtils.deleteDirectory(fullReport.toFile());
             FileUtils.deleteDirectory(singleReport.toFile());
-            Files.createDirectories(fullReport);
             Files.createDirectories(singleReport);
 
-            new ProcessBuilder("allure", "generate", resultsDir.toString(), "--clean", "-o", fullReport.toString())
-                    .inheritIO().start().waitFor();
-
-            Path updatedHistory = fullReport.resolve("history");
-            Path runHistory = runFolder.resolve("history");
-            mergeHistory(updatedHistory, runHistory);
-
-            Path resultsHistory = resultsDir.resolve("history");
-            mergeHistory(runHistory, resultsHistory);
-
-            new ProcessBuilder("allure", "generate", resultsDir.toString(), "--clean", "--single-file", "-o", singleReport.toString())
-                    .inheritIO().start().waitFor();
+            generator.generate(resultsDir, singleReport, true);
 
             Path singleHtml = singleReport.resolve("index.html");
             if (Files.exists(singleHtml)) {
                 Files.move(singleHtml, htmlOut, StandardCopyOption.REPLACE_EXISTING);
-                FileUtils.deleteDirectory(fullReport.toFile());
                 FileUtils.deleteDirectory(singleReport.toFile());
+                precompress(htmlOut);
                 return true;
             }
         } catch (Exception e) {
@@ -263,27 +445,53 @@ public class ReportService {
         return false;
     }
 
-    // ---------------- S3 helpers ----------------
-    private void uploadFileToS3(Path file, String s3Key) throws IOException {
-        if (file == null || !Files.exists(file)) return;
-        PutObjectRequest putReq = PutObjectRequest.builder().bucket(bucket).key(s3Key).build();
-        s3.putObject(putReq, RequestBody.fromFile(file));
-    }
+    // ---------------- single result file ----------------
+
+    /**
+     * Opens one file of a run's allure-results (a result JSON or an attachment) for
+     * streaming; the caller closes it. Attachments in the run's manifest come from the
+     * blob store. Other files are range-read out of the run's archive in s3 mode; runs
+     * published before the archive format fall back to their per-file key.
+     *
+     * @return the open file, or null when the run or file does not exist
+     */
+    public StoredFile openResultFile(String runId, String name) throws IOException {
+        RunMeta meta = repo.findByRunId(runId);
+        if (meta == null) return null;
+
+        String blob = repo.findAttachment(runId, name);
+        if (blob != null) return attachments.open(blob);
 
-    private void uploadDirectoryToS3(Path dir, String s3Prefix) throws IOException {
-        if (!Files.exists(dir)) return;
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
-            for (Path p : ds) {
-                if (Files.isDirectory(p)) {
-                    uploadDirectoryToS3(p, s3Prefix + "/" + p.getFileName().toString());
-                } else {
-                    String key = s3Prefix + "/" + p.getFileName().toString();
-                    uploadFileToS3(p, key);
+        if ("s3".equalsIgnoreCase(storageMode)) {
+            String prefix = parentPrefix(meta.getHtmlPath());
+            try {
+                return archive.openEntry(prefix + "/" + ResultsArchive.OBJECT_NAME, name);
+            } catch (NoSuchKeyException e) {
+                try {
+                    ResponseInputStream<GetObjectResponse> in = s3.getObject(b -> b.bucket(bucket).key(prefix + "/allure-results/" + name));
+                    return new StoredFile(in, in.response().contentLength());
+                } catch (NoSuchKeyException missing) {
+                    return null;
                 }
             }
         }
+
+        Path resultsDir = Paths.get(meta.getHtmlPath()).resolveSibling("allure-results").normalize();
+        Path file = resultsDir.resolve(name).normalize();
+        if (!file.startsWith(resultsDir) || !Files.isRegularFile(file)) return null;
+        return new StoredFile(Files.newInputStream(file), Files.size(file));
     }
 
+    // Writes a gzip sibling (index.html.gz) that /api/view serves to clients accepting gzip;
+    // single-file reports are mostly inlined JSON and shrink several times over.
+    static void precompress(Path file) throws IOException {
+        Path gz = file.resolveSibling(file.getFileName() + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz), 64 * 1024)) {
+            Files.copy(file, out);
+        }
+    }
+
+    // ---------------- S3 helpers ----------------
     private void downloadS3PrefixToLocal(String prefix, Path destDir) {
         if (prefix == null || prefix.isEmpty()) return;
         try {
@@ -293,17 +501,18 @@ public class ReportService {
             do {
                 ListObjectsV2Request req = (token == null) ? listReq : listReq.toBuilder().continuationToken(token).build();
                 listRes = s3.listObjectsV2(req);
-                for (S3Object obj : listRes.contents()) {
+                // one blocking GET per file, each on a virtual thread of its own in virtual-thread mode
+                threads.forEach(listRes.contents(), obj -> {
                     String key = obj.key();
                     // Get filename after last '/'
                     String name = key.substring(key.lastIndexOf('/') + 1);
-                    if (name.isEmpty()) continue;
+                    if (name.isEmpty()) return;
                     GetObjectRequest getReq = GetObjectRequest.builder().bucket(bucket).key(key).build();
                     try (InputStream is = s3.getObject(getReq)) {
                         Path out = destDir.resolve(name);
                         Files.copy(is, out, StandardCopyOption.REPLACE_EXISTING);
                     } catch (Exception ignored) {}
-                }
+                });
                 token = listRes.nextContinuationToken();
             } while (token != null);
         } catch (Exception e) {
@@ -311,6 +520,11 @@ public class ReportService {
         }
     }
 
+    /** Attachment blob store totals: distinct blobs, bytes stored and bytes the runs reference. */
+    public Map<String, Object> blobStats() {
+        return repo.blobStats();
+    }
+
     /*Delete Data */
 
     public void deleteRun(String runId) throws IOException {
@@ -318,22 +532,70 @@ public class ReportService {
         if (meta == null) return;
 
         deleteStorage(meta.getHtmlPath(), meta.getHistoryPath());
-        repo.deleteByRunId(runId);
+        if (HistoryStore.isPointer(meta.getHistoryPath())) historyStore.remove(meta.getAppId(), meta.getRelease(), runId);
+        reportCache.evict(runId);
+        repo.deleteByRunId(runId, attachments::delete);
+        queryCache.invalidate(meta.getAppId(), meta.getRelease());
     }
 
     public void deleteRelease(String appId, String release) throws IOException {
+        deleteRelease(appId, release, n -> {});
+    }
+
+    /**
+     * Deletes a release's runs, files and history store.
+     *
+     * @param onDeleted told how many storage objects (S3 keys, or run folders in local mode) each step removed
+     */
+    public void deleteRelease(String appId, String release, LongConsumer onDeleted) throws IOException {
         List<RunMeta> runs = repo.findAllByAppAndRelease(appId, release);
-        for (RunMeta r : runs) {
-            deleteStorage(r.getHtmlPath(), r.getHistoryPath());
+        purge(appId, runs, onDeleted);
+        repo.deleteByAppAndRelease(appId, release, attachments::delete);
+        queryCache.invalidate(appId, release);
+    }
+
+    public void deleteApp(String appId) throws IOException {
+        deleteApp(appId, n -> {});
+    }
+
+    /** Deletes every release of an app; see {@link #deleteRelease(String, String, LongConsumer)}. */
+    public void deleteApp(String appId, LongConsumer onDeleted) throws IOException {
+        List<RunMeta> runs = repo.findAllByApp(appId);
+        purge(appId, runs, onDeleted);
+        repo.deleteByApp(appId, attachments::delete);
+        queryCache.invalidate(appId, null);
+    }
+
+    // In s3 mode every release folder goes as one prefix, all of them in parallel.
+    private void purge(String appId, List<RunMeta> runs, LongConsumer onDeleted) throws IOException {
+        Set<String> releases = new LinkedHashSet<>();
+        for (RunMeta r : runs) releases.add(r.getRelease());
+
+        if ("s3".equalsIgnoreCase(storageMode)) {
+            List<String> prefixes = new ArrayList<>();
+            for (String release : releases) prefixes.add(String.format("reports/%s/%s/", appId, release));
+            deleter.deletePrefixes(prefixes, onDeleted);
+            prefixes.forEach(archive::evictPrefix);
+        } else {
+            for (RunMeta r : runs) {
+                deleteStorage(r.getHtmlPath(), r.getHistoryPath());
+                onDeleted.accept(1);
+            }
         }
-        repo.deleteByAppAndRelease(appId, release);
+        for (RunMeta r : runs) reportCache.evict(r.getRunId());
+        for (String release : releases) historyStore.delete(appId, release);
     }
+
+    // Removes a run's own files; the release history store is shared and left alone.
     private void deleteStorage(String htmlPath, String historyPath) throws IOException {
         if ("s3".equalsIgnoreCase(storageMode)) {
-            deleteS3Prefix(parentPrefix(htmlPath));
+            String prefix = parentPrefix(htmlPath) + "/";
+            deleter.deletePrefixes(List.of(prefix), n -> {});
+            archive.evictPrefix(prefix);
         } else {
-            deleteLocalPath(htmlPath);
-            deleteLocalPath(historyPath);
+            deleteLocalPath(Paths.get(htmlPath).getParent().toString());
+            // a legacy run may keep its history folder outside the run folder
+            if (!HistoryStore.isPointer(historyPath)) deleteLocalPath(historyPath);
         }
     }
     private void deleteLocalPath(String path) throws IOException {
@@ -344,42 +606,8 @@ public class ReportService {
         if (f.isDirectory()) FileUtils.deleteDirectory(f);
         else f.delete();
     }
-    private void deleteS3Prefix(String prefix) {
-        if (prefix == null || prefix.isEmpty()) return;
-
-        ListObjectsV2Request listReq =
-                ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build();
-
-        ListObjectsV2Response res;
-        String token = null;
-
-        do {
-            res = s3.listObjectsV2(
-                    token == null ? listReq : listReq.toBuilder().continuationToken(token).build()
-            );
-
-            for (S3Object obj : res.contents()) {
-                s3.deleteObject(DeleteObjectRequest.builder()
-                        .bucket(bucket)
-                        .key(obj.key())
-                        .build());
-            }
-
-            token = res.nextContinuationToken();
-        } while (token != null);
-    }
 
     private String parentPrefix(String key) {
         return key.substring(0, key.lastIndexOf('/'));
     }
-
-    public void deleteApp(String appId) throws IOException {
-        List<RunMeta> runs = repo.findAllByApp(appId);
-        for (RunMeta r : runs) {
-            deleteStorage(r.getHtmlPath(), r.getHistoryPath());
-        }
-        repo.deleteByApp(appId);
-    }
-
-
 }
@@ -0,0 +1,120 @@
+package io.allure.platform.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.allure.platform.model.TestResult;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses {@code *-result.json} files with Jackson's streaming parser, pulling only
+ * the fields we keep and skipping steps, attachments and parameters unread. Files
+ * are spread over a dedicated fork-join pool so large uploads use every core.
+ */
+@Component
+public class ResultParser {
+
+    private final JsonFactory json = new JsonFactory();
+    private final ForkJoinPool pool;
+
+    public ResultParser(@Value("${upload.parse.parallelism:0}") int parallelism) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    public List<TestResult> parse(Path resultsDir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(resultsDir, "*-result.json")) {
+            for (Path p : ds) files.add(p);
+        }
+
+        try {
+            return pool.submit(() -> files.parallelStream().map(this::parseFile).toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Parsing interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException u) throw u.getCause();
+            throw new IOException("Could not parse results in " + resultsDir, cause);
+        }
+    }
+
+    private TestResult parseFile(Path file) {
+        TestResult t = new TestResult();
+        try (JsonParser p = json.createParser(file.toFile())) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return t;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "uuid" -> t.setUuid(p.getValueAsString());
+                    case "historyId" -> t.setHistoryId(p.getValueAsString());
+                    case "name" -> t.setName(p.getValueAsString());
+                    case "fullName" -> t.setFullName(p.getValueAsString());
+                    case "status" -> t.setStatus(p.getValueAsString());
+                    case "start" -> t.setStart(p.getValueAsLong());
+                    case "stop" -> t.setStop(p.getValueAsLong());
+                    case "statusDetails" -> t.setStatusMessage(readMessage(p, value));
+                    case "labels" -> readLabels(p, value, t.getLabels());
+                    default -> p.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not parse " + file.getFileName(), e);
+        }
+        if (t.getStatus() == null) t.setStatus("unknown");
+        return t;
+    }
+
+    private String readMessage(JsonParser p, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+        String message = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if ("message".equals(field)) message = p.getValueAsString();
+            else p.skipChildren();
+        }
+        return message;
+    }
+
+    // repeated label names (several tags, say) are joined with ", "
+    private void readLabels(JsonParser p, JsonToken value, Map<String, String> labels) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return;
+        }
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            String name = null, val = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if ("name".equals(field)) name = p.getValueAsString();
+                else if ("value".equals(field)) val = p.getValueAsString();
+                else p.skipChildren();
+            }
+            if (name != null && val != null) labels.merge(name, val, (a, b) -> a + ", " + b);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,298 @@
+package io.allure.platform.service;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Stores a run's allure-results as one ZIP object instead of one S3 key per file.
+ * The ZIP central directory doubles as the index: a single file is read back with
+ * three ranged GETs (end record, central directory, entry) and the parsed directory
+ * is cached, so later reads from the same run cost one GET. Entries are streamed
+ * rather than buffered, so a multi-gigabyte video reads like a small JSON file.
+ */
+@Component
+public class ResultsArchive {
+
+    public static final String OBJECT_NAME = "results.zip";
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int CEN_SIG = 0x02014b50;
+    // 22 byte end record plus the longest possible comment
+    private static final int TAIL_SIZE = 22 + 0xFFFF;
+    private static final int INDEX_CACHE_SIZE = 64;
+
+    // already compressed formats gain nothing from deflate
+    private static final List<String> STORED = List.of(".png", ".jpg", ".jpeg", ".gif", ".webm", ".mp4", ".zip", ".gz");
+
+    private final S3Client s3;
+    private final String bucket;
+    private final Map<String, Map<String, Entry>> indexCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Entry>> eldest) {
+            return size() > INDEX_CACHE_SIZE;
+        }
+    };
+
+    private record Entry(int method, long compressedSize, long size, long localHeaderOffset) { }
+
+    public ResultsArchive(S3Client s3, @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket) {
+        this.s3 = s3;
+        this.bucket = bucket;
+    }
+
+    // ---------------- write ----------------
+
+    /** Zips every file below {@code resultsDir} (history included) into {@code zipOut}. */
+    public void pack(Path resultsDir, Path zipOut) throws IOException {
+        pack(resultsDir, zipOut, p -> false);
+    }
+
+    /** Like {@link #pack(Path, Path)}, leaving out the files {@code skip} accepts. */
+    public void pack(Path resultsDir, Path zipOut, Predicate<Path> skip) throws IOException {
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipOut));
+             Stream<Path> files = Files.walk(resultsDir)) {
+            zos.setLevel(Deflater.BEST_SPEED);
+            for (Path p : files.filter(Files::isRegularFile).filter(skip.negate()).toList()) {
+                String name = resultsDir.relativize(p).toString().replace('\\', '/');
+                ZipEntry e = new ZipEntry(name);
+                if (STORED.stream().anyMatch(name.toLowerCase()::endsWith)) {
+                    // a stored entry's header needs its CRC up front: one pass to take it, one to copy
+                    long size = Files.size(p);
+                    e.setMethod(ZipEntry.STORED);
+                    e.setSize(size);
+                    e.setCompressedSize(size);
+                    e.setCrc(crc(p));
+                }
+                zos.putNextEntry(e);
+                Files.copy(p, zos);
+                zos.closeEntry();
+            }
+        }
+    }
+
+    private static long crc(Path file) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(file), new CRC32())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return in.getChecksum().getValue();
+        }
+    }
+
+    // ---------------- whole read ----------------
+
+    /**
+     * Streams the archive stored at {@code key} into {@code destDir}, recreating the
+     * allure-results folder it was packed from. Entries resolving outside
+     * {@code destDir} are skipped.
+     *
+     * @throws software.amazon.awssdk.services.s3.model.NoSuchKeyException when there is no archive at {@code key}
+     */
+    public void unpack(String key, Path destDir) throws IOException {
+        Path root = destDir.toAbsolutePath().normalize();
+        try (ResponseInputStream<GetObjectResponse> in = s3.getObject(b -> b.bucket(bucket).key(key));
+             ZipInputStream zis = new ZipInputStream(in)) {
+            ZipEntry e;
+            while ((e = zis.getNextEntry()) != null) {
+                Path out = root.resolve(e.getName()).normalize();
+                if (e.isDirectory() || !out.startsWith(root)) continue;
+                Files.createDirectories(out.getParent());
+                Files.copy(zis, out);
+            }
+        }
+    }
+
+    // ---------------- ranged read ----------------
+
+    /**
+     * Opens one file of the archive stored at {@code key}. Header and data usually come
+     * with one ranged GET; deflated entries are inflated as they are read.
+     *
+     * @return the open file, or null when the archive has no such entry
+     */
+    public StoredFile openEntry(String key, String name) throws IOException {
+        Entry e = index(key).get(name);
+        if (e == null) return null;
+
+        // local header is 30 bytes + name + extra; the extra is rarely more than a few bytes
+        int nameLen = name.getBytes(StandardCharsets.UTF_8).length;
+        long from = e.localHeaderOffset();
+        ResponseInputStream<GetObjectResponse> in = rangeStream(key, from, from + 30 + nameLen + 256 + e.compressedSize() - 1);
+        try {
+            ByteBuffer header = le(in.readNBytes(30));
+            if (header.limit() < 30) throw new IOException("Truncated entry " + name + " in " + key);
+            int skip = (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            if (skip > nameLen + 256) {
+                in.abort();
+                long dataStart = from + 30 + skip;
+                in = rangeStream(key, dataStart, dataStart + e.compressedSize() - 1);
+            } else {
+                in.skipNBytes(skip);
+            }
+        } catch (IOException | RuntimeException ex) {
+            in.abort();
+            throw ex;
+        }
+
+        InputStream data = new BoundedInputStream(in, e.compressedSize());
+        if (e.method() != ZipEntry.STORED) data = new EntryInflaterStream(data);
+        return new StoredFile(data, e.size());
+    }
+
+    // Raw inflate of one entry. Like ZipFile, feeds the inflater a dummy byte at the end of
+    // the input, which the nowrap mode may need, and frees its native memory on close.
+    private static final class EntryInflaterStream extends InflaterInputStream {
+        private boolean eof;
+
+        EntryInflaterStream(InputStream in) {
+            super(in, new Inflater(true), 64 * 1024);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) throw new EOFException("Unexpected end of ZLIB input stream");
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+    private Map<String, Entry> index(String key) throws IOException {
+        synchronized (indexCache) {
+            Map<String, Entry> cached = indexCache.get(key);
+            if (cached != null) return cached;
+        }
+
+        ResponseBytes<GetObjectResponse> tail = s3.getObjectAsBytes(b -> b.bucket(bucket).key(key).range("bytes=-" + TAIL_SIZE));
+        long objectSize = totalSize(tail.response().contentRange(), tail.asByteArray().length);
+        ByteBuffer t = le(tail.asByteArray());
+        long tailStart = objectSize - t.limit();
+
+        int eocd = -1;
+        for (int i = t.limit() - 22; i >= 0; i--) {
+            if (t.getInt(i) == EOCD_SIG) { eocd = i; break; }
+        }
+        if (eocd < 0) throw new IOException("Not a zip archive: " + key);
+
+        long cdSize = t.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = t.getInt(eocd + 16) & 0xFFFFFFFFL;
+        int locator = eocd - 20;
+        if (locator >= 0 && t.getInt(locator) == ZIP64_LOCATOR_SIG) {
+            long z64Offset = t.getLong(locator + 8);
+            ByteBuffer z = z64Offset >= tailStart
+                    ? t.duplicate().order(ByteOrder.LITTLE_ENDIAN).position((int) (z64Offset - tailStart)).slice().order(ByteOrder.LITTLE_ENDIAN)
+                    : le(range(key, z64Offset, z64Offset + 55));
+            if (z.getInt(0) != ZIP64_EOCD_SIG) throw new IOException("Bad zip64 end record: " + key);
+            cdSize = z.getLong(40);
+            cdOffset = z.getLong(48);
+        }
+
+        ByteBuffer cd = cdOffset >= tailStart
+                ? t.duplicate().order(ByteOrder.LITTLE_ENDIAN).position((int) (cdOffset - tailStart)).slice().order(ByteOrder.LITTLE_ENDIAN)
+                : le(range(key, cdOffset, cdOffset + cdSize - 1));
+
+        Map<String, Entry> entries = new HashMap<>();
+        int pos = 0;
+        while (pos + 46 <= cdSize && cd.getInt(pos) == CEN_SIG) {
+            int method = cd.getShort(pos + 10) & 0xFFFF;
+            long csize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+            long offset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLen];
+            cd.get(pos + 46, nameBytes);
+
+            // zip64 extra field carries whichever of the three values overflowed
+            int x = pos + 46 + nameLen, xEnd = x + extraLen;
+            while (x + 4 <= xEnd) {
+                int id = cd.getShort(x) & 0xFFFF, len = cd.getShort(x + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int f = x + 4;
+                    if (size == 0xFFFFFFFFL) { size = cd.getLong(f); f += 8; }
+                    if (csize == 0xFFFFFFFFL) { csize = cd.getLong(f); f += 8; }
+                    if (offset == 0xFFFFFFFFL) { offset = cd.getLong(f); }
+                }
+                x += 4 + len;
+            }
+
+            entries.put(new String(nameBytes, StandardCharsets.UTF_8), new Entry(method, csize, size, offset));
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+
+        synchronized (indexCache) {
+            indexCache.put(key, entries);
+        }
+        return entries;
+    }
+
+    private ResponseInputStream<GetObjectResponse> rangeStream(String key, long from, long to) {
+        return s3.getObject(b -> b.bucket(bucket).key(key).range("bytes=" + from + "-" + to));
+    }
+
+    private byte[] range(String key, long from, long to) {
+        return s3.getObjectAsBytes(b -> b.bucket(bucket).key(key).range("bytes=" + from + "-" + to)).asByteArray();
+    }
+
+    // "bytes 100-199/12345" -> 12345
+    private static long totalSize(String contentRange, long fallback) {
+        if (contentRange == null) return fallback;
+        int slash = contentRange.lastIndexOf('/');
+        return slash < 0 ? fallback : Long.parseLong(contentRange.substring(slash + 1).trim());
+    }
+
+    private static ByteBuffer le(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Drops the cached directories of archives below a deleted prefix. */
+    public void evictPrefix(String prefix) {
+        synchronized (indexCache) {
+            indexCache.keySet().removeIf(k -> k.startsWith(prefix));
+        }
+    }
+}
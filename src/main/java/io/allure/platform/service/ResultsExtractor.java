@@ -0,0 +1,106 @@
+package io.allure.platform.service;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Single-pass extraction of an uploaded results ZIP. Entries are read straight off
+ * the stream; the first {@code allure-results/} folder seen fixes the prefix and only
+ * entries below it are written, directly into the run's results folder. Entry count
+ * and total uncompressed size are capped so a crafted archive cannot fill the disk.
+ */
+@Component
+public class ResultsExtractor {
+
+    private static final String RESULTS_DIR = "allure-results/";
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    public ResultsExtractor(@Value("${upload.unzip.max-entries:200000}") int maxEntries,
+                            @Value("${upload.unzip.max-bytes:4GB}") DataSize maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes.toBytes();
+    }
+
+    /**
+     * Extracts the allure-results folder of {@code zip} into {@code resultsDir} and
+     * reads the stream to its end.
+     *
+     * @return number of files written
+     */
+    public int extract(InputStream zip, Path resultsDir) throws IOException {
+        Files.createDirectories(resultsDir);
+        String prefix = null;
+        int entries = 0, files = 0;
+        long bytes = 0;
+        byte[] buf = new byte[64 * 1024];
+
+        // closed here so its Inflater's native memory is freed now rather than by GC; the caller's stream stays open
+        try (ZipInputStream zis = new ZipInputStream(CloseShieldInputStream.wrap(zip))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (++entries > maxEntries) {
+                    throw new IOException("ZIP has more than " + maxEntries + " entries");
+                }
+
+                String name = entry.getName().replace('\\', '/');
+                if (name.startsWith("__MACOSX/")) continue;
+
+                if (prefix == null) prefix = resultsPrefix(name);
+                if (prefix == null || !name.startsWith(prefix)) continue;
+
+                String relative = name.substring(prefix.length());
+                if (relative.isEmpty()) continue;
+
+                Path out = resultsDir.resolve(relative).normalize();
+                if (!out.startsWith(resultsDir)) continue;
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(out);
+                    continue;
+                }
+
+                Files.createDirectories(out.getParent());
+                try (OutputStream os = Files.newOutputStream(out)) {
+                    int n;
+                    while ((n = zis.read(buf)) > 0) {
+                        bytes += n;
+                        if (bytes > maxBytes) {
+                            throw new IOException("ZIP expands to more than " + maxBytes + " bytes");
+                        }
+                        os.write(buf, 0, n);
+                    }
+                }
+                files++;
+            }
+
+            // consume the central directory too, so anything teeing the stream sees every byte
+            zip.transferTo(OutputStream.nullOutputStream());
+        }
+
+        if (prefix == null) throw new RuntimeException("ZIP does not contain allure-results folder");
+        return files;
+    }
+
+    // "build/allure-results/x.json" -> "build/allure-results/"
+    private static String resultsPrefix(String name) {
+        int from = 0;
+        while (true) {
+            int i = name.indexOf(RESULTS_DIR, from);
+            if (i < 0) return null;
+            if (i == 0 || name.charAt(i - 1) == '/') return name.substring(0, i + RESULTS_DIR.length());
+            from = i + 1;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.allure.platform.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Deletes everything under a set of S3 prefixes. Each listing page (up to 1000 keys)
+ * becomes one {@code DeleteObjects} call, sent asynchronously while the next page is
+ * listed. Prefixes are listed in parallel and at most {@code aws.s3.delete.concurrency}
+ * delete requests are in flight at once.
+ */
+@Component
+public class S3Deleter {
+
+    private static final Logger log = LoggerFactory.getLogger(S3Deleter.class);
+
+    // DeleteObjects accepts at most 1000 keys per request
+    private static final int BATCH_SIZE = 1000;
+
+    private final S3Client s3;
+    private final S3AsyncClient s3Async;
+    private final String bucket;
+    private final Semaphore permits;
+    private final ExecutorService listers;
+
+    public S3Deleter(S3Client s3,
+                     S3AsyncClient s3Async,
+                     @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
+                     @Value("${aws.s3.delete.concurrency:8}") int concurrency) {
+        this.s3 = s3;
+        this.s3Async = s3Async;
+        this.bucket = bucket;
+        this.permits = new Semaphore(concurrency);
+
+        AtomicInteger seq = new AtomicInteger();
+        this.listers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "s3-delete-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Deletes every object below the given prefixes and waits for all of them.
+     *
+     * @param onDeleted told how many keys each finished batch removed
+     * @return the number of keys deleted
+     */
+    public long deletePrefixes(Collection<String> prefixes, LongConsumer onDeleted) throws IOException {
+        long started = System.nanoTime();
+        AtomicLong deleted = new AtomicLong();
+        LongConsumer counter = n -> {
+            deleted.addAndGet(n);
+            onDeleted.accept(n);
+        };
+
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (String prefix : prefixes) {
+            if (prefix == null || prefix.isEmpty()) continue;
+            pending.add(CompletableFuture.supplyAsync(() -> deletePrefix(prefix, counter), listers)
+                    .thenCompose(batches -> CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new))));
+        }
+
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException c ? c.getCause() : e.getCause();
+            throw new IOException("S3 delete failed: " + cause.getMessage(), cause);
+        }
+
+        log.info("Deleted {} objects under {} prefixes in {} ms",
+                deleted.get(), pending.size(), (System.nanoTime() - started) / 1_000_000);
+        return deleted.get();
+    }
+
+    /** Deletes the given keys, up to 1000 per request, and waits for all of them. */
+    public long deleteKeys(Collection<String> keys) throws IOException {
+        AtomicLong deleted = new AtomicLong();
+        List<ObjectIdentifier> ids = keys.stream().map(k -> ObjectIdentifier.builder().key(k).build()).toList();
+        List<CompletableFuture<DeleteObjectsResponse>> pending = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+            pending.add(deleteBatch(ids.subList(i, Math.min(i + BATCH_SIZE, ids.size())), deleted::addAndGet));
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException c ? c.getCause() : e.getCause();
+            throw new IOException("S3 delete failed: " + cause.getMessage(), cause);
+        }
+        return deleted.get();
+    }
+
+    // lists one prefix page by page; each page is deleted while the next one is listed
+    private List<CompletableFuture<DeleteObjectsResponse>> deletePrefix(String prefix, LongConsumer onDeleted) {
+        List<CompletableFuture<DeleteObjectsResponse>> batches = new ArrayList<>();
+        ListObjectsV2Request req = ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).maxKeys(BATCH_SIZE).build();
+        ListObjectsV2Response res;
+        do {
+            res = s3.listObjectsV2(req);
+            List<ObjectIdentifier> keys = res.contents().stream()
+                    .map(o -> ObjectIdentifier.builder().key(o.key()).build())
+                    .toList();
+            if (!keys.isEmpty()) batches.add(deleteBatch(keys, onDeleted));
+            req = req.toBuilder().continuationToken(res.nextContinuationToken()).build();
+        } while (Boolean.TRUE.equals(res.isTruncated()));
+        return batches;
+    }
+
+    private CompletableFuture<DeleteObjectsResponse> deleteBatch(List<ObjectIdentifier> keys, LongConsumer onDeleted) {
+        permits.acquireUninterruptibly();
+        return s3Async.deleteObjects(b -> b.bucket(bucket).delete(d -> d.objects(keys).quiet(true)))
+                .whenComplete((r, e) -> permits.release())
+                .thenApply(r -> {
+                    if (r.hasErrors() && !r.errors().isEmpty()) {
+                        throw new CompletionException(new IOException(r.errors().size() + " keys could not be deleted, first: "
+                                + r.errors().get(0).key() + " (" + r.errors().get(0).code() + ")"));
+                    }
+                    onDeleted.accept(keys.size());
+                    return r;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        listers.shutdown();
+    }
+}
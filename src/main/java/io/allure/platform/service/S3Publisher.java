@@ -0,0 +1,168 @@
+package io.allure.platform.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads a run's files with {@link S3AsyncClient}. At most {@code concurrency}
+ * requests are in flight at once; files above the multipart threshold are sent as
+ * parallel parts. Failed requests are retried with backoff by the client's retry
+ * policy ({@code aws.s3.max-retries}).
+ */
+@Component
+public class S3Publisher {
+
+    private static final Logger log = LoggerFactory.getLogger(S3Publisher.class);
+
+    private final S3AsyncClient s3;
+    private final String bucket;
+    private final Semaphore permits;
+    private final long multipartThreshold;
+    private final int partSize;
+
+    public S3Publisher(S3AsyncClient s3,
+                       @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
+                       @Value("${aws.s3.upload.concurrency:32}") int concurrency,
+                       @Value("${aws.s3.upload.multipart-threshold:16MB}") DataSize multipartThreshold,
+                       @Value("${aws.s3.upload.part-size:8MB}") DataSize partSize) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.permits = new Semaphore(concurrency);
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = (int) Math.max(partSize.toBytes(), DataSize.ofMegabytes(5).toBytes());
+    }
+
+    /** Adds every file below {@code dir} to {@code uploads}, keyed under {@code prefix}. */
+    public void collect(Path dir, String prefix, Map<Path, String> uploads) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                String key = prefix + "/" + p.getFileName().toString();
+                if (Files.isDirectory(p)) collect(p, key, uploads);
+                else uploads.put(p, key);
+            }
+        }
+    }
+
+    /**
+     * Uploads every file to its key and waits for all of them.
+     *
+     * @return files, bytes, millis and MB/s of the batch
+     */
+    public Map<String, Object> publish(Map<Path, String> uploads) throws IOException {
+        long started = System.nanoTime();
+        AtomicLong bytes = new AtomicLong();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+
+        // largest first, so big multipart files are not left running alone at the end
+        List<Map.Entry<Path, String>> ordered = new ArrayList<>(uploads.entrySet());
+        ordered.sort(Comparator.comparingLong((Map.Entry<Path, String> e) -> size(e.getKey())).reversed());
+
+        try {
+            for (Map.Entry<Path, String> e : ordered) {
+                Path file = e.getKey();
+                if (!Files.exists(file)) continue;
+                long size = Files.size(file);
+                pending.add((size > multipartThreshold ? multipart(file, e.getValue(), size) : put(file, e.getValue()))
+                        .thenRun(() -> bytes.addAndGet(size)));
+            }
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("S3 publish interrupted", e);
+        } catch (CompletionException e) {
+            throw new IOException("S3 publish failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        double mbPerSec = bytes.get() / 1048576.0 / (millis / 1000.0);
+        log.info("Published {} files ({} bytes) to s3://{} in {} ms ({} MB/s)",
+                pending.size(), bytes.get(), bucket, millis, String.format("%.1f", mbPerSec));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", pending.size());
+        stats.put("bytes", bytes.get());
+        stats.put("millis", millis);
+        stats.put("mbPerSec", Math.round(mbPerSec * 10) / 10.0);
+        return stats;
+    }
+
+    private CompletableFuture<?> put(Path file, String key) throws InterruptedException {
+        permits.acquire();
+        return s3.putObject(b -> b.bucket(bucket).key(key), AsyncRequestBody.fromFile(file))
+                .whenComplete((r, e) -> permits.release());
+    }
+
+    private CompletableFuture<?> multipart(Path file, String key, long size) throws IOException, InterruptedException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(key)).join().uploadId();
+
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file)) {
+            long pos = 0;
+            for (int partNumber = 1; pos < size; partNumber++, pos += partSize) {
+                int len = (int) Math.min(partSize, size - pos);
+                permits.acquire();
+                ByteBuffer buf;
+                try {
+                    buf = ByteBuffer.allocate(len);
+                    while (buf.hasRemaining() && ch.read(buf, pos + buf.position()) >= 0) { }
+                    buf.flip();
+                } catch (IOException e) {
+                    permits.release();
+                    abort(key, uploadId);
+                    throw e;
+                }
+                int n = partNumber;
+                parts.add(s3.uploadPart(b -> b.bucket(bucket).key(key).uploadId(uploadId).partNumber(n).contentLength((long) len),
+                                AsyncRequestBody.fromByteBuffer(buf))
+                        .whenComplete((r, e) -> permits.release())
+                        .thenApply(r -> CompletedPart.builder().partNumber(n).eTag(r.eTag()).build()));
+            }
+        }
+
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .thenCompose(v -> s3.completeMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId)
+                        .multipartUpload(m -> m.parts(parts.stream().map(CompletableFuture::join).toList()))))
+                .whenComplete((r, e) -> {
+                    if (e != null) abort(key, uploadId);
+                });
+    }
+
+    private void abort(String key, String uploadId) {
+        s3.abortMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId))
+                .exceptionally(e -> {
+                    log.warn("Could not abort multipart upload {} for {}", uploadId, key, e);
+                    return null;
+                });
+    }
+
+    private static long size(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
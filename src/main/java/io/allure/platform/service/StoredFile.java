@@ -0,0 +1,16 @@
+package io.allure.platform.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A stored file opened for reading: its content as a stream and its size in bytes,
+ * so callers can send it on without holding it in memory. The caller closes it.
+ */
+public record StoredFile(InputStream content, long size) implements AutoCloseable {
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
@@ -0,0 +1,324 @@
+package io.allure.platform.service;
+
+import io.allure.platform.config.VirtualThreads;
+import io.allure.platform.model.RunMeta;
+import io.allure.platform.model.UploadJob;
+import io.allure.platform.repo.UploadJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchronous upload pipeline. The ZIP is staged (in S3 mode under
+ * {@code upload-jobs/} in the bucket, where every instance can read it; otherwise on
+ * local disk) and recorded in {@code upload_jobs}, which acts as the durable queue; a fixed number of workers
+ * pick jobs from it in arrival order. With several instances on one database, a job
+ * is claimed by one of them with a conditional update and carries that node as its
+ * owner; jobs of a node that restarts, or stops sending heartbeats, are re-queued.
+ */
+@Service
+public class UploadJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadJobService.class);
+
+    private static final String S3_STAGING = "upload-jobs/";
+
+    private final ReportService reportService;
+    private final UploadJobRepository jobs;
+    private final ClusterNode cluster;
+    private final S3Publisher publisher;
+    private final S3Client s3;
+    private final String bucket;
+    private final boolean s3Mode;
+    private final Path stagingDir;
+    private final int workerCount;
+    private final int maxPending;
+    private final ExecutorService workers;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // serializes admission and dispatch, which wait on the database; not the monitor, so virtual threads do not pin
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean stopping;
+
+    public UploadJobService(ReportService reportService,
+                            UploadJobRepository jobs,
+                            ClusterNode cluster,
+                            S3Publisher publisher,
+                            S3Client s3,
+                            VirtualThreads threads,
+                            @Value("${aws.s3.bucket:allure-dashboard-prod}") String bucket,
+                            @Value("${storage.mode:local}") String storageMode,
+                            @Value("${upload.async.staging-dir:data/upload-jobs}") String stagingDir,
+                            @Value("${upload.async.workers:2}") int workerCount,
+                            @Value("${upload.async.queue-capacity:20}") int queueCapacity) {
+        this.reportService = reportService;
+        this.jobs = jobs;
+        this.cluster = cluster;
+        this.publisher = publisher;
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.s3Mode = "s3".equalsIgnoreCase(storageMode);
+        this.stagingDir = Paths.get(stagingDir);
+        this.workerCount = workerCount;
+        this.maxPending = workerCount + queueCapacity;
+
+        // dispatch() keeps at most workerCount jobs in flight, also on virtual threads
+        this.workers = threads.fixedPool("upload-worker-", workerCount);
+        try {
+            Files.createDirectories(this.stagingDir);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------------- enqueue ----------------
+
+    /**
+     * Stages the ZIP and queues a job for it.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public UploadJob submit(String appId, String release, String executionDate, InputStream zip) throws IOException {
+        return submit(appId, release, executionDate, null, zip);
+    }
+
+    /**
+     * Stages the ZIP and queues a job for it, unless it repeats an earlier upload: a job
+     * not yet failed under the same Idempotency-Key, or one still pending for the same
+     * archive, is returned as it is. An archive already stored as a run gets a job that
+     * is COMPLETED at once and points at that run.
+     *
+     * @param idempotencyKey the client's Idempotency-Key, or null
+     * @throws RejectedExecutionException when the queue is full
+     * @throws IllegalStateException      when the key was used for another release or execution date
+     */
+    public UploadJob submit(String appId, String release, String executionDate, String idempotencyKey,
+                            InputStream zip) throws IOException {
+        if (idempotencyKey != null) {
+            UploadJob earlier = jobs.findByIdempotencyKey(appId, idempotencyKey);
+            if (earlier != null) return sameUpload(earlier, release, executionDate);
+        }
+        ensureCapacity();
+
+        String jobId = UUID.randomUUID().toString();
+        Path zipPath = stagingDir.resolve(jobId + ".zip");
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(zip, digest)) {
+            Files.copy(in, zipPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        String contentSha256 = HexFormat.of().formatHex(digest.digest());
+
+        UploadJob job = new UploadJob();
+        job.setJobId(jobId);
+        job.setRunId(UUID.randomUUID().toString());
+        job.setAppId(appId);
+        job.setRelease(release);
+        job.setExecutionDate(executionDate);
+        job.setStatus("QUEUED");
+        job.setCreatedAt(LocalDateTime.now());
+        job.setUpdatedAt(job.getCreatedAt());
+        job.setIdempotencyKey(idempotencyKey);
+        job.setContentSha256(contentSha256);
+        stage(job, zipPath);
+
+        lock.lock();
+        try {
+            UploadJob pending = idempotencyKey == null ? null : jobs.findByIdempotencyKey(appId, idempotencyKey);
+            if (pending == null) pending = jobs.findPendingByContent(appId, release, executionDate, contentSha256);
+            if (pending != null) {
+                discard(job);
+                return sameUpload(pending, release, executionDate);
+            }
+            RunMeta stored = reportService.findDuplicate(appId, release, executionDate, contentSha256);
+            if (stored != null) {
+                discard(job);
+                job.setRunId(stored.getRunId());
+                job.setStatus("COMPLETED");
+                job.setZipPath(null);
+                job.setStagedOn(null);
+                jobs.save(job);
+                return job;
+            }
+            try {
+                ensureCapacity();
+            } catch (RejectedExecutionException e) {
+                discard(job);
+                throw e;
+            }
+            jobs.save(job);
+        } finally {
+            lock.unlock();
+        }
+        dispatch();
+        return job;
+    }
+
+    // a job found by Idempotency-Key only answers a retry of the same upload, as ReportService.findUpload does for runs
+    private static UploadJob sameUpload(UploadJob job, String release, String executionDate) {
+        if (job.getRelease().equals(release) && LocalDate.parse(job.getExecutionDate()).equals(LocalDate.parse(executionDate))) {
+            return job;
+        }
+        throw new IllegalStateException("Idempotency-Key " + job.getIdempotencyKey() + " was used for job " + job.getJobId()
+                + " of release " + job.getRelease() + " on " + job.getExecutionDate());
+    }
+
+    public UploadJob find(String jobId) {
+        return jobs.findById(jobId);
+    }
+
+    private void ensureCapacity() {
+        if (jobs.countByStatus("QUEUED", "RUNNING") >= maxPending) {
+            throw new RejectedExecutionException("Upload queue is full, retry later");
+        }
+    }
+
+    // ---------------- dispatch ----------------
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        int requeued = jobs.requeueOwned(cluster.id());
+        if (requeued > 0) log.info("Re-queued {} interrupted upload job(s)", requeued);
+        cluster.onHeartbeat(this::adoptOrphans);
+        adoptOrphans();
+    }
+
+    // jobs of nodes that stopped sending heartbeats, and jobs queued on other nodes
+    private void adoptOrphans() {
+        long aliveSince = cluster.aliveSince();
+        int requeued = jobs.requeueOrphans(aliveSince);
+        if (requeued > 0) log.info("Re-queued {} upload job(s) of stopped nodes", requeued);
+        int stranded = jobs.failStranded(aliveSince);
+        if (stranded > 0) log.warn("Failed {} upload job(s) staged on stopped nodes", stranded);
+        dispatch();
+    }
+
+    private void dispatch() {
+        lock.lock();
+        try {
+            if (stopping || inFlight.size() >= workerCount) return;
+            for (UploadJob job : jobs.findQueued(cluster.id())) {
+                if (inFlight.size() >= workerCount) return;
+                // other nodes see the same queue; only the one whose update matched runs the job
+                if (!jobs.claim(job.getJobId(), cluster.id())) continue;
+                inFlight.add(job.getJobId());
+                workers.execute(() -> run(job));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(UploadJob job) {
+        String[] stage = {job.getStage()};
+        boolean requeued = false;
+        try (InputStream in = openZip(job)) {
+            Map<String, Object> resp = reportService.handleUpload(job.getAppId(), job.getRelease(), job.getExecutionDate(),
+                    in, job.getRunId(), job.getIdempotencyKey(), s -> {
+                        stage[0] = s;
+                        jobs.updateStatus(job.getJobId(), "RUNNING", s, null);
+                    });
+            // a run of the same archive finished while this job waited
+            if (!job.getRunId().equals(resp.get("runId"))) jobs.updateRunId(job.getJobId(), (String) resp.get("runId"));
+            jobs.updateStatus(job.getJobId(), "COMPLETED", stage[0], null);
+        } catch (TimeoutException e) {
+            // another upload still holds the Idempotency-Key; the job waits its turn in the queue again
+            jobs.updateStatus(job.getJobId(), "QUEUED", stage[0], null);
+            requeued = true;
+        } catch (Exception e) {
+            if (stopping) {
+                // leave it RUNNING with its ZIP in place; the next start of this node, or another
+                // node once this one's heartbeat stops, re-queues it
+                return;
+            }
+            log.error("Upload job {} failed in stage {}", job.getJobId(), stage[0], e);
+            jobs.updateStatus(job.getJobId(), "FAILED", stage[0], e.getMessage());
+        } finally {
+            inFlight.remove(job.getJobId());
+        }
+        if (!requeued) discard(job);
+        dispatch();
+    }
+
+    // ---------------- staging ----------------
+
+    // in S3 mode the ZIP moves to the bucket, so whichever node claims the job can read it
+    private void stage(UploadJob job, Path zipPath) throws IOException {
+        if (!s3Mode) {
+            job.setZipPath(zipPath.toString());
+            job.setStagedOn(cluster.id());
+            return;
+        }
+        String key = S3_STAGING + job.getJobId() + ".zip";
+        try {
+            publisher.publish(Map.of(zipPath, key));
+        } finally {
+            Files.deleteIfExists(zipPath);
+        }
+        job.setZipPath("s3://" + bucket + "/" + key);
+        job.setStagedOn(null);
+    }
+
+    private InputStream openZip(UploadJob job) throws IOException {
+        if (!inS3(job)) return Files.newInputStream(Paths.get(job.getZipPath()));
+        return s3.getObject(b -> b.bucket(bucket).key(s3Key(job)));
+    }
+
+    private void discard(UploadJob job) {
+        try {
+            if (!inS3(job)) Files.deleteIfExists(Paths.get(job.getZipPath()));
+            else s3.deleteObject(b -> b.bucket(bucket).key(s3Key(job)));
+        } catch (IOException | SdkException e) {
+            log.warn("Could not remove the staged ZIP of upload job {}: {}", job.getJobId(), e.getMessage());
+        }
+    }
+
+    // jobs queued before staging moved to S3 keep a local path
+    private static boolean inS3(UploadJob job) {
+        return job.getZipPath().startsWith("s3://");
+    }
+
+    // "s3://bucket/upload-jobs/<jobId>.zip" -> "upload-jobs/<jobId>.zip"
+    private String s3Key(UploadJob job) {
+        return job.getZipPath().substring(("s3://" + bucket + "/").length());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        workers.shutdownNow();
+    }
+}
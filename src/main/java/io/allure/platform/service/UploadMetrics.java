@@ -0,0 +1,134 @@
+package io.allure.platform.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Micrometer meters for the upload pipeline, scraped from {@code /actuator/prometheus}:
+ * <ul>
+ *   <li>{@code upload.stage} – time per stage (unzip, history, parse, generate, publish), tagged app/release/stage</li>
+ *   <li>{@code upload.duration} – whole uploads, tagged app/release/outcome</li>
+ *   <li>{@code upload.inflight} – uploads being processed right now</li>
+ *   <li>{@code upload.bytes.in}, {@code upload.files.extracted}, {@code upload.bytes.out} – archive bytes read,
+ *       result files written, report bytes published</li>
+ *   <li>{@code upload.chunk.bytes} – chunked upload bytes, tagged result: stored, resent (already had them)
+ *       or rejected (bad checksum or offset)</li>
+ *   <li>{@code upload.duplicates} – uploads answered with an existing run, tagged reason: content (same
+ *       archive digest) or key (same {@code Idempotency-Key})</li>
+ * </ul>
+ */
+@Component
+public class UploadMetrics {
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final Counter bytesIn;
+    private final Counter filesExtracted;
+    private final Counter bytesOut;
+
+    public UploadMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        registry.gauge("upload.inflight", inflight);
+        this.bytesIn = Counter.builder("upload.bytes.in").baseUnit("bytes")
+                .description("Results archive bytes received").register(registry);
+        this.filesExtracted = Counter.builder("upload.files.extracted")
+                .description("Files extracted from results archives").register(registry);
+        this.bytesOut = Counter.builder("upload.bytes.out").baseUnit("bytes")
+                .description("Report and archive bytes written to storage").register(registry);
+    }
+
+    /** Starts timing one upload; the returned clock is told when each stage begins. */
+    public StageClock start(String appId, String release) {
+        inflight.incrementAndGet();
+        return new StageClock(appId, release);
+    }
+
+    public void bytesIn(long bytes) {
+        bytesIn.increment(bytes);
+    }
+
+    public void filesExtracted(int files) {
+        filesExtracted.increment(files);
+    }
+
+    public void bytesOut(long bytes) {
+        bytesOut.increment(bytes);
+    }
+
+    public void chunkBytes(String result, long bytes) {
+        Counter.builder("upload.chunk.bytes").baseUnit("bytes").tag("result", result)
+                .description("Chunked upload bytes received").register(registry)
+                .increment(bytes);
+    }
+
+    public void duplicate(String reason) {
+        Counter.builder("upload.duplicates").tag("reason", reason)
+                .description("Uploads answered with an existing run").register(registry)
+                .increment();
+    }
+
+    private Timer timer(String name, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Times consecutive stages: each {@link #accept(String)} ends the previous stage.
+     * {@link #finish()} ends the last one and returns what is stored with the run.
+     */
+    public class StageClock implements Consumer<String> {
+        private final String appId;
+        private final String release;
+        private final long started = System.nanoTime();
+        private final Map<String, Long> timings = new LinkedHashMap<>();
+        private String stage;
+        private long stageStarted;
+        private boolean closed;
+
+        private StageClock(String appId, String release) {
+            this.appId = appId;
+            this.release = release;
+        }
+
+        @Override
+        public void accept(String next) {
+            endStage();
+            stage = next;
+            stageStarted = System.nanoTime();
+        }
+
+        /** Stage durations in milliseconds, in pipeline order. */
+        public Map<String, Long> finish() {
+            endStage();
+            return timings;
+        }
+
+        /** Records the whole upload and leaves the in-flight count; safe to call more than once. */
+        public void close(boolean success) {
+            if (closed) return;
+            closed = true;
+            endStage();
+            inflight.decrementAndGet();
+            timer("upload.duration", "app", appId, "release", release, "outcome", success ? "success" : "failure")
+                    .record(Duration.ofNanos(System.nanoTime() - started));
+        }
+
+        private void endStage() {
+            if (stage == null) return;
+            long nanos = System.nanoTime() - stageStarted;
+            timer("upload.stage", "app", appId, "release", release, "stage", stage).record(Duration.ofNanos(nanos));
+            timings.put(stage, nanos / 1_000_000);
+            stage = null;
+        }
+    }
+}
@@ -89,19 +89,23 @@ $("apps").onchange = async () => {
     rel.map(r => `<option>${r}</option>`).join("");
 };
 
-$("loadRuns").onclick = async () => {
+/* runs come a page at a time; X-Next-Cursor points at the next one */
+const RUN_FIELDS = "runId,timestamp,passed,failed,broken,skipped,total,durationMs,htmlPath";
+let runsCursor = null;
+
+async function loadRunsPage(append) {
   const app = $("apps").value;
   const release = $("releases").value;
 
-  if (!app) return toast("Select App");
-  if (!release) return toast("Select Release");
+  let url = `/api/runs?appId=${encodeURIComponent(app)}&release=${encodeURIComponent(release)}&fields=${RUN_FIELDS}`;
+  if (append && runsCursor) url += `&cursor=${runsCursor}`;
 
-  const runs = await (await apiFetch(
-    `/api/runs?appId=${app}&release=${release}`
-  )).json();
+  const res = await apiFetch(url);
+  const runs = await res.json();
+  runsCursor = res.headers.get("X-Next-Cursor");
+  $("loadMoreRuns").classList.toggle("hidden", !runsCursor);
 
-  $("runsTable").querySelector("tbody").innerHTML =
-    runs.map(r => `
+  const rows = runs.map(r => `
       <tr>
         <td>${r.runId}</td>
         <td>${r.timestamp}</td>
@@ -118,6 +122,10 @@ $("loadRuns").onclick = async () => {
       </tr>
     `).join("");
 
+  const tbody = $("runsTable").querySelector("tbody");
+  if (append) tbody.insertAdjacentHTML("beforeend", rows);
+  else tbody.innerHTML = rows;
+
   // View report
   document.querySelectorAll("button[data-view]").forEach(b => {
     b.onclick = async () => {
@@ -133,8 +141,16 @@ $("loadRuns").onclick = async () => {
   document.querySelectorAll("button[data-del]").forEach(b => {
     b.onclick = () => deleteRun(b.dataset.del);
   });
+}
+
+$("loadRuns").onclick = async () => {
+  if (!$("apps").value) return toast("Select App");
+  if (!$("releases").value) return toast("Select Release");
+  await loadRunsPage(false);
 };
 
+$("loadMoreRuns").onclick = () => loadRunsPage(true);
+
 $("closeViewer").onclick = () => {
   $("reportViewer").classList.add("hidden");
 };
@@ -254,6 +270,7 @@ async function deleteRun(runId) {
     toast("Run deleted");
     await refreshAllDropdowns();
     $("runsTable").querySelector("tbody").innerHTML = "";
+    $("loadMoreRuns").classList.add("hidden");
   } else {
     toast("Delete failed");
   }
@@ -279,7 +296,7 @@ $("deleteRelease").onchange = async () => {
   $("deleteRun").innerHTML = `<option></option>`;
   if (!$("deleteRelease").value) return;
 
-  const runs = await (await apiFetch(`/api/runs?appId=${$("deleteApp").value}&release=${$("deleteRelease").value}`)).json();
+  const runs = await (await apiFetch(`/api/runs?appId=${$("deleteApp").value}&release=${$("deleteRelease").value}&fields=runId&limit=1000`)).json();
   $("deleteRun").innerHTML = `<option></option>` + runs.map(r => `<option value="${r.runId}">${r.runId}</option>`).join("");
 };
 